@@ -5,6 +5,7 @@ import com.google.appengine.api.taskqueue.QueueFactory;
 import com.google.appengine.api.taskqueue.RetryOptions;
 import com.google.appengine.api.taskqueue.TaskOptions;
 import org.wahlzeit.model.Photo;
+import org.wahlzeit.model.PhotoSize;
 
 import java.util.logging.Logger;
 
@@ -30,4 +31,17 @@ public class AsyncTaskExecutor {
 		RetryOptions retryOptions = withTaskRetryLimit(3);
 		queue.add(TaskOptions.Builder.withUrl("/persistPhoto").param(Photo.ID, photoId).retryOptions(retryOptions));
 	}
+
+	/**
+	 * @methodtype command
+	 *
+	 * Starts a task in the default queue to load the images of all photos in the specified size into the image cache.
+	 */
+	public static void warmUpImagesAsync(PhotoSize photoSize) {
+		log.info("Calling async push task to warm up images of size " + photoSize.asString());
+		Queue queue = QueueFactory.getDefaultQueue();
+		RetryOptions retryOptions = withTaskRetryLimit(1);
+		queue.add(TaskOptions.Builder.withUrl("/warmUpImages").
+				param(WarmUpImagesAgent.SIZE, String.valueOf(photoSize.asInt())).retryOptions(retryOptions));
+	}
 }
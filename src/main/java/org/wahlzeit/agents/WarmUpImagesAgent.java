@@ -0,0 +1,44 @@
+package org.wahlzeit.agents;
+
+import org.wahlzeit.model.PhotoManager;
+import org.wahlzeit.model.PhotoSize;
+import org.wahlzeit.services.LogBuilder;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.logging.Logger;
+
+/**
+ * Servlet to load the images of one size into the image cache after a cold start, so that startup itself only has to
+ * load photo metadata. Like <code>PersistPhotoAgent</code>, it is called via a push task, so it only warms the image
+ * cache of the instance that handles the task.
+ */
+public class WarmUpImagesAgent extends HttpServlet {
+
+	private static final Logger log = Logger.getLogger(WarmUpImagesAgent.class.getName());
+
+	/**
+	 *
+	 */
+	public static final String SIZE = "size";
+
+	/**
+	 * @methodtype command
+	 */
+	protected void doPost(HttpServletRequest request, HttpServletResponse response)
+			throws ServletException, IOException {
+
+		String size = request.getParameter(SIZE);
+		log.config(LogBuilder.createSystemMessage().addParameter("Try to warm up images of size", size).toString());
+		if (size == null || "".equals(size)) {
+			throw new IllegalArgumentException("No image size given");
+		}
+
+		PhotoSize photoSize = PhotoSize.getFromInt(Integer.parseInt(size));
+		PhotoManager.getInstance().warmUpImages(photoSize);
+		response.setStatus(200);
+	}
+}
@@ -26,14 +26,24 @@ import org.wahlzeit.model.UserSession;
 import org.wahlzeit.services.ConfigDir;
 import org.wahlzeit.services.Language;
 import org.wahlzeit.services.SysConfig;
+import org.wahlzeit.services.LogBuilder;
 import org.wahlzeit.utils.HtmlUtil;
+import org.wahlzeit.webparts.WebFragmentCache;
 import org.wahlzeit.webparts.WebPart;
+import org.wahlzeit.webparts.WebPartTemplate;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Logger;
 
 /**
  * A superclass for handling web pages.
  */
 public abstract class AbstractWebPageHandler extends AbstractWebPartHandler implements WebPageHandler {
 
+	private static final Logger log = Logger.getLogger(AbstractWebPageHandler.class.getName());
+
 	/**
 	 *
 	 */
@@ -45,30 +55,60 @@ public abstract class AbstractWebPageHandler extends AbstractWebPartHandler impl
 	 *
 	 */
 	public WebPart makeWebPage(UserSession us) {
-		WebPart result = createWebPart(us);
-
-		ConfigDir staticDir = SysConfig.getStaticDir();
-		String stylesheetUrl = HtmlUtil.asPath(staticDir.getRelativeConfigFileName("wahlzeit.css"));
-		result.addString("stylesheet", stylesheetUrl);
-		String javascriptUrl = HtmlUtil.asPath(staticDir.getRelativeConfigFileName("wahlzeit.js"));
-		result.addString("javascript", javascriptUrl);
+		WebPart result = createWebPageFrame(us);
 
-		makeWebPageFrame(us, result);
-		makeWebPageMenu(us, result);
+		makeWebPageHeading(us, result);
 		makeWebPageBody(us, result);
 
 		return result;
 	}
 
+	/**
+	 * The frame of a page, i.e. stylesheet, javascript, title, footer, mission, and menu, depends only on the template,
+	 * language, access rights, and photo size; it is rendered once per combination into a cached fragment, into which
+	 * heading and body are filled per request.
+	 */
+	protected WebPart createWebPageFrame(UserSession us) {
+		Client client = us.getClient();
+		WebPartTemplate tmpl = getTemplate(us, tmplName);
+		if (tmpl == null) {
+			return new WebPart(null);
+		}
+
+		WebFragmentCache cache = WebFragmentCache.getInstance();
+		List<?> key = Arrays.asList(tmpl, us.getLanguageConfiguration(), client.getAccessRights(), client.getPhotoSize());
+		WebPartTemplate fragment = cache.getFragment(key);
+		if (fragment == null) {
+			long generation = cache.getGeneration();
+			WebPart frame = new WebPart(tmpl);
+			makeWebPageFrame(us, frame);
+			makeWebPageMenu(us, frame);
+			try {
+				fragment = cache.putFragment(key, frame.asTemplate(true), generation);
+			} catch (IOException ioex) {
+				log.warning(LogBuilder.createSystemMessage().
+						addParameter("template name", tmplName).
+						addException("Problem rendering page frame", ioex).toString());
+				return frame;
+			}
+		}
+
+		return new WebPart(fragment);
+	}
+
 	/**
 	 *
 	 */
 	protected void makeWebPageFrame(UserSession us, WebPart page) {
 		Client client = us.getClient();
-		page.addString("title", client.getLanguageConfiguration().getPageTitle());
 
-		makeWebPageHeading(us, page);
+		ConfigDir staticDir = SysConfig.getStaticDir();
+		String stylesheetUrl = HtmlUtil.asPath(staticDir.getRelativeConfigFileName("wahlzeit.css"));
+		page.addString("stylesheet", stylesheetUrl);
+		String javascriptUrl = HtmlUtil.asPath(staticDir.getRelativeConfigFileName("wahlzeit.js"));
+		page.addString("javascript", javascriptUrl);
 
+		page.addString("title", client.getLanguageConfiguration().getPageTitle());
 		page.addString("footer", client.getLanguageConfiguration().getPageFooter(client.getPhotoSize()));
 		page.addString("mission", client.getLanguageConfiguration().getPageMission());
 	}
@@ -32,11 +32,15 @@ import org.wahlzeit.services.LogBuilder;
 import org.wahlzeit.services.SysConfig;
 import org.wahlzeit.utils.HtmlUtil;
 import org.wahlzeit.utils.StringUtil;
+import org.wahlzeit.webparts.WebFragmentCache;
 import org.wahlzeit.webparts.WebPart;
 import org.wahlzeit.webparts.WebPartTemplate;
 import org.wahlzeit.webparts.WebPartTemplateService;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import java.util.logging.Logger;
 
@@ -74,9 +78,46 @@ public abstract class AbstractWebPartHandler implements WebPartHandler {
 	 * @methodtype factory
 	 */
 	protected final WebPart createWebPart(UserSession us, String name) {
+		return new WebPart(getTemplate(us, name));
+	}
+
+	/**
+	 * Creates a WebPart for a template that gets no values, e.g. an info part. It is rendered once per template into a
+	 * cached fragment, which is then copied as a whole.
+	 *
+	 * @methodtype factory
+	 */
+	protected final WebPart createStaticWebPart(UserSession us, String name) {
+		WebPartTemplate tmpl = getTemplate(us, name);
+		if (tmpl == null) {
+			return new WebPart(null);
+		}
+
+		WebFragmentCache cache = WebFragmentCache.getInstance();
+		List<?> key = Arrays.asList(tmpl);
+		WebPartTemplate fragment = cache.getFragment(key);
+		if (fragment == null) {
+			long generation = cache.getGeneration();
+			WebPart part = new WebPart(tmpl);
+			try {
+				fragment = cache.putFragment(key, part.asTemplate(false), generation);
+			} catch (IOException ioex) {
+				log.warning(LogBuilder.createSystemMessage().
+						addParameter("template name", name).
+						addException("Problem rendering fragment", ioex).toString());
+				return part;
+			}
+		}
+
+		return new WebPart(fragment);
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	protected WebPartTemplate getTemplate(UserSession us, String name) {
 		WebPartTemplateService wpts = WebPartTemplateService.getInstance();
-		WebPartTemplate tmpl = wpts.getTemplate(us.getClient().getLanguageConfiguration().getLanguageCode(), name);
-		return new WebPart(tmpl);
+		return wpts.getTemplate(us.getLanguageConfiguration().getLanguageCode(), name);
 	}
 
 	/**
@@ -114,14 +155,14 @@ public abstract class AbstractWebPartHandler implements WebPartHandler {
 	 *
 	 */
 	protected String getPhotoSummary(UserSession us, Photo photo) {
-		return photo.getSummary(us.getClient().getLanguageConfiguration());
+		return photo.getSummary(us.getLanguageConfiguration());
 	}
 
 	/**
 	 *
 	 */
 	protected String getPhotoCaption(UserSession us, Photo photo) {
-		return photo.getCaption(us.getClient().getLanguageConfiguration());
+		return photo.getCaption(us.getLanguageConfiguration());
 	}
 
 	/**
@@ -191,7 +232,7 @@ public abstract class AbstractWebPartHandler implements WebPartHandler {
 	 *
 	 */
 	protected String getIllegalAccessErrorPage(UserSession us) {
-		ModelConfig config = us.getClient().getLanguageConfiguration();
+		ModelConfig config = us.getLanguageConfiguration();
 		us.setHeading(config.getInformation());
 
 		String msg1 = config.getIllegalAccessError();
@@ -211,7 +252,7 @@ public abstract class AbstractWebPartHandler implements WebPartHandler {
 	 *
 	 */
 	protected String getIllegalArgumentErrorPage(UserSession us) {
-		ModelConfig config = us.getClient().getLanguageConfiguration();
+		ModelConfig config = us.getLanguageConfiguration();
 		us.setHeading(config.getInformation());
 
 		String msg1 = config.getIllegalArgumentError();
@@ -236,7 +277,7 @@ public abstract class AbstractWebPartHandler implements WebPartHandler {
 	 *
 	 */
 	protected String getInternalProcessingErrorPage(UserSession us) {
-		ModelConfig config = us.getClient().getLanguageConfiguration();
+		ModelConfig config = us.getLanguageConfiguration();
 		us.setHeading(config.getInformation());
 
 		String msg1 = config.getInternalProcessingError();
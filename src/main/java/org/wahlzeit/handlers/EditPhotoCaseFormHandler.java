@@ -28,8 +28,8 @@ import org.wahlzeit.model.PhotoId;
 import org.wahlzeit.model.PhotoStatus;
 import org.wahlzeit.model.UserSession;
 import org.wahlzeit.services.LogBuilder;
-import org.wahlzeit.utils.HtmlUtil;
 import org.wahlzeit.utils.StringUtil;
+import org.wahlzeit.webparts.HtmlElement;
 import org.wahlzeit.webparts.WebPart;
 
 import java.util.Map;
@@ -67,15 +67,15 @@ public class EditPhotoCaseFormHandler extends AbstractWebFormHandler {
 		part.maskAndAddString(Photo.DESCRIPTION, description);
 
 		String tags = photo.getTags().asString();
-		tags = !StringUtil.isNullOrEmptyString(tags) ? tags : us.getClient().getLanguageConfiguration().getNoTags();
+		tags = !StringUtil.isNullOrEmptyString(tags) ? tags : us.getLanguageConfiguration().getNoTags();
 		part.maskAndAddString(Photo.TAGS, tags);
 
 		String photoId = photo.getId().asString();
-		part.addString(Photo.LINK, HtmlUtil.asHref(getResourceAsRelativeHtmlPathString(photoId)));
+		part.addWritable(Photo.LINK, HtmlElement.asHref(getResourceAsRelativeHtmlPathString(photoId)));
 
 		part.addString(PhotoCase.FLAGGER, photoCase.getFlagger());
 		part.addString(PhotoCase.REASON,
-				us.getClient().getLanguageConfiguration().asValueString(photoCase.getReason()));
+				us.getLanguageConfiguration().asValueString(photoCase.getReason()));
 		part.addString(PhotoCase.EXPLANATION, photoCase.getExplanation());
 	}
 
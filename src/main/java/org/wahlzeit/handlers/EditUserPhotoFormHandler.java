@@ -62,7 +62,7 @@ public class EditUserPhotoFormHandler extends AbstractWebFormHandler {
 	 */
 	protected void doMakeWebPart(UserSession us, WebPart part) {
 		Map<String, Object> args = us.getSavedArgs();
-		ModelConfig config = us.getClient().getLanguageConfiguration();
+		ModelConfig config = us.getLanguageConfiguration();
 		part.addStringFromArgs(args, UserSession.MESSAGE);
 
 		String id = us.getAsString(args, Photo.ID);
@@ -109,7 +109,7 @@ public class EditUserPhotoFormHandler extends AbstractWebFormHandler {
 				addAction("EditUserPhoto").
 				addParameter("Photo", photo.getId().asString()).toString());
 
-		ModelConfig config = us.getClient().getLanguageConfiguration();
+		ModelConfig config = us.getLanguageConfiguration();
 		us.setTwoLineMessage(config.getPhotoUpdateSucceeded(), config.getContinueWithShowUserHome());
 
 		return PartUtil.SHOW_NOTE_PAGE_NAME;
@@ -89,7 +89,7 @@ public class EditUserProfileFormHandler extends AbstractWebFormHandler {
 				user.setNickName(nickName);
 			}
 		} catch (IllegalArgumentException e) {
-			us.setMessage(us.getClient().getLanguageConfiguration().getNickNameExists(nickName));
+			us.setMessage(us.getLanguageConfiguration().getNickNameExists(nickName));
 			return PartUtil.SHOW_NOTE_PAGE_NAME;
 		}
 
@@ -107,7 +107,7 @@ public class EditUserProfileFormHandler extends AbstractWebFormHandler {
 					addParameter("Language", langValue.asString()).toString());
 		}
 
-		ModelConfig config = us.getClient().getLanguageConfiguration();
+		ModelConfig config = us.getLanguageConfiguration();
 		us.setTwoLineMessage(config.getProfileUpdateSucceeded(), config.getContinueWithShowUserHome());
 
 		return PartUtil.SHOW_NOTE_PAGE_NAME;
@@ -64,7 +64,7 @@ public class EmailUserNameFormHandler extends AbstractWebFormHandler {
 	 */
 	protected String doHandlePost(UserSession us, Map args) {
 		String emailAddress = us.getAndSaveAsString(args, User.EMAIL_ADDRESS);
-		ModelConfig config = us.getClient().getLanguageConfiguration();
+		ModelConfig config = us.getLanguageConfiguration();
 		if (StringUtil.isNullOrEmptyString(emailAddress)) {
 			us.setMessage(config.getFieldIsMissing());
 			return PartUtil.EMAIL_PASSWORD_PAGE_NAME;
@@ -60,7 +60,7 @@ public class FilterPhotosFormHandler extends AbstractWebFormHandler {
 	 *
 	 */
 	protected String doHandlePost(UserSession us, Map args) {
-		PhotoFilter filter = us.getPhotoFilter();
+		PhotoFilter filter = us.getPhotoFilterForChange();
 
 		String un = us.getAsString(args, PhotoFilter.USER_NAME);
 		if (StringUtil.isLegalUserName(un)) {
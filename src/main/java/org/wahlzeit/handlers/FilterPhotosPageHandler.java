@@ -55,7 +55,7 @@ public class FilterPhotosPageHandler extends AbstractWebPageHandler {
 	 *
 	 */
 	protected String doHandleGet(UserSession us, String link, Map args) {
-		PhotoFilter filter = us.getPhotoFilter();
+		PhotoFilter filter = us.getPhotoFilterForChange();
 
 		String un = us.getAsString(args, PhotoFilter.USER_NAME);
 		if (StringUtil.isLegalUserName(un)) {
@@ -74,7 +74,7 @@ public class FilterPhotosPageHandler extends AbstractWebPageHandler {
 	 *
 	 */
 	protected void makeWebPageBody(UserSession us, WebPart page) {
-		ModelConfig config = us.getClient().getLanguageConfiguration();
+		ModelConfig config = us.getLanguageConfiguration();
 		page.addString("noteHeading", config.getInformation());
 		String msg1 = config.getContinueWithShowPhoto();
 		page.addString("note", msg1);
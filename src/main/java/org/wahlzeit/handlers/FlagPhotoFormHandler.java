@@ -28,6 +28,7 @@ import org.wahlzeit.model.Photo;
 import org.wahlzeit.model.PhotoCase;
 import org.wahlzeit.model.PhotoCaseManager;
 import org.wahlzeit.model.PhotoManager;
+import org.wahlzeit.model.UserManager;
 import org.wahlzeit.model.UserSession;
 import org.wahlzeit.services.EmailAddress;
 import org.wahlzeit.services.LogBuilder;
@@ -85,7 +86,7 @@ public class FlagPhotoFormHandler extends AbstractWebFormHandler {
 		String flagger = us.getAndSaveAsString(args, PhotoCase.FLAGGER);
 		FlagReason reason = FlagReason.getFromString(us.getAndSaveAsString(args, PhotoCase.REASON));
 		String explanation = us.getAndSaveAsString(args, PhotoCase.EXPLANATION);
-		ModelConfig config = us.getClient().getLanguageConfiguration();
+		ModelConfig config = us.getLanguageConfiguration();
 
 		if (StringUtil.isNullOrEmptyString(flagger)) {
 			us.setMessage(config.getEmailAddressIsMissing());
@@ -108,6 +109,7 @@ public class FlagPhotoFormHandler extends AbstractWebFormHandler {
 		photoCase.setExplanation(explanation);
 		PhotoCaseManager pcm = PhotoCaseManager.getInstance();
 		pcm.addPhotoCase(photoCase);
+		UserManager.getInstance().persistClient(us.getClient());
 
 		EmailService emailService = EmailServiceManager.getDefaultService();
 
@@ -66,7 +66,7 @@ public class SetLanguagePageHandler extends AbstractWebPageHandler {
 	 *
 	 */
 	protected void makeWebPageBody(UserSession us, WebPart page) {
-		ModelConfig config = us.getClient().getLanguageConfiguration();
+		ModelConfig config = us.getLanguageConfiguration();
 		page.addString("noteHeading", config.getInformation());
 		String msg1 = config.getNewLanguageSet();
 		String msg2 = config.getContinueWithShowPhoto();
@@ -84,7 +84,7 @@ public class SetOptionsFormHandler extends AbstractWebFormHandler {
 				addParameter("language", language).
 				addParameter("photo size", photoSize).toString());
 
-		ModelConfig config = us.getClient().getLanguageConfiguration();
+		ModelConfig config = us.getLanguageConfiguration();
 		String msg1 = config.getOptionsWereSet();
 		String msg2 = config.getNoteMaximumPhotoSize();
 		String msg3 = config.getContinueWithShowPhoto();
@@ -148,7 +148,7 @@ public class ShowAdminPageHandler extends AbstractWebPageHandler implements WebF
 		String photoId = us.getAndSaveAsString(args, "photoId");
 		Photo photo = PhotoManager.getInstance().getPhoto(photoId);
 		if (photo == null) {
-			us.setMessage(us.getClient().getLanguageConfiguration().getPhotoIsUnknown());
+			us.setMessage(us.getLanguageConfiguration().getPhotoIsUnknown());
 		}
 
 		return PartUtil.SHOW_ADMIN_PAGE_NAME;
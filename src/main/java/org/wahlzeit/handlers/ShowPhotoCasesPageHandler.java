@@ -61,7 +61,7 @@ public class ShowPhotoCasesPageHandler extends AbstractWebPageHandler {
 			page.addWritable("openCases", openCases);
 		} else {
 			page.addString("openCases",
-					HtmlUtil.asP(us.getClient().getLanguageConfiguration().getNoFlaggedPhotoCases()));
+					HtmlUtil.asP(us.getLanguageConfiguration().getNoFlaggedPhotoCases()));
 		}
 	}
 
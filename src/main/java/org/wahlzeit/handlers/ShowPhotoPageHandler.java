@@ -30,6 +30,7 @@ import org.wahlzeit.model.PhotoSize;
 import org.wahlzeit.model.Tags;
 import org.wahlzeit.model.UserSession;
 import org.wahlzeit.utils.HtmlUtil;
+import org.wahlzeit.webparts.HtmlElement;
 import org.wahlzeit.webparts.WebPart;
 import org.wahlzeit.webparts.Writable;
 import org.wahlzeit.webparts.WritableList;
@@ -64,11 +65,11 @@ public class ShowPhotoPageHandler extends AbstractWebPageHandler implements WebF
 			String skippedPhotoIdString = us.getAsString(args, "prior");
 			PhotoId skippedPhotoId = PhotoId.getIdFromString(skippedPhotoIdString);
 			us.getClient().addSkippedPhotoId(skippedPhotoId);
-			us.getPhotoFilter().addSkippedPhotoId(skippedPhotoId);
+			us.getPhotoFilterForChange().addSkippedPhotoId(skippedPhotoId);
 		}
 
 		if (photo == null) {
-			PhotoFilter filter = us.getPhotoFilter();
+			PhotoFilter filter = us.getPhotoFilterForChange();
 			photo = photoManager.getVisiblePhoto(filter);
 			if (photo != null) {
 				link = photo.getId().asString();
@@ -128,14 +129,14 @@ public class ShowPhotoPageHandler extends AbstractWebPageHandler implements WebF
 		if (lastPraisedPhoto != null) {
 			parts.append(makePriorPhotoInfo(us, lastPraisedPhoto));
 		} else {
-			parts.append(createWebPart(us, PartUtil.BLURP_INFO_FILE));
+			parts.append(createStaticWebPart(us, PartUtil.BLURP_INFO_FILE));
 		}
 
 		WebFormHandler handler = getFormHandler(PartUtil.FILTER_PHOTOS_FORM_NAME);
 		Writable filterPhotos = handler.makeWebPart(us);
 		parts.append(filterPhotos);
 
-		parts.append(createWebPart(us, PartUtil.LINKS_INFO_FILE));
+		parts.append(createStaticWebPart(us, PartUtil.LINKS_INFO_FILE));
 
 		page.addWritable("sidebar", parts);
 	}
@@ -167,7 +168,7 @@ public class ShowPhotoPageHandler extends AbstractWebPageHandler implements WebF
 		PhotoSize maxPhotoSize = photo.getMaxPhotoSize();
 		PhotoSize photoSize = (maxPhotoSize.isSmaller(pagePhotoSize)) ? maxPhotoSize : pagePhotoSize;
 		String imageLink = getPhotoAsRelativeResourcePathString(photo, photoSize);
-		page.addString(Photo.IMAGE, HtmlUtil.asImg(HtmlUtil.asPath(imageLink)));
+		page.addWritable(Photo.IMAGE, HtmlElement.asImg(HtmlUtil.asPath(imageLink)));
 	}
 
 	/**
@@ -189,7 +190,7 @@ public class ShowPhotoPageHandler extends AbstractWebPageHandler implements WebF
 		PhotoId photoId = us.getPhotoId();
 
 		WebPart engageGuest = createWebPart(us, PartUtil.ENGAGE_GUEST_FORM_FILE);
-		engageGuest.addString(Photo.LINK, HtmlUtil.asHref(getResourceAsRelativeHtmlPathString(photoId.asString())));
+		engageGuest.addWritable(Photo.LINK, HtmlElement.asHref(getResourceAsRelativeHtmlPathString(photoId.asString())));
 		engageGuest.addString(Photo.ID, photoId.asString());
 
 		page.addWritable("engageGuest", engageGuest);
@@ -218,7 +219,7 @@ public class ShowPhotoPageHandler extends AbstractWebPageHandler implements WebF
 	protected WebPart makePriorPhotoInfo(UserSession us, Photo lastPraisedPhoto) {
 		WebPart result = createWebPart(us, PartUtil.PHOTO_INFO_FILE);
 
-		result.addString(Photo.PRAISE, lastPraisedPhoto.getPraiseAsString(us.getClient().getLanguageConfiguration()));
+		result.addString(Photo.PRAISE, lastPraisedPhoto.getPraiseAsString(us.getLanguageConfiguration()));
 		result.addString(Photo.THUMB, getPhotoThumb(us, lastPraisedPhoto));
 		result.addString(Photo.CAPTION, getPhotoCaption(us, lastPraisedPhoto));
 
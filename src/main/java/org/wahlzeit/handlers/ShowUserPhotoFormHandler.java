@@ -29,8 +29,8 @@ import org.wahlzeit.model.User;
 import org.wahlzeit.model.UserManager;
 import org.wahlzeit.model.UserSession;
 import org.wahlzeit.services.LogBuilder;
-import org.wahlzeit.utils.HtmlUtil;
 import org.wahlzeit.utils.StringUtil;
+import org.wahlzeit.webparts.HtmlElement;
 import org.wahlzeit.webparts.WebPart;
 
 import java.util.Map;
@@ -58,7 +58,7 @@ public class ShowUserPhotoFormHandler extends AbstractWebFormHandler {
 		PhotoId photoId = us.getPhotoId();
 		Photo photo = PhotoManager.getInstance().getPhoto(photoId);
 		String id = photo.getId().asString();
-		ModelConfig config = us.getClient().getLanguageConfiguration();
+		ModelConfig config = us.getLanguageConfiguration();
 		part.addString(Photo.ID, id);
 		part.addString(Photo.THUMB, getPhotoThumb(us, photo));
 
@@ -72,7 +72,7 @@ public class ShowUserPhotoFormHandler extends AbstractWebFormHandler {
 		part.addString(Photo.STATUS, photoStatus);
 
 		part.addString(Photo.UPLOADED_ON, config.asDateString(photo.getCreationTime()));
-		part.addString(Photo.LINK, HtmlUtil.asHref(getResourceAsRelativeHtmlPathString(id)));
+		part.addWritable(Photo.LINK, HtmlElement.asHref(getResourceAsRelativeHtmlPathString(id)));
 	}
 
 	/**
@@ -49,7 +49,7 @@ public class ShowUserProfileFormHandler extends AbstractWebFormHandler {
 		User user = (User) us.getClient();
 
 		Photo photo = user.getUserPhoto();
-		ModelConfig config = us.getClient().getLanguageConfiguration();
+		ModelConfig config = us.getLanguageConfiguration();
 		part.addString(Photo.THUMB, getPhotoThumb(us, photo));
 
 		part.maskAndAddString(User.NICK_NAME, user.getNickName());
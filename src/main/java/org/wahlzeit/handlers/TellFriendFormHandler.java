@@ -62,7 +62,7 @@ public class TellFriendFormHandler extends AbstractWebFormHandler {
 	 */
 	protected void doMakeWebPart(UserSession us, WebPart part) {
 		Map args = us.getSavedArgs();
-		ModelConfig config = us.getClient().getLanguageConfiguration();
+		ModelConfig config = us.getLanguageConfiguration();
 		part.addStringFromArgs(args, UserSession.MESSAGE);
 
 		part.maskAndAddStringFromArgs(args, EMAIL_TO);
@@ -89,7 +89,7 @@ public class TellFriendFormHandler extends AbstractWebFormHandler {
 		String friendsEmailAddress = us.getAndSaveAsString(args, EMAIL_TO);
 		String emailSubject = us.getAndSaveAsString(args, EMAIL_SUBJECT);
 		String emailBody = us.getAndSaveAsString(args, EMAIL_BODY);
-		ModelConfig config = us.getClient().getLanguageConfiguration();
+		ModelConfig config = us.getLanguageConfiguration();
 
 		if (StringUtil.isNullOrEmptyString(friendsEmailAddress)) {
 			us.setMessage(config.getEmailAddressIsMissing());
@@ -66,7 +66,7 @@ public class UploadPhotoFormHandler extends AbstractWebFormHandler {
 	protected String doHandlePost(UserSession us, Map args) {
 		String tags = us.getAndSaveAsString(args, Photo.TAGS);
 
-		ModelConfig config = us.getClient().getLanguageConfiguration();
+		ModelConfig config = us.getLanguageConfiguration();
 		if (!StringUtil.isLegalTagsString(tags)) {
 			us.setMessage(config.getInputIsInvalid());
 			return PartUtil.UPLOAD_PHOTO_PAGE_NAME;
@@ -20,6 +20,7 @@
 
 package org.wahlzeit.main;
 
+import org.wahlzeit.services.LogBuilder;
 import org.wahlzeit.services.SessionManager;
 import org.wahlzeit.services.SysConfig;
 import org.wahlzeit.services.SysSession;
@@ -46,16 +47,19 @@ public abstract class AbstractMain {
 	 */
 	protected void startUp(String rootDir) throws Exception {
 		SysConfig.setInstance(createSysConfig(rootDir));
+		LogBuilder.setFormat(SysConfig.getLogFormat());
 
 		mainSession = new SysSession("system");
 		SessionManager.setThreadLocalSession(mainSession);
 	}
 
 	/**
-	 *
+	 * Deployments set tunable values in config/SysConfig.properties.
 	 */
 	protected SysConfig createSysConfig(String rootDir) {
-		return createDevSysConfig(rootDir);
+		SysConfig result = createDevSysConfig(rootDir);
+		result.loadPropertiesFile();
+		return result;
 	}
 
 	/**
@@ -20,15 +20,18 @@
 
 package org.wahlzeit.main;
 
+import org.wahlzeit.agents.AsyncTaskExecutor;
 import org.wahlzeit.handlers.*;
 import org.wahlzeit.model.AccessRights;
 import org.wahlzeit.model.EnglishModelConfig;
 import org.wahlzeit.model.GermanModelConfig;
 import org.wahlzeit.model.LanguageConfigs;
+import org.wahlzeit.model.PhotoSize;
 import org.wahlzeit.services.ConfigDir;
 import org.wahlzeit.services.Language;
 import org.wahlzeit.services.LogBuilder;
 import org.wahlzeit.services.SysConfig;
+import org.wahlzeit.webparts.WebFragmentCache;
 import org.wahlzeit.webparts.WebPartTemplateService;
 
 import java.util.logging.Logger;
@@ -103,15 +106,34 @@ public class ServiceMain extends ModelMain {
 		log.config(LogBuilder.createSystemMessage().addAction("Configure LanguageModels").toString());
 		configureLanguageModels();
 
+		if (SysConfig.isWarmUpThumbnails()) {
+			log.config(LogBuilder.createSystemMessage().addAction("Schedule thumbnail warm-up").toString());
+			scheduleImageWarmUp(PhotoSize.THUMB);
+		}
+
 		log.config(LogBuilder.createSystemMessage().addMessage("StartUp complete.").toString());
 	}
 
+	/**
+	 * Warm-up is an optimization only, so a failure to schedule it must not fail the startup.
+	 */
+	protected void scheduleImageWarmUp(PhotoSize photoSize) {
+		try {
+			AsyncTaskExecutor.warmUpImagesAsync(photoSize);
+		} catch (Exception e) {
+			log.warning(LogBuilder.createSystemMessage().addException("Could not schedule image warm-up", e).toString());
+		}
+	}
+
 	/**
 	 *
 	 */
 	public void configureWebPartTemplateService() {
 		ConfigDir templatesDir = SysConfig.getTemplatesDir();
-		WebPartTemplateService.getInstance().setTemplatesDir(templatesDir);
+		WebPartTemplateService service = WebPartTemplateService.getInstance();
+		service.setTemplatesDir(templatesDir);
+		service.setReloadChangedTemplates(SysConfig.isReloadTemplates());
+		service.preloadTemplates();
 	}
 
 	/**
@@ -211,6 +233,7 @@ public class ServiceMain extends ModelMain {
 	public void configureLanguageModels() {
 		LanguageConfigs.put(Language.ENGLISH, new EnglishModelConfig());
 		LanguageConfigs.put(Language.GERMAN, new GermanModelConfig());
+		WebFragmentCache.getInstance().clear();
 	}
 
 	/**
@@ -31,27 +31,34 @@ public abstract class Case extends DataObject {
 	/**
 	 * 0 is never returned, first value is 1
 	 */
-	protected static CaseId lastCaseId = CaseId.NULL_ID;
+	protected static final IdBlockAllocator idAllocator = new IdBlockAllocator();
 
 	/**
 	 * @methodtype get
 	 */
-	public static synchronized CaseId getLastCaseId() {
-		return lastCaseId;
+	public static CaseId getLastCaseId() {
+		return new CaseId((int) idAllocator.getLastId());
 	}
 
 	/**
 	 * @methodtype set
 	 */
-	public static synchronized void setLastCaseId(CaseId newId) {
-		lastCaseId = newId;
+	public static void setLastCaseId(CaseId newId) {
+		idAllocator.setLastId(newId.asInt());
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public static IdBlockAllocator getIdAllocator() {
+		return idAllocator;
 	}
 
 	/**
 	 * @methodtype idiom
 	 */
-	public static synchronized CaseId getNextCaseId() {
-		return lastCaseId = lastCaseId.getNextId();
+	public static CaseId getNextCaseId() {
+		return new CaseId((int) idAllocator.nextId());
 	}
 
 }
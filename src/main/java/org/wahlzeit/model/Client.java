@@ -66,6 +66,12 @@ public abstract class Client implements Serializable, Persistent {
 	@Ignore
 	protected int writeCount = 0;
 
+	/**
+	 * Ephemeral clients live in memory only and are not written to the datastore
+	 */
+	@Ignore
+	protected boolean ephemeral = false;
+
 	private String httpSessionId;
 
 	protected Language language = Language.ENGLISH;
@@ -186,6 +192,20 @@ public abstract class Client implements Serializable, Persistent {
 		return emailAddress;
 	}
 
+	/**
+	 * @methodtype boolean-query
+	 */
+	public boolean isEphemeral() {
+		return ephemeral;
+	}
+
+	/**
+	 * @methodtype set
+	 */
+	public void setEphemeral(boolean isEphemeral) {
+		ephemeral = isEphemeral;
+	}
+
 	/**
 	 *
 	 */
@@ -4,9 +4,11 @@ import org.wahlzeit.services.LogBuilder;
 import org.wahlzeit.services.ObjectManager;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.logging.Logger;
 
 /**
@@ -21,16 +23,19 @@ public abstract class ClientManager extends ObjectManager {
 	/**
 	 *
 	 */
-	protected static Long lastClientId = 0L;
+	protected static final IdBlockAllocator clientIdAllocator = new IdBlockAllocator();
 
 	/**
 	 * Maps IDs to user
 	 */
-	protected Map<String, Client> idClientMap = new HashMap<String, Client>();
+	protected final ConcurrentMap<String, Client> idClientMap = new ConcurrentHashMap<String, Client>();
 
-	protected HashMap<String, Client> httpSessionIdToClientMap = new HashMap<String, Client>();
+	protected final ConcurrentMap<String, Client> httpSessionIdToClientMap = new ConcurrentHashMap<String, Client>();
 
-	protected List<String> listOfUsedNicknames = new ArrayList<String>();
+	/**
+	 * A nickname is reserved by adding it; the set is the only place where nicknames are checked for uniqueness
+	 */
+	protected final Set<String> usedNicknames = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
 
 
 	// add methods -----------------------------------------------------------------------------------------------------
@@ -41,10 +46,17 @@ public abstract class ClientManager extends ObjectManager {
 	 */
 	public void addClient(Client client) throws IllegalArgumentException {
 		assertIsNonNullArgument(client);
-		assertIsUnknownClientAsIllegalArgument(client);
-		assertNicknameIsNotUsed(client.getNickName());
 
-		doAddClient(client);
+		if (idClientMap.putIfAbsent(client.getId(), client) != null) {
+			throw new IllegalArgumentException(client.getId() + "is already known");
+		}
+		if (!reserveNickname(client.getNickName())) {
+			idClientMap.remove(client.getId(), client);
+			throw new IllegalArgumentException("Nickname " + client.getNickName() + " is already used.");
+		}
+
+		writeClient(client);
+		log.config(LogBuilder.createSystemMessage().addParameter("Added new user", client.getId()).toString());
 	}
 
 	/**
@@ -60,20 +72,57 @@ public abstract class ClientManager extends ObjectManager {
 	 * @methodtype assertion
 	 */
 	protected void assertNicknameIsNotUsed(String nickName) {
-		if (listOfUsedNicknames.contains(nickName)) {
+		if (usedNicknames.contains(nickName)) {
 			throw new IllegalArgumentException("Nickname " + nickName + " is already used.");
 		}
 	}
 
 	/**
+	 * @methodtype boolean query
+	 */
+	public boolean isNicknameUsed(String nickName) {
+		return usedNicknames.contains(nickName);
+	}
+
+	/**
+	 * Returns false if the nickname is already used, true if it has been reserved for the caller.
+	 *
+	 * @methodtype command
+	 */
+	protected boolean reserveNickname(String nickName) {
+		assertIsNonNullArgument(nickName, "nickname");
+		return usedNicknames.add(nickName);
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	protected void releaseNickname(String nickName) {
+		if (nickName != null) {
+			usedNicknames.remove(nickName);
+		}
+	}
+
+	/**
+	 * Adds a client that has been read from the datastore, unless another thread has added it first. Returns the
+	 * client that is known under the id afterwards.
+	 *
 	 * @methodtype set
 	 * @methodproperty primitive
 	 */
-	protected void doAddClient(Client client) {
-		idClientMap.put(client.getId(), client);
-		writeObject(client);
-		listOfUsedNicknames.add(client.getNickName());
+	protected Client doAddClient(Client client) {
+		Client previous = idClientMap.putIfAbsent(client.getId(), client);
+		if (previous != null) {
+			return previous;
+		}
+		if (!reserveNickname(client.getNickName())) {
+			log.warning(LogBuilder.createSystemMessage().
+					addParameter("Nickname already used by another client", client.getNickName()).toString());
+		}
+
+		writeClient(client);
 		log.config(LogBuilder.createSystemMessage().addParameter("Added new user", client.getId()).toString());
+		return client;
 	}
 
 	/**
@@ -113,7 +162,6 @@ public abstract class ClientManager extends ObjectManager {
 	public void addHttpSessionIdToClientMapping(String httpSessionId, Client client) {
 		assertIsNonNullArgument(httpSessionId);
 		assertIsNonNullArgument(client);
-		assert !httpSessionIdToClientMap.containsKey(httpSessionId);
 
 		doAddHttpSessionIdToClientMapping(httpSessionId, client);
 
@@ -121,6 +169,8 @@ public abstract class ClientManager extends ObjectManager {
 	}
 
 	/**
+	 * A session that switches to another client, e.g. by logging in, replaces the previous mapping.
+	 *
 	 * @methodtype set
 	 */
 	public void doAddHttpSessionIdToClientMapping(String httpSessionId, Client client) {
@@ -138,7 +188,35 @@ public abstract class ClientManager extends ObjectManager {
 	 * @methodtype command
 	 */
 	public void saveClient(Client client) {
-		updateObject(client);
+		if (!client.isEphemeral()) {
+			updateObject(client);
+		}
+	}
+
+	/**
+	 * Makes an ephemeral client, i.e. a guest that did something worth keeping, durable and writes it.
+	 *
+	 * @methodtype command
+	 */
+	public void persistClient(Client client) {
+		assertIsNonNullArgument(client);
+
+		if (client.isEphemeral()) {
+			client.setEphemeral(false);
+			client.incWriteCount();
+			writeObject(client);
+			log.config(LogBuilder.createSystemMessage().addParameter("Persisted client", client.getId()).toString());
+		}
+	}
+
+	/**
+	 * @methodtype command
+	 * @methodproperty primitive
+	 */
+	protected void writeClient(Client client) {
+		if (!client.isEphemeral()) {
+			writeObject(client);
+		}
 	}
 
 
@@ -157,7 +235,15 @@ public abstract class ClientManager extends ObjectManager {
 	 * @methodtype command
 	 */
 	public void saveClients() {
-		updateObjects(idClientMap.values());
+		List<Client> durableClients = new ArrayList<Client>();
+		for (Client client : idClientMap.values()) {
+			if (!client.isEphemeral()) {
+				durableClients.add(client);
+			}
+		}
+
+		updateObjects(durableClients);
+		flush();
 	}
 
 
@@ -167,21 +253,28 @@ public abstract class ClientManager extends ObjectManager {
 	 * @methodtype get
 	 */
 	public Long getLastClientId() {
-		return lastClientId;
+		return clientIdAllocator.getLastId();
 	}
 
 	/**
 	 * @methodtype set
 	 */
-	public synchronized void setLastClientId(Long newId) {
-		lastClientId = newId;
+	public void setLastClientId(Long newId) {
+		clientIdAllocator.setLastId(newId);
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public IdBlockAllocator getClientIdAllocator() {
+		return clientIdAllocator;
 	}
 
 	/**
 	 * @methodtype get
 	 */
-	public synchronized Long getNextClientId() {
-		return ++lastClientId;
+	public Long getNextClientId() {
+		return clientIdAllocator.nextId();
 	}
 
 
@@ -201,22 +294,29 @@ public abstract class ClientManager extends ObjectManager {
 	 */
 	public void deleteClient(Client client) {
 		assertIsNonNullArgument(client);
-		assert idClientMap.containsValue(client);
+		assert idClientMap.get(client.getId()) == client;
 
-		removeHttpSessionIdToClientMapping(client.getHttpSessionId());
+		removeHttpSessionIdToClientMapping(client);
 		doDeleteClient(client);
 
 		assertIsUnknownUserAsIllegalState(client);
 	}
 
 	/**
+	 * Only removes the mapping if the session still belongs to the client, so that a session that has switched to
+	 * another client in the meantime keeps it.
+	 *
 	 * @methodtype set
 	 */
-	private void removeHttpSessionIdToClientMapping(String httpSessionId) {
-		Client client = httpSessionIdToClientMap.get(httpSessionId);
-		client.removeHttpSessionId();
+	private void removeHttpSessionIdToClientMapping(Client client) {
+		String httpSessionId = client.getHttpSessionId();
+		if (httpSessionId == null) {
+			return;
+		}
 
-		httpSessionIdToClientMap.remove(httpSessionId);
+		if (httpSessionIdToClientMap.remove(httpSessionId, client)) {
+			client.removeHttpSessionId();
+		}
 	}
 
 	/**
@@ -224,8 +324,12 @@ public abstract class ClientManager extends ObjectManager {
 	 * @methodproperty primtive
 	 */
 	protected void doDeleteClient(Client client) {
-		idClientMap.remove(client.getId());
-		deleteObject(client);
+		if (idClientMap.remove(client.getId(), client)) {
+			releaseNickname(client.getNickName());
+		}
+		if (!client.isEphemeral()) {
+			deleteObject(client);
+		}
 	}
 
 	/**
@@ -243,9 +347,10 @@ public abstract class ClientManager extends ObjectManager {
 	 * @methodtype set
 	 */
 	public void changeNickname(String oldNickName, String newNickName) throws IllegalArgumentException {
-		assertNicknameIsNotUsed(newNickName);
+		if (!reserveNickname(newNickName)) {
+			throw new IllegalArgumentException("Nickname " + newNickName + " is already used.");
+		}
 
-		listOfUsedNicknames.remove(oldNickName);
-		listOfUsedNicknames.add(newNickName);
+		releaseNickname(oldNickName);
 	}
 }
@@ -2,7 +2,9 @@ package org.wahlzeit.model;
 
 import com.googlecode.objectify.ObjectifyService;
 import com.googlecode.objectify.Work;
+import org.wahlzeit.services.LogBuilder;
 import org.wahlzeit.services.ObjectManager;
+import org.wahlzeit.services.SysConfig;
 import org.wahlzeit.servlets.AbstractServlet;
 
 import java.util.logging.Logger;
@@ -42,6 +44,55 @@ public class GlobalsManager extends ObjectManager {
 		PhotoId.setCurrentIdFromInt(globals.getLastPhotoId());
 		Case.setLastCaseId(new CaseId(globals.getLastCaseId()));
 		AbstractServlet.setLastSessionId(globals.getLastSessionId());
+
+		installBlockSources();
+	}
+
+	/**
+	 * From now on, new user, photo and case ids are taken from blocks reserved in the Globals entity, so that several
+	 * instances never hand out the same id and no write of the Globals is needed per id.
+	 *
+	 * @methodtype command
+	 */
+	protected void installBlockSources() {
+		int blockSize = SysConfig.getIdBlockSize();
+
+		UserManager.getInstance().getClientIdAllocator().setBlockSource(new GlobalsBlockSource() {
+			@Override
+			protected long getLastId(Globals globals) {
+				Long lastUserId = globals.getLastUserId();
+				return (lastUserId != null) ? lastUserId : 0;
+			}
+
+			@Override
+			protected void setLastId(Globals globals, long lastId) {
+				globals.setLastUserId(lastId);
+			}
+		}, blockSize);
+
+		PhotoId.getIdAllocator().setBlockSource(new GlobalsBlockSource() {
+			@Override
+			protected long getLastId(Globals globals) {
+				return globals.getLastPhotoId();
+			}
+
+			@Override
+			protected void setLastId(Globals globals, long lastId) {
+				globals.setLastPhotoId((int) lastId);
+			}
+		}, blockSize);
+
+		Case.getIdAllocator().setBlockSource(new GlobalsBlockSource() {
+			@Override
+			protected long getLastId(Globals globals) {
+				return globals.getLastCaseId();
+			}
+
+			@Override
+			protected void setLastId(Globals globals, long lastId) {
+				globals.setLastCaseId((int) lastId);
+			}
+		}, blockSize);
 	}
 
 	/**
@@ -91,22 +142,89 @@ public class GlobalsManager extends ObjectManager {
 	}
 
 	/**
-	 * @methodtype command Saves all global variables.
+	 * @methodtype command Saves all global variables. Stored values are never lowered, as other instances may have
+	 * reserved ids beyond the ones known here.
 	 */
 	public synchronized void saveGlobals() {
-		final Globals globals = new Globals();
-		globals.setLastUserId(UserManager.getInstance().getLastClientId());
-		globals.setLastPhotoId(PhotoId.getCurrentIdAsInt());
-		globals.setLastCaseId(Case.getLastCaseId().asInt());
-		globals.setLastSessionId(AbstractServlet.getLastSessionId());
-		log.info(globals.asString());
+		final long lastUserId = UserManager.getInstance().getLastClientId();
+		final int lastPhotoId = PhotoId.getCurrentIdAsInt();
+		final int lastCaseId = Case.getLastCaseId().asInt();
+		final int lastSessionId = AbstractServlet.getLastSessionId();
 
-		ObjectifyService.run(new Work<Void>() {
+		Globals globals = ObjectifyService.run(new Work<Globals>() {
 			@Override
-			public Void run() {
-				writeObject(globals);
-				return null;
+			public Globals run() {
+				return ofy().transactNew(new Work<Globals>() {
+					@Override
+					public Globals run() {
+						Globals result = loadGlobalsEntity();
+						Long storedUserId = result.getLastUserId();
+						result.setLastUserId(Math.max((storedUserId != null) ? storedUserId : 0, lastUserId));
+						result.setLastPhotoId(Math.max(result.getLastPhotoId(), lastPhotoId));
+						result.setLastCaseId(Math.max(result.getLastCaseId(), lastCaseId));
+						result.setLastSessionId(Math.max(result.getLastSessionId(), lastSessionId));
+						ofy().save().entity(result).now();
+						return result;
+					}
+				});
 			}
 		});
+		log.info(globals.asString());
+	}
+
+	/**
+	 * Must be called within a transaction.
+	 *
+	 * @methodtype get
+	 */
+	protected Globals loadGlobalsEntity() {
+		Globals result = ofy().load().type(Globals.class).id(Globals.DEAULT_ID).now();
+		if (result == null) {
+			result = new Globals();
+		}
+		return result;
+	}
+
+	/**
+	 * Reserves blocks of ids by raising one of the last ids of the Globals entity in a transaction.
+	 */
+	protected abstract class GlobalsBlockSource implements IdBlockAllocator.BlockSource {
+
+		/**
+		 *
+		 */
+		@Override
+		public long reserveBlock(final int count) {
+			long first = ObjectifyService.run(new Work<Long>() {
+				@Override
+				public Long run() {
+					return ofy().transactNew(new Work<Long>() {
+						@Override
+						public Long run() {
+							Globals globals = loadGlobalsEntity();
+							long result = getLastId(globals) + 1;
+							setLastId(globals, result + count - 1);
+							ofy().save().entity(globals).now();
+							return result;
+						}
+					});
+				}
+			});
+
+			log.config(LogBuilder.createSystemMessage().
+					addParameter("Reserved ids from", first).
+					addParameter("count", count).toString());
+			return first;
+		}
+
+		/**
+		 * @methodtype get
+		 */
+		protected abstract long getLastId(Globals globals);
+
+		/**
+		 * @methodtype set
+		 */
+		protected abstract void setLastId(Globals globals, long lastId);
 	}
 }
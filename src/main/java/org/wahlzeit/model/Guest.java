@@ -38,6 +38,7 @@ public class Guest extends Client {
 	 *
 	 */
 	public Guest() {
+		ephemeral = true;
 		String userId = GUEST_PREFIX + UserManager.getInstance().getNextClientId();
 		initialize(userId, userId, EmailAddress.EMPTY, AccessRights.GUEST, null);
 	}
@@ -47,6 +48,7 @@ public class Guest extends Client {
 	 * previousClient is used so set these basic settings in the new <@link>Guest</@link>.
 	 */
 	public Guest(Client previousClient) {
+		ephemeral = true;
 		String userId = GUEST_PREFIX + UserManager.getInstance().getNextClientId();
 		initialize(userId, userId, EmailAddress.EMPTY, AccessRights.GUEST, previousClient);
 	}
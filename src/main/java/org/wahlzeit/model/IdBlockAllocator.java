@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.model;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An IdBlockAllocator hands out ids from a block of consecutive ids with an atomic counter. When the block is used up,
+ * the next one is reserved from its BlockSource, e.g. the Globals entity shared by all instances. Without a
+ * BlockSource, ids are simply counted up locally.
+ */
+public class IdBlockAllocator {
+
+	/**
+	 * A BlockSource reserves blocks of ids, so that no two allocators hand out the same id.
+	 */
+	public interface BlockSource {
+
+		/**
+		 * Reserves count consecutive ids and returns the first of them.
+		 */
+		long reserveBlock(int count);
+
+	}
+
+	/**
+	 * The ids in [next, end) that have not been handed out yet
+	 */
+	protected static class IdBlock {
+
+		protected final AtomicLong next;
+		protected final long end;
+
+		protected IdBlock(long first, long end) {
+			this.next = new AtomicLong(first);
+			this.end = end;
+		}
+	}
+
+	/**
+	 *
+	 */
+	protected volatile IdBlock currentBlock = new IdBlock(1, Long.MAX_VALUE);
+	protected volatile BlockSource blockSource = null;
+	protected volatile int blockSize = 1;
+
+	/**
+	 * The highest id handed out (or set) so far
+	 */
+	protected final AtomicLong lastId = new AtomicLong(0);
+
+	/**
+	 * @methodtype command
+	 */
+	public long nextId() {
+		while (true) {
+			IdBlock block = currentBlock;
+			if (block != null) {
+				long result = block.next.getAndIncrement();
+				if (result < block.end) {
+					updateLastId(result);
+					return result;
+				}
+			}
+			reserveNextBlock(block);
+		}
+	}
+
+	/**
+	 * Only one thread reserves a new block; the others find it in place when they get the lock.
+	 *
+	 * @methodtype command
+	 */
+	protected synchronized void reserveNextBlock(IdBlock exhaustedBlock) {
+		if (currentBlock != exhaustedBlock) {
+			return;
+		}
+
+		if (blockSource == null) {
+			currentBlock = new IdBlock(lastId.get() + 1, Long.MAX_VALUE);
+		} else {
+			int count = blockSize;
+			long first = blockSource.reserveBlock(count);
+			currentBlock = new IdBlock(first, first + count);
+		}
+	}
+
+	/**
+	 * @methodtype command
+	 * @methodproperty primitive
+	 */
+	protected void updateLastId(long id) {
+		long last = lastId.get();
+		while (id > last && !lastId.compareAndSet(last, id)) {
+			last = lastId.get();
+		}
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public long getLastId() {
+		return lastId.get();
+	}
+
+	/**
+	 * Continues counting locally after the given id; only used without a BlockSource.
+	 *
+	 * @methodtype set
+	 */
+	public synchronized void setLastId(long id) {
+		lastId.set(id);
+		if (blockSource == null) {
+			currentBlock = new IdBlock(id + 1, Long.MAX_VALUE);
+		}
+	}
+
+	/**
+	 * From now on, ids are handed out from blocks of the given size, reserved from the given BlockSource.
+	 *
+	 * @methodtype set
+	 */
+	public synchronized void setBlockSource(BlockSource newBlockSource, int newBlockSize) {
+		blockSource = newBlockSource;
+		blockSize = Math.max(1, newBlockSize);
+		currentBlock = null;
+	}
+
+}
@@ -77,6 +77,7 @@ public class Photo extends DataObject {
 	/**
 	 * Each photo can be viewed in different sizes (XS, S, M, L, XL)
 	 * Images are pre-computed in these sizes to optimize bandwidth when requested.
+	 * Only images that have not been persisted yet are held here; all others live in the PhotoManager's image cache.
 	 */
 	@Ignore
 	transient protected Map<PhotoSize, Image> images = new ArrayMap<PhotoSize, Image>();
@@ -157,7 +158,11 @@ public class Photo extends DataObject {
 	 * @methodtype get
 	 */
 	public Image getImage(PhotoSize photoSize) {
-		return images.get(photoSize);
+		Image result = getUnsavedImage(photoSize);
+		if (result == null) {
+			result = PhotoManager.getInstance().getImage(id, photoSize);
+		}
+		return result;
 	}
 
 	/**
@@ -167,6 +172,22 @@ public class Photo extends DataObject {
 		this.images.put(photoSize, image);
 	}
 
+	/**
+	 * @methodtype get
+	 */
+	public Image getUnsavedImage(PhotoSize photoSize) {
+		return images.get(photoSize);
+	}
+
+	/**
+	 * Drops the image from the photo once it has been persisted and handed over to the image cache.
+	 *
+	 * @methodtype command
+	 */
+	public void releaseImage(PhotoSize photoSize) {
+		images.remove(photoSize);
+	}
+
 	/**
 	 * @methodtype get
 	 */
@@ -114,6 +114,7 @@ public class PhotoCaseManager extends ObjectManager {
 	public void savePhotoCases() {
 		if (openPhotoCases != null && openPhotoCases.size() > 0) {
 			updateObjects(openPhotoCases.values());
+			flush();
 		}
 	}
 
@@ -21,12 +21,12 @@
 package org.wahlzeit.model;
 
 import org.wahlzeit.services.LogBuilder;
+import org.wahlzeit.utils.CompressedBitmap;
+import org.wahlzeit.utils.Permutation;
 import org.wahlzeit.utils.StringUtil;
 
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Random;
 import java.util.logging.Logger;
@@ -45,6 +45,11 @@ public class PhotoFilter implements Serializable {
 	public static final String USER_NAME = "userName";
 	public static final String TAGS = "tags";
 
+	/**
+	 *
+	 */
+	protected static final int INVALID_VERSION = -1;
+
 	/**
 	 *
 	 */
@@ -54,9 +59,20 @@ public class PhotoFilter implements Serializable {
 	/**
 	 *
 	 */
-	protected List<PhotoId> displayablePhotoIds;
-	protected List<PhotoId> processedPhotoIds = new LinkedList<PhotoId>();
-	protected List<PhotoId> skippedPhotoIds = new LinkedList<PhotoId>();
+	protected CompressedBitmap processedPhotoIds = new CompressedBitmap();
+	protected CompressedBitmap skippedPhotoIds = new CompressedBitmap();
+
+	/**
+	 * The displayable photo ids are the candidate photo ids in the random order given by displayableSeed; only the
+	 * seed and the cursor into that order are kept, so a deserialized filter continues where it left off without
+	 * rebuilding anything. They are regenerated when the filter changes, the PhotoManager publishes new photos, or
+	 * the cursor has run through all of them. Note that the photos version is local to a PhotoManager instance, so a
+	 * session that moves to another server instance starts over with a new order there.
+	 */
+	protected int displayableCursor = 0;
+	protected int displayablePhotosVersion = INVALID_VERSION;
+	protected long displayableSeed = 0;
+	protected boolean isDisplayingSkippedPhotos = false;
 
 	/**
 	 *
@@ -83,7 +99,6 @@ public class PhotoFilter implements Serializable {
 	public void clear() {
 		setUserName("");
 		setTags(Tags.EMPTY_TAGS);
-		displayablePhotoIds.clear();
 		processedPhotoIds.clear();
 	}
 
@@ -140,47 +155,87 @@ public class PhotoFilter implements Serializable {
 	 * @methodtype command
 	 */
 	public void generateDisplayablePhotoIds() {
-		displayablePhotoIds = getFilteredPhotoIds();
+		displayablePhotosVersion = getPhotoManager().getPhotosVersion();
+		displayableSeed = randomNumber.nextLong();
+		displayableCursor = 0;
+
+		int[] candidateIds = getCandidatePhotoIds();
+		log.config(LogBuilder.createSystemMessage().addParameter("Number of photo candidates", candidateIds.length)
+				.toString());
+		isDisplayingSkippedPhotos = !hasUnskippedCandidates(candidateIds) && !skippedPhotoIds.isEmpty();
+	}
+
+	/**
+	 * @methodtype boolean-query
+	 */
+	public boolean hasCurrentDisplayablePhotoIds() {
+		return displayablePhotosVersion == getPhotoManager().getPhotosVersion();
 	}
 
 	/**
-	 * Get a random photo that has not been rated. If possible avoid skipped photos.
+	 * Get the next photo in random order that has not been rated. If possible avoid skipped photos. The displayable
+	 * photo ids are only regenerated if they are outdated or have all been shown.
 	 */
-	public PhotoId getRandomDisplayablePhotoId() {
-		if (!displayablePhotoIds.isEmpty()) {
-			int size = displayablePhotoIds.size();
-			int index = ((randomNumber.nextInt() % size) + size) / 2;
-			return displayablePhotoIds.get(index);
-		} else {
-			return PhotoId.NULL_ID;
+	public PhotoId getNextDisplayablePhotoId() {
+		if (!hasCurrentDisplayablePhotoIds()) {
+			generateDisplayablePhotoIds();
+		}
+
+		PhotoId result = advanceDisplayableCursor();
+		if (result == null) {
+			generateDisplayablePhotoIds();
+			result = advanceDisplayableCursor();
 		}
+
+		return (result != null) ? result : PhotoId.NULL_ID;
 	}
 
 	/**
+	 * @methodtype command
 	 *
+	 * Moves the cursor to the next photo that is still displayable and returns it, or null if there is none left.
+	 * Processed, skipped and hidden photos are passed over here, so that the order does not depend on them. The
+	 * skipped photos change with every skip, but a filter only shows them once the other candidates are used up.
 	 */
-	public List<PhotoId> getDisplayablePhotoIds() {
-		return displayablePhotoIds;
+	protected PhotoId advanceDisplayableCursor() {
+		int[] candidateIds = isDisplayingSkippedPhotos ? skippedPhotoIds.toArray() : getCandidatePhotoIds();
+		while (displayableCursor < candidateIds.length) {
+			int index = Permutation.permute(displayableCursor++, candidateIds.length, displayableSeed);
+			PhotoId candidate = PhotoId.getIdFromInt(candidateIds[index]);
+			if (isDisplayablePhotoId(candidate)) {
+				return candidate;
+			}
+		}
+		return null;
 	}
 
 	/**
+	 * Photos may have been processed, skipped or hidden since the displayable photo ids were generated.
 	 *
+	 * @methodtype boolean-query
 	 */
-	public void setDisplayablePhotoIds(List<PhotoId> newPhotoIds) {
-		displayablePhotoIds = newPhotoIds;
+	protected boolean isDisplayablePhotoId(PhotoId photoId) {
+		int id = photoId.asInt();
+		if (processedPhotoIds.contains(id) || (!isDisplayingSkippedPhotos && skippedPhotoIds.contains(id))) {
+			return false;
+		}
+
+		Photo photo = getPhotoManager().getPhotoFromId(photoId);
+		return (photo != null) && photo.isVisible();
 	}
 
 	/**
 	 *
 	 */
 	public void resetDisplayablePhotoIds() {
-		displayablePhotoIds = new ArrayList<PhotoId>();
+		displayableCursor = 0;
+		displayablePhotosVersion = INVALID_VERSION;
 	}
 
 	/**
 	 *
 	 */
-	public List<PhotoId> getProcessedPhotoIds() {
+	public CompressedBitmap getProcessedPhotoIds() {
 		return processedPhotoIds;
 	}
 
@@ -188,11 +243,7 @@ public class PhotoFilter implements Serializable {
 	 *
 	 */
 	public boolean isProcessedPhotoId(PhotoId photoId) {
-		log.info("photoId: " + photoId.asString());
-		for (PhotoId id : processedPhotoIds) {
-			log.info("Processed id: " + id.asString());
-		}
-		return processedPhotoIds.contains(photoId);
+		return processedPhotoIds.contains(photoId.asInt());
 	}
 
 	/**
@@ -200,25 +251,22 @@ public class PhotoFilter implements Serializable {
 	 */
 	public void addProcessedPhoto(Photo photo) {
 		PhotoId photoId = photo.getId();
-		processedPhotoIds.add(photoId);
-		skippedPhotoIds.remove(photoId);
-		if (displayablePhotoIds != null) {
-			displayablePhotoIds.remove(photoId);
-		}
+		processedPhotoIds.add(photoId.asInt());
+		skippedPhotoIds.remove(photoId.asInt());
 	}
 
 
 	/**
 	 * @methodtype get
 	 */
-	public List<PhotoId> getSkippedPhotoIds() {
+	public CompressedBitmap getSkippedPhotoIds() {
 		return skippedPhotoIds;
 	}
 
 	/**
 	 * @methodtype set
 	 */
-	public void setSkippedPhotoIds(List<PhotoId> skippedPhotoIds) {
+	public void setSkippedPhotoIds(CompressedBitmap skippedPhotoIds) {
 		this.skippedPhotoIds = skippedPhotoIds;
 	}
 
@@ -226,54 +274,39 @@ public class PhotoFilter implements Serializable {
 	 * @methodtype set
 	 */
 	public void addSkippedPhotoId(PhotoId skippedPhotoId) {
-		if (!skippedPhotoIds.contains(skippedPhotoId)) {
-			skippedPhotoIds.add(skippedPhotoId);
-		}
+		skippedPhotoIds.add(skippedPhotoId.asInt());
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	protected int[] getCandidatePhotoIds() {
+		return getPhotoManager().getCandidatePhotoIds(getFilterConditions());
 	}
 
 	/**
+	 * Checks whether a visible photo is left that has been neither processed nor skipped.
 	 *
+	 * @methodtype boolean-query
 	 */
-	protected List<PhotoId> getFilteredPhotoIds() {
-		// get all tags that match the filter conditions
-		List<PhotoId> result = new LinkedList<PhotoId>();
-		int noFilterConditions = getFilterConditions().size();
-		log.config(LogBuilder.createSystemMessage().
-				addParameter("Number of filter conditions", String.valueOf(noFilterConditions)).toString());
-
-		Collection<PhotoId> candidates;
-		if (noFilterConditions == 0) {
-			candidates = PhotoManager.getInstance().getPhotoCache().keySet();
-		} else {
-			List<Tag> tags = new LinkedList<Tag>();
-			candidates = new LinkedList<PhotoId>();
-			for (String condition : getFilterConditions()) {
-				PhotoManager.getInstance().addTagsThatMatchCondition(tags, condition);
+	protected boolean hasUnskippedCandidates(int[] candidateIds) {
+		PhotoManager photoManager = getPhotoManager();
+		for (int candidateId : candidateIds) {
+			if (processedPhotoIds.contains(candidateId) || skippedPhotoIds.contains(candidateId)) {
+				continue;
 			}
-			// get the list of all photo ids that correspond to the tags
-			for (Tag tag : tags) {
-				candidates.add(PhotoId.getIdFromString(tag.getPhotoId()));
+			Photo photoCandidate = photoManager.getPhotoFromId(PhotoId.getIdFromInt(candidateId));
+			if (photoCandidate != null && photoCandidate.isVisible()) {
+				return true;
 			}
 		}
+		return false;
+	}
 
-		int newPhotos = 0;
-		for (PhotoId candidateId : candidates) {
-			Photo photoCandidate = PhotoManager.getInstance().getPhoto(candidateId);
-			if (!processedPhotoIds.contains(candidateId) && !skippedPhotoIds.contains(candidateId) &&
-					photoCandidate.isVisible()) {
-				result.add(candidateId);
-				++newPhotos;
-			}
-		}
-		int skippedPhotos = skippedPhotoIds.size();
-		if (newPhotos == 0 && skippedPhotos > 0) {
-			result.addAll(skippedPhotoIds);
-			newPhotos = skippedPhotos;
-		}
-
-		log.config(LogBuilder.createSystemMessage().addParameter("Number of photos to show", newPhotos)
-				.toString());
-
-		return result;
+	/**
+	 * @methodtype get
+	 */
+	protected PhotoManager getPhotoManager() {
+		return PhotoManager.getInstance();
 	}
 }
@@ -20,8 +20,12 @@
 
 package org.wahlzeit.model;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A photo id identifies a photo with a unique number.
@@ -33,22 +37,26 @@ public class PhotoId implements Serializable {
 	/**
 	 * 0 is never returned from nextValue; first value is 1
 	 */
-	protected static int currentId = 0;
+	protected static final AtomicInteger currentId = new AtomicInteger(0);
 
 	/**
-	 *
+	 * Hands out new ids; GlobalsManager lets it reserve blocks of ids shared by all instances
 	 */
-	public static final int BUFFER_SIZE_INCREMENT = 64;
+	protected static final IdBlockAllocator idAllocator = new IdBlockAllocator();
 
 	/**
-	 *
+	 * Interned PhotoIds, so that ids can be compared by identity
 	 */
-	public static final PhotoId NULL_ID = new PhotoId(0);
+	protected static final PhotoIdTable ids = new PhotoIdTable();
 
 	/**
 	 *
 	 */
-	protected static PhotoId[] ids = new PhotoId[BUFFER_SIZE_INCREMENT];
+	public static final PhotoId NULL_ID = new PhotoId(0);
+
+	static {
+		ids.put(NULL_ID);
+	}
 
 	/**
 	 * What a hack :-)
@@ -68,52 +76,49 @@ public class PhotoId implements Serializable {
 	 *
 	 */
 	public static int getCurrentIdAsInt() {
-		return currentId;
+		return currentId.get();
 	}
 
 	/**
-	 *
+	 * Interned ids are kept; they are equal to any PhotoId with the same value anyway.
+	 */
+	public static void setCurrentIdFromInt(int id) {
+		currentId.set(id);
+		idAllocator.setLastId(id);
+	}
+
+	/**
+	 * @methodtype get
 	 */
-	public static synchronized void setCurrentIdFromInt(int id) {
-		currentId = id;
-		ids = new PhotoId[currentId + BUFFER_SIZE_INCREMENT];
-		ids[0] = NULL_ID;
+	public static IdBlockAllocator getIdAllocator() {
+		return idAllocator;
 	}
 
 	/**
 	 *
 	 */
-	public static synchronized int getNextIdAsInt() {
-		currentId += 1;
-		if (currentId >= ids.length) {
-			PhotoId[] nids = new PhotoId[currentId + BUFFER_SIZE_INCREMENT];
-			System.arraycopy(ids, 0, nids, 0, currentId);
-			ids = nids;
+	public static int getNextIdAsInt() {
+		int result = (int) idAllocator.nextId();
+		int current = currentId.get();
+		while (result > current && !currentId.compareAndSet(current, result)) {
+			current = currentId.get();
 		}
-		return currentId;
+		return result;
 	}
 
 	/**
-	 *
+	 * Ids above currentId may have been handed out by other instances; they are valid but not interned, which keeps
+	 * the table bounded when ids come from request parameters.
 	 */
 	public static PhotoId getIdFromInt(int id) {
-		if ((id < 0) || (id > currentId)) {
+		if (id <= 0) {
 			return NULL_ID;
+		} else if (id > currentId.get()) {
+			PhotoId result = ids.get(id);
+			return (result != null) ? result : new PhotoId(id);
 		}
 
-		// @FIXME http://en.wikipedia.org/wiki/Double-checked_locking
-		PhotoId result = ids[id];
-		if (result == null) {
-			synchronized (ids) {
-				result = ids[id];
-				if (result == null) {
-					result = new PhotoId(id);
-					ids[id] = result;
-				}
-			}
-		}
-
-		return result;
+		return ids.getOrCreate(id);
 	}
 
 	/**
@@ -147,6 +152,11 @@ public class PhotoId implements Serializable {
 	protected int value = 0;
 	protected String stringValue = null;
 
+	/**
+	 * Only the int value goes into a serialized PhotoId, e.g. in an HttpSession; the string is derived from it
+	 */
+	private static final ObjectStreamField[] serialPersistentFields = {new ObjectStreamField("value", int.class)};
+
 	/**
 	 *
 	 */
@@ -155,6 +165,21 @@ public class PhotoId implements Serializable {
 		stringValue = getFromInt(myValue);
 	}
 
+	/**
+	 * @methodtype initialization
+	 */
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		stringValue = getFromInt(value);
+	}
+
+	/**
+	 * Deserialized ids are replaced by their interned instances.
+	 */
+	protected Object readResolve() {
+		return getIdFromInt(value);
+	}
+
 	/**
 	 *
 	 */
@@ -208,38 +233,42 @@ public class PhotoId implements Serializable {
 	 *
 	 */
 	public static String getFromInt(int id) {
-		StringBuffer result = new StringBuffer(10);
-
-		id += ID_START;
-		for (; id > 0; id = id / 36) {
-			char letterOrDigit;
-			int modulus = id % 36;
-			if (modulus < 10) {
-				letterOrDigit = (char) ((int) '0' + modulus);
-			} else {
-				letterOrDigit = (char) ((int) 'a' - 10 + modulus);
-			}
-			result.insert(0, letterOrDigit);
+		// "x" plus at most 7 base-36 digits for a positive int
+		char[] result = new char[8];
+		int start = result.length;
 
+		long value = (long) id + ID_START;
+		for (; value > 0; value = value / 36) {
+			result[--start] = Character.forDigit((int) (value % 36), 36);
 		}
+		result[--start] = 'x';
 
-		return "x" + result.toString();
+		return new String(result, start, result.length - start);
 	}
 
 	/**
-	 *
+	 * Parses the string form without allocating; anything that is not a valid id yields 0, the NULL_ID value.
 	 */
 	public static int getFromString(String value) {
-		int result = 0;
+		if (value == null) {
+			return 0;
+		}
+
+		long result = 0;
 		for (int i = 1; i < value.length(); i++) {
-			int temp = 0;
+			int digit;
 			char letterOrDigit = value.charAt(i);
-			if (letterOrDigit < 'a') {
-				temp = (int) letterOrDigit - '0';
+			if (letterOrDigit >= '0' && letterOrDigit <= '9') {
+				digit = letterOrDigit - '0';
+			} else if (letterOrDigit >= 'a' && letterOrDigit <= 'z') {
+				digit = 10 + letterOrDigit - 'a';
 			} else {
-				temp = 10 + (int) letterOrDigit - 'a';
+				return 0;
+			}
+			result = result * 36 + digit;
+			if (result > (long) Integer.MAX_VALUE + ID_START) {
+				return 0;
 			}
-			result = result * 36 + temp;
 		}
 
 		result -= ID_START;
@@ -247,7 +276,7 @@ public class PhotoId implements Serializable {
 			result = 0;
 		}
 
-		return result;
+		return (int) result;
 	}
 
 }
@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.model;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A lock-free interning table for PhotoIds. The non-negative int space is split into a fixed directory of
+ * directories of segments, each an AtomicReferenceArray. Segments are only created when an id in their range is
+ * interned, so the table never copies on growth and stays small for sparse ids. Readers never lock; writers race
+ * with compareAndSet and the loser takes the winner's object.
+ */
+public class PhotoIdTable {
+
+	/**
+	 * 31 bits of id = 11 bits of directory index + 10 bits of sub-directory index + 10 bits of segment index
+	 */
+	protected static final int SEGMENT_BITS = 10;
+	protected static final int SEGMENT_SIZE = 1 << SEGMENT_BITS;
+	protected static final int SUB_DIRECTORY_BITS = 10;
+	protected static final int SUB_DIRECTORY_SIZE = 1 << SUB_DIRECTORY_BITS;
+	protected static final int DIRECTORY_SIZE = 1 << (31 - SEGMENT_BITS - SUB_DIRECTORY_BITS);
+
+	/**
+	 *
+	 */
+	protected final AtomicReferenceArray<AtomicReferenceArray<AtomicReferenceArray<PhotoId>>> directory =
+			new AtomicReferenceArray<AtomicReferenceArray<AtomicReferenceArray<PhotoId>>>(DIRECTORY_SIZE);
+
+	/**
+	 * @methodtype get
+	 */
+	public PhotoId get(int id) {
+		assertIsValidId(id);
+
+		AtomicReferenceArray<AtomicReferenceArray<PhotoId>> subDirectory = directory.get(getDirectoryIndex(id));
+		if (subDirectory == null) {
+			return null;
+		}
+
+		AtomicReferenceArray<PhotoId> segment = subDirectory.get(getSubDirectoryIndex(id));
+		if (segment == null) {
+			return null;
+		}
+
+		return segment.get(getSegmentIndex(id));
+	}
+
+	/**
+	 * Returns the interned PhotoId for id, creating it if necessary.
+	 *
+	 * @methodtype get
+	 */
+	public PhotoId getOrCreate(int id) {
+		PhotoId result = get(id);
+		if (result != null) {
+			return result;
+		}
+
+		AtomicReferenceArray<PhotoId> segment = getOrCreateSegment(id);
+		int index = getSegmentIndex(id);
+		PhotoId newId = new PhotoId(id);
+		if (segment.compareAndSet(index, null, newId)) {
+			return newId;
+		}
+
+		return segment.get(index);
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	public void put(PhotoId photoId) {
+		assertIsValidId(photoId.asInt());
+		getOrCreateSegment(photoId.asInt()).compareAndSet(getSegmentIndex(photoId.asInt()), null, photoId);
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	protected AtomicReferenceArray<PhotoId> getOrCreateSegment(int id) {
+		int directoryIndex = getDirectoryIndex(id);
+		AtomicReferenceArray<AtomicReferenceArray<PhotoId>> subDirectory = directory.get(directoryIndex);
+		if (subDirectory == null) {
+			directory.compareAndSet(directoryIndex, null,
+					new AtomicReferenceArray<AtomicReferenceArray<PhotoId>>(SUB_DIRECTORY_SIZE));
+			subDirectory = directory.get(directoryIndex);
+		}
+
+		int subDirectoryIndex = getSubDirectoryIndex(id);
+		AtomicReferenceArray<PhotoId> segment = subDirectory.get(subDirectoryIndex);
+		if (segment == null) {
+			subDirectory.compareAndSet(subDirectoryIndex, null, new AtomicReferenceArray<PhotoId>(SEGMENT_SIZE));
+			segment = subDirectory.get(subDirectoryIndex);
+		}
+
+		return segment;
+	}
+
+	/**
+	 * @methodtype assertion
+	 */
+	protected void assertIsValidId(int id) {
+		if (id < 0) {
+			throw new IllegalArgumentException("invalid photo id: " + id);
+		}
+	}
+
+	/**
+	 * @methodtype conversion
+	 */
+	protected static int getDirectoryIndex(int id) {
+		return id >>> (SEGMENT_BITS + SUB_DIRECTORY_BITS);
+	}
+
+	/**
+	 * @methodtype conversion
+	 */
+	protected static int getSubDirectoryIndex(int id) {
+		return (id >>> SEGMENT_BITS) & (SUB_DIRECTORY_SIZE - 1);
+	}
+
+	/**
+	 * @methodtype conversion
+	 */
+	protected static int getSegmentIndex(int id) {
+		return id & (SEGMENT_SIZE - 1);
+	}
+
+}
@@ -0,0 +1,310 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.model;
+
+import com.google.appengine.api.images.Image;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A thread-safe, bounded LRU cache for the scaled images of photos. The bound is the sum of the image sizes in bytes;
+ * least recently used images are evicted first and can be reloaded from the ImageStorage. To keep concurrent requests
+ * from contending for a single lock, the cache is split into segments by key hash; each segment has its own lock,
+ * its own LRU order and an equal share of the maximum weight.
+ */
+public class PhotoImageCache {
+
+	/**
+	 *
+	 */
+	public static final long DEFAULT_MAX_WEIGHT = 64L * 1024 * 1024;
+
+	/**
+	 * Must be a power of two
+	 */
+	public static final int DEFAULT_SEGMENT_COUNT = 16;
+
+	/**
+	 *
+	 */
+	protected final Segment[] segments;
+	protected final int segmentMask;
+
+	/**
+	 *
+	 */
+	protected volatile long maxWeight;
+
+	/**
+	 *
+	 */
+	protected AtomicLong hits = new AtomicLong(0);
+	protected AtomicLong misses = new AtomicLong(0);
+	protected AtomicLong evictions = new AtomicLong(0);
+
+	/**
+	 *
+	 */
+	public PhotoImageCache(long maxWeight) {
+		this(maxWeight, DEFAULT_SEGMENT_COUNT);
+	}
+
+	/**
+	 * @param segmentCount the number of segments, a power of two
+	 */
+	public PhotoImageCache(long maxWeight, int segmentCount) {
+		if ((segmentCount <= 0) || (Integer.bitCount(segmentCount) != 1)) {
+			throw new IllegalArgumentException("segment count must be a power of two: " + segmentCount);
+		}
+
+		segments = new Segment[segmentCount];
+		segmentMask = segmentCount - 1;
+		for (int i = 0; i < segmentCount; i++) {
+			segments[i] = new Segment();
+		}
+		setMaxWeight(maxWeight);
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public Image get(PhotoId photoId, PhotoSize photoSize) {
+		Long key = asKey(photoId, photoSize);
+		Image result = getSegment(key).get(key);
+
+		if (result != null) {
+			hits.incrementAndGet();
+		} else {
+			misses.incrementAndGet();
+		}
+		return result;
+	}
+
+	/**
+	 * Images larger than the maximum weight of a segment are not cached at all.
+	 *
+	 * @methodtype command
+	 */
+	public void put(PhotoId photoId, PhotoSize photoSize, Image image) {
+		Long key = asKey(photoId, photoSize);
+		getSegment(key).put(key, image);
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	public void remove(PhotoId photoId, PhotoSize photoSize) {
+		Long key = asKey(photoId, photoSize);
+		getSegment(key).remove(key);
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	public void clear() {
+		for (Segment segment : segments) {
+			segment.clear();
+		}
+	}
+
+	/**
+	 * @methodtype set
+	 */
+	public void setMaxWeight(long newMaxWeight) {
+		maxWeight = newMaxWeight;
+		for (Segment segment : segments) {
+			segment.setMaxWeight(newMaxWeight / segments.length);
+		}
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public long getMaxWeight() {
+		return maxWeight;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public long getWeight() {
+		long result = 0;
+		for (Segment segment : segments) {
+			result += segment.getWeight();
+		}
+		return result;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public int getSize() {
+		int result = 0;
+		for (Segment segment : segments) {
+			result += segment.getSize();
+		}
+		return result;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	protected Segment getSegment(Long key) {
+		int hash = key.hashCode() * 0x9E3779B9;
+		return segments[(hash ^ (hash >>> 16)) & segmentMask];
+	}
+
+	/**
+	 * @methodtype conversion
+	 */
+	protected static Long asKey(PhotoId photoId, PhotoSize photoSize) {
+		return ((long) photoId.asInt() << 8) | photoSize.asInt();
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	protected static long getWeight(Image image) {
+		byte[] imageData = image.getImageData();
+		return (imageData != null) ? imageData.length : 0;
+	}
+
+	/**
+	 * One lock, LRU order and weight bound for the keys that hash to it
+	 */
+	protected class Segment {
+
+		/**
+		 * Maps (photo id, photo size) keys to images, in access order
+		 */
+		protected LinkedHashMap<Long, Image> images = new LinkedHashMap<Long, Image>(16, 0.75f, true);
+
+		/**
+		 *
+		 */
+		protected long maxWeight;
+		protected long weight = 0;
+
+		/**
+		 * @methodtype get
+		 */
+		protected synchronized Image get(Long key) {
+			return images.get(key);
+		}
+
+		/**
+		 * @methodtype command
+		 */
+		protected synchronized void put(Long key, Image image) {
+			long imageWeight = PhotoImageCache.getWeight(image);
+			if (imageWeight > maxWeight) {
+				return;
+			}
+
+			Image previous = images.put(key, image);
+			if (previous != null) {
+				weight -= PhotoImageCache.getWeight(previous);
+			}
+			weight += imageWeight;
+
+			evictIfNecessary();
+		}
+
+		/**
+		 * @methodtype command
+		 */
+		protected synchronized void remove(Long key) {
+			Image previous = images.remove(key);
+			if (previous != null) {
+				weight -= PhotoImageCache.getWeight(previous);
+			}
+		}
+
+		/**
+		 * @methodtype command
+		 */
+		protected synchronized void clear() {
+			images.clear();
+			weight = 0;
+		}
+
+		/**
+		 * @methodtype set
+		 */
+		protected synchronized void setMaxWeight(long newMaxWeight) {
+			maxWeight = newMaxWeight;
+			evictIfNecessary();
+		}
+
+		/**
+		 * @methodtype get
+		 */
+		protected synchronized long getWeight() {
+			return weight;
+		}
+
+		/**
+		 * @methodtype get
+		 */
+		protected synchronized int getSize() {
+			return images.size();
+		}
+
+		/**
+		 * @methodtype command
+		 * @methodproperty primitive
+		 */
+		protected void evictIfNecessary() {
+			Iterator<Map.Entry<Long, Image>> i = images.entrySet().iterator();
+			while (weight > maxWeight && i.hasNext()) {
+				Image eldest = i.next().getValue();
+				i.remove();
+				weight -= PhotoImageCache.getWeight(eldest);
+				evictions.incrementAndGet();
+			}
+		}
+	}
+
+}
@@ -23,10 +23,14 @@ package org.wahlzeit.model;
 import com.google.appengine.api.images.Image;
 import com.googlecode.objectify.ObjectifyService;
 import com.googlecode.objectify.Work;
+import org.wahlzeit.model.persistence.ImageKey;
 import org.wahlzeit.model.persistence.ImageStorage;
-import org.wahlzeit.services.LogBuilder;
+import org.wahlzeit.services.Log;
+import org.wahlzeit.services.MetricsRegistry;
 import org.wahlzeit.services.ObjectManager;
 import org.wahlzeit.services.Persistent;
+import org.wahlzeit.services.SysConfig;
+import org.wahlzeit.utils.CompressedBitmap;
 
 import java.io.IOException;
 import java.io.Serializable;
@@ -38,7 +42,10 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.logging.Logger;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A photo manager provides access to and manages photos.
@@ -54,18 +61,48 @@ public class PhotoManager extends ObjectManager {
 	 */
 	protected static final PhotoManager instance = new PhotoManager();
 
-	private static final Logger log = Logger.getLogger(PhotoManager.class.getName());
+	private static final Log log = Log.getLog(PhotoManager.class);
 
 	/**
-	 * In-memory cache for photos
+	 * In-memory cache for photos; photo metadata is small and stays pinned
 	 */
-	protected Map<PhotoId, Photo> photoCache = new HashMap<PhotoId, Photo>();
+	protected ConcurrentMap<PhotoId, Photo> photoCache = new ConcurrentHashMap<PhotoId, Photo>();
+
+	/**
+	 * Bounded in-memory cache for the scaled images of photos; evicted images are reloaded from the ImageStorage
+	 */
+	protected PhotoImageCache imageCache = new PhotoImageCache(PhotoImageCache.DEFAULT_MAX_WEIGHT);
 
 	/**
 	 *
 	 */
 	protected PhotoTagCollector photoTagCollector = null;
 
+	/**
+	 * In-memory index from filter conditions to photo ids; Tags in the datastore are the durable copy
+	 */
+	protected PhotoTagIndex photoTagIndex = new PhotoTagIndex();
+
+	/**
+	 * Incremented whenever photos are added or their filter conditions change, so that PhotoFilters know when to
+	 * regenerate; saving a photo whose conditions are unchanged keeps the version
+	 */
+	protected AtomicInteger photosVersion = new AtomicInteger(0);
+
+	/**
+	 * Candidate photo ids per list of filter conditions; the conditions come from user input, so the map is cleared
+	 * when it gets too large rather than grow without bounds
+	 */
+	protected static final int MAX_CANDIDATE_PHOTO_IDS = 256;
+	protected ConcurrentMap<List<String>, CandidatePhotoIds> candidatePhotoIds =
+			new ConcurrentHashMap<List<String>, CandidatePhotoIds>();
+
+	/**
+	 *
+	 */
+	protected AtomicLong photoCacheHits = MetricsRegistry.getInstance().getCounter(MetricsRegistry.PHOTO_CACHE_HITS);
+	protected AtomicLong photoCacheMisses = MetricsRegistry.getInstance().getCounter(MetricsRegistry.PHOTO_CACHE_MISSES);
+
 	/**
 	 *
 	 */
@@ -111,7 +148,10 @@ public class PhotoManager extends ObjectManager {
 
 		Photo result = doGetPhotoFromId(id);
 
-		if (result == null) {
+		if (result != null) {
+			photoCacheHits.incrementAndGet();
+		} else {
+			photoCacheMisses.incrementAndGet();
 			result = PhotoFactory.getInstance().loadPhoto(id);
 			if (result != null) {
 				doAddPhoto(result);
@@ -134,7 +174,35 @@ public class PhotoManager extends ObjectManager {
 	 * @methodproperties primitive
 	 */
 	protected void doAddPhoto(Photo myPhoto) {
-		photoCache.put(myPhoto.getId(), myPhoto);
+		boolean isNewPhoto = photoCache.put(myPhoto.getId(), myPhoto) == null;
+		if (indexTags(myPhoto) || isNewPhoto) {
+			photosVersion.incrementAndGet();
+		}
+	}
+
+	/**
+	 * @methodtype command
+	 *
+	 * Puts the current tags of the photo into the in-memory tag index; returns true if they have changed.
+	 */
+	protected boolean indexTags(Photo photo) {
+		return photoTagIndex.setConditions(photo.getId(), collectTags(photo));
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	protected Set<String> collectTags(Photo photo) {
+		Set<String> tags = new HashSet<String>();
+		photoTagCollector.collect(tags, photo);
+		return tags;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public int getPhotosVersion() {
+		return photosVersion.get();
 	}
 
 	/**
@@ -148,15 +216,19 @@ public class PhotoManager extends ObjectManager {
 	 * @methodtype init Loads all Photos from the Datastore and holds them in the cache
 	 */
 	public void init() {
+		imageCache.setMaxWeight(SysConfig.getImageCacheMaxBytes());
 		loadPhotos();
 	}
 
 	/**
 	 * @methodtype command
 	 *
-	 * Load all persisted photos. Executed when Wahlzeit is restarted.
+	 * Load all persisted photos. Executed when Wahlzeit is restarted. Unless configured otherwise, only the photo
+	 * metadata is loaded; images are fetched from the ImageStorage on first access.
 	 */
 	public void loadPhotos() {
+		boolean loadImages = SysConfig.isLoadImagesOnStartUp();
+
 		Collection<Photo> existingPhotos = ObjectifyService.run(new Work<Collection<Photo>>() {
 			@Override
 			public Collection<Photo> run() {
@@ -168,17 +240,17 @@ public class PhotoManager extends ObjectManager {
 
 		for (Photo photo : existingPhotos) {
 			if (!doHasPhoto(photo.getId())) {
-				log.config(LogBuilder.createSystemMessage().
-						addParameter("Load Photo with ID", photo.getIdAsString()).toString());
-				loadScaledImages(photo);
+				log.config("Load Photo with ID", photo.getIdAsString());
+				if (loadImages) {
+					loadScaledImages(photo);
+				}
 				doAddPhoto(photo);
 			} else {
-				log.config(LogBuilder.createSystemMessage().
-						addParameter("Already loaded Photo", photo.getIdAsString()).toString());
+				log.config("Already loaded Photo", photo.getIdAsString());
 			}
 		}
 
-		log.info(LogBuilder.createSystemMessage().addMessage("All photos loaded.").toString());
+		log.info("All photos loaded.");
 	}
 
 	/**
@@ -192,34 +264,78 @@ public class PhotoManager extends ObjectManager {
 	/**
 	 * @methodtype command
 	 *
-	 * Loads all scaled Images of this Photo from Google Cloud Storage
+	 * Loads all scaled Images of this Photo from the ImageStorage into the image cache
 	 */
 	protected void loadScaledImages(Photo photo) {
 		String photoIdAsString = photo.getId().asString();
-		ImageStorage imageStorage = ImageStorage.getInstance();
+		log.config("loading images", "photo ID", photoIdAsString);
 
-		for (PhotoSize photoSize : PhotoSize.values()) {
-			log.config(LogBuilder.createSystemMessage().
-					addAction("loading image").
-					addParameter("image size", photoSize.asString()).
-					addParameter("photo ID", photoIdAsString).toString());
-			if (imageStorage.doesImageExist(photoIdAsString, photoSize.asInt())) {
-				try {
-					Serializable rawImage = imageStorage.readImage(photoIdAsString, photoSize.asInt());
-					if (rawImage != null && rawImage instanceof Image) {
-						photo.setImage(photoSize, (Image) rawImage);
-					}
-				} catch (IOException e) {
-					log.warning(LogBuilder.createSystemMessage().
-							addParameter("size", photoSize.asString()).
-							addParameter("photo ID", photoIdAsString).
-							addException("Could not load image although it exists", e).toString());
+		try {
+			Map<Integer, Serializable> rawImages = ImageStorage.getInstance().readImages(photoIdAsString);
+			for (Map.Entry<Integer, Serializable> entry : rawImages.entrySet()) {
+				if (entry.getValue() instanceof Image) {
+					imageCache.put(photo.getId(), PhotoSize.getFromInt(entry.getKey()), (Image) entry.getValue());
 				}
-			} else {
-				log.config(LogBuilder.createSystemMessage().
-						addParameter("Size does not exist", photoSize.asString()).toString());
 			}
+		} catch (IOException e) {
+			log.warning("Could not load images", e, "photo ID", photoIdAsString);
+		}
+	}
+
+	/**
+	 * @methodtype get
+	 *
+	 * Returns the persisted image of the photo in the given size, loading it from the ImageStorage if it is not cached.
+	 */
+	public Image getImage(PhotoId id, PhotoSize photoSize) {
+		Image result = imageCache.get(id, photoSize);
+		if (result == null) {
+			result = loadImage(id, photoSize);
+			if (result != null) {
+				imageCache.put(id, photoSize, result);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @methodtype get
+	 * @methodproperty primitive
+	 */
+	protected Image loadImage(PhotoId id, PhotoSize photoSize) {
+		Image result = null;
+		try {
+			Serializable rawImage = ImageStorage.getInstance().readImage(id.asString(), photoSize.asInt());
+			if (rawImage instanceof Image) {
+				result = (Image) rawImage;
+			}
+		} catch (IOException e) {
+			log.warning("Could not load image", e, "size", photoSize.asString(), "photo ID", id.asString());
 		}
+		return result;
+	}
+
+	/**
+	 * @methodtype command
+	 *
+	 * Loads the images of all known photos in the given size into the image cache, e.g. THUMB after a cold start.
+	 */
+	public void warmUpImages(PhotoSize photoSize) {
+		int count = 0;
+		for (PhotoId id : photoCache.keySet()) {
+			if (getImage(id, photoSize) != null) {
+				count++;
+			}
+		}
+
+		log.info("warm up images", "size", photoSize.asString(), "loaded", count);
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public PhotoImageCache getImageCache() {
+		return imageCache;
 	}
 
 	/**
@@ -242,62 +358,120 @@ public class PhotoManager extends ObjectManager {
 	}
 
 	/**
-	 * @methodtype helper
+	 * @methodtype get
+	 *
+	 * Returns the ids of all photos that match at least one of the conditions, or of all photos if there are no
+	 * conditions. The sorted array is shared by all PhotoFilters with the same conditions and must not be modified;
+	 * it is computed once per photos version.
 	 */
-	public List<Tag> addTagsThatMatchCondition(List<Tag> tags, String condition) {
-		readObjects(tags, Tag.class, Tag.TEXT, condition);
-		return tags;
+	public int[] getCandidatePhotoIds(List<String> conditions) {
+		int version = photosVersion.get();
+		CandidatePhotoIds candidates = candidatePhotoIds.get(conditions);
+		if ((candidates == null) || (candidates.version != version)) {
+			if (candidatePhotoIds.size() >= MAX_CANDIDATE_PHOTO_IDS) {
+				candidatePhotoIds.clear();
+			}
+			candidates = new CandidatePhotoIds(version, doGetCandidatePhotoIds(conditions));
+			candidatePhotoIds.put(new ArrayList<String>(conditions), candidates);
+		}
+		return candidates.ids;
+	}
+
+	/**
+	 * @methodtype get
+	 * @methodproperties primitive
+	 */
+	protected int[] doGetCandidatePhotoIds(Collection<String> conditions) {
+		if (conditions.isEmpty()) {
+			CompressedBitmap result = new CompressedBitmap();
+			for (PhotoId photoId : photoCache.keySet()) {
+				result.add(photoId.asInt());
+			}
+			return result.toArray();
+		} else {
+			return photoTagIndex.getPhotoIdsMatchingAny(conditions).toArray();
+		}
 	}
 
 	/**
 	 * @methodtype command
 	 *
 	 * Persists all available sizes of the Photo. If one size exceeds the limit of the persistence layer, e.g. > 1MB for
-	 * the Datastore, it is simply not persisted.
+	 * the Datastore, it is simply not persisted. Persisted images are handed over from the photo to the image cache.
 	 */
 	protected void saveScaledImages(Photo photo) {
 		String photoIdAsString = photo.getId().asString();
 		ImageStorage imageStorage = ImageStorage.getInstance();
-		PhotoSize photoSize;
-		int it = 0;
-		boolean moreSizesExist = true;
-		do{
-			photoSize = PhotoSize.values()[it];
-			it++;
-			Image image = photo.getImage(photoSize);
+
+		Map<Integer, Image> unsavedImages = new HashMap<Integer, Image>();
+		List<ImageKey> imageKeys = new ArrayList<ImageKey>();
+		for (PhotoSize photoSize : PhotoSize.values()) {
+			Image image = photo.getUnsavedImage(photoSize);
 			if (image != null) {
-				try {
-					if (!imageStorage.doesImageExist(photoIdAsString, photoSize.asInt())) {
-						imageStorage.writeImage(image, photoIdAsString, photoSize.asInt());
-					}
-				} catch (Exception e) {
-					log.warning(LogBuilder.createSystemMessage().
-							addException("Problem when storing image", e).toString());
-					moreSizesExist = false;
-				}
-			} else {
-				log.config(LogBuilder.createSystemMessage().
-						addParameter("No image for size", photoSize.asString()).toString());
-				moreSizesExist = false;
+				unsavedImages.put(photoSize.asInt(), image);
+				imageKeys.add(new ImageKey(photoIdAsString, photoSize.asInt()));
+			}
+		}
+		if (unsavedImages.isEmpty()) {
+			return;
+		}
+
+		Set<Integer> savedSizes = new HashSet<Integer>();
+		try {
+			for (ImageKey existingKey : imageStorage.getExistingImages(imageKeys)) {
+				savedSizes.add(existingKey.getSize());
+				unsavedImages.remove(existingKey.getSize());
+			}
+			if (!unsavedImages.isEmpty()) {
+				savedSizes.addAll(imageStorage.writeImages(unsavedImages, photoIdAsString));
 			}
-		} while (it < PhotoSize.values().length && moreSizesExist);
+		} catch (Exception e) {
+			log.warning("Problem when storing images", e);
+		}
+
+		for (Integer size : savedSizes) {
+			PhotoSize photoSize = PhotoSize.getFromInt(size);
+			imageCache.put(photo.getId(), photoSize, photo.getUnsavedImage(photoSize));
+			photo.releaseImage(photoSize);
+		}
 	}
 
 	/**
 	 * Removes all tags of the Photo (obj) in the datastore that have been removed by the user and adds all new tags of
-	 * the photo to the datastore.
+	 * the photo to the datastore. Only the difference to the stored tags is written, in one batched delete and one
+	 * batched save. The in-memory tag index is updated accordingly.
 	 */
 	protected void updateTags(Photo photo) {
-		// delete all existing tags, for the case that some have been removed
-		deleteObjects(Tag.class, Tag.PHOTO_ID, photo.getId().asString());
+		Set<String> tags = collectTags(photo);
+		if (photoTagIndex.setConditions(photo.getId(), tags)) {
+			photosVersion.incrementAndGet();
+		}
+		String photoIdAsString = photo.getId().asString();
 
-		// add all current tags to the datastore
-		Set<String> tags = new HashSet<String>();
-		photoTagCollector.collect(tags, photo);
-		for (Iterator<String> i = tags.iterator(); i.hasNext(); ) {
-			Tag tag = new Tag(i.next(), photo.getId().asString());
-			log.config(LogBuilder.createSystemMessage().addParameter("Writing Tag", tag.asString()).toString());
-			writeObject(tag);
+		List<Tag> storedTags = new ArrayList<Tag>();
+		readObjects(storedTags, Tag.class, Tag.PHOTO_ID, photoIdAsString);
+
+		// keep one stored tag per current text, everything else is stale
+		Set<String> tagsToAdd = new HashSet<String>(tags);
+		List<Tag> tagsToDelete = new ArrayList<Tag>();
+		for (Tag storedTag : storedTags) {
+			if (!tagsToAdd.remove(storedTag.getText())) {
+				tagsToDelete.add(storedTag);
+			}
+		}
+
+		List<Tag> newTags = new ArrayList<Tag>();
+		for (String text : tagsToAdd) {
+			Tag tag = new Tag(text, photoIdAsString);
+			log.config("Writing Tag", tag.asString());
+			newTags.add(tag);
+		}
+
+		if (!tagsToDelete.isEmpty()) {
+			deleteObjects(tagsToDelete);
+		}
+		if (!newTags.isEmpty()) {
+			writeObjects(newTags);
 		}
 	}
 
@@ -306,6 +480,7 @@ public class PhotoManager extends ObjectManager {
 	 */
 	public void savePhotos() throws IOException{
 		updateObjects(photoCache.values());
+		flush();
 	}
 
 	/**
@@ -333,8 +508,7 @@ public class PhotoManager extends ObjectManager {
 	 *
 	 */
 	public Photo getVisiblePhoto(PhotoFilter filter) {
-		filter.generateDisplayablePhotoIds();
-		return getPhotoFromId(filter.getRandomDisplayablePhotoId());
+		return getPhotoFromId(filter.getNextDisplayablePhotoId());
 	}
 
 	/**
@@ -354,8 +528,6 @@ public class PhotoManager extends ObjectManager {
 		PhotoId id = photo.getId();
 		assertIsNewPhoto(id);
 		doAddPhoto(photo);
-
-		GlobalsManager.getInstance().saveGlobals();
 	}
 
 	/**
@@ -367,4 +539,21 @@ public class PhotoManager extends ObjectManager {
 		}
 	}
 
+	/**
+	 * Immutable candidate photo ids together with the photos version they have been computed for
+	 */
+	protected static class CandidatePhotoIds {
+
+		protected final int version;
+		protected final int[] ids;
+
+		/**
+		 *
+		 */
+		protected CandidatePhotoIds(int version, int[] ids) {
+			this.version = version;
+			this.ids = ids;
+		}
+	}
+
 }
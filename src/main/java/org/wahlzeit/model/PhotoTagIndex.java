@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.model;
+
+import org.wahlzeit.utils.CompressedBitmap;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An in-memory inverted index from filter conditions ("tg:..." and "un:...") to the ids of the photos that carry
+ * them. The Tag entities in the datastore remain the durable copy; the index is rebuilt when photos are loaded.
+ */
+public class PhotoTagIndex {
+
+	/**
+	 * Maps a condition to the set of photo ids (as ints) that match it
+	 */
+	protected Map<String, CompressedBitmap> conditionToPhotoIds = new HashMap<String, CompressedBitmap>();
+
+	/**
+	 * Maps a photo id to the conditions it is currently indexed under, to be able to remove stale entries
+	 */
+	protected Map<Integer, Set<String>> photoIdToConditions = new HashMap<Integer, Set<String>>();
+
+	/**
+	 * @methodtype get
+	 */
+	public synchronized Set<String> getConditions(PhotoId photoId) {
+		Set<String> conditions = photoIdToConditions.get(photoId.asInt());
+		if (conditions == null) {
+			return Collections.emptySet();
+		}
+		return new HashSet<String>(conditions);
+	}
+
+	/**
+	 * @methodtype boolean-query
+	 */
+	public synchronized boolean hasPhotoId(PhotoId photoId) {
+		return photoIdToConditions.containsKey(photoId.asInt());
+	}
+
+	/**
+	 * Replaces all conditions of the photo with the given ones; returns false if they are the same as before.
+	 *
+	 * @methodtype command
+	 */
+	public synchronized boolean setConditions(PhotoId photoId, Set<String> conditions) {
+		int id = photoId.asInt();
+		Set<String> oldConditions = photoIdToConditions.get(id);
+		if ((oldConditions != null) && oldConditions.equals(conditions)) {
+			return false;
+		}
+
+		doRemovePhotoId(id);
+
+		Set<String> newConditions = new HashSet<String>(conditions);
+		for (String condition : newConditions) {
+			CompressedBitmap photoIds = conditionToPhotoIds.get(condition);
+			if (photoIds == null) {
+				photoIds = new CompressedBitmap();
+				conditionToPhotoIds.put(condition, photoIds);
+			}
+			photoIds.add(id);
+		}
+		photoIdToConditions.put(id, newConditions);
+		return true;
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	public synchronized void removePhotoId(PhotoId photoId) {
+		doRemovePhotoId(photoId.asInt());
+	}
+
+	/**
+	 * @methodtype command
+	 * @methodproperty primitive
+	 */
+	protected void doRemovePhotoId(int id) {
+		Set<String> oldConditions = photoIdToConditions.remove(id);
+		if (oldConditions == null) {
+			return;
+		}
+
+		for (String condition : oldConditions) {
+			CompressedBitmap photoIds = conditionToPhotoIds.get(condition);
+			if (photoIds != null) {
+				photoIds.remove(id);
+				if (photoIds.isEmpty()) {
+					conditionToPhotoIds.remove(condition);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the ids of all photos that match at least one of the conditions.
+	 *
+	 * @methodtype get
+	 */
+	public synchronized CompressedBitmap getPhotoIdsMatchingAny(Collection<String> conditions) {
+		CompressedBitmap result = new CompressedBitmap();
+		for (String condition : conditions) {
+			CompressedBitmap photoIds = conditionToPhotoIds.get(condition);
+			if (photoIds != null) {
+				result.or(photoIds);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	public synchronized void clear() {
+		conditionToPhotoIds.clear();
+		photoIdToConditions.clear();
+	}
+
+}
@@ -115,7 +115,7 @@ public class UserManager extends ClientManager {
 	 *
 	 */
 	public void emailWelcomeMessage(UserSession us, User user) {
-		ModelConfig config = us.getClient().getLanguageConfiguration();
+		ModelConfig config = us.getLanguageConfiguration();
 		EmailAddress from = config.getAdministratorEmailAddress();
 		EmailAddress to = user.getEmailAddress();
 
@@ -144,11 +144,9 @@ public class UserManager extends ClientManager {
 		result = readObject(User.class, User.EMAIL_ADDRESS, emailAddress.asString());
 
 		if (result != null) {
-			User current = getUserById(result.getId());
-			if (current == null) {
-				doAddClient(result);
-			} else {
-				result = current;
+			Client current = doAddClient(result);
+			if (current instanceof User) {
+				result = (User) current;
 			}
 		}
 
@@ -35,7 +35,9 @@ import java.util.logging.Logger;
 /**
  * Wrapper class for {@link HttpSession} to provide a readable interface for Wahlzeit.
  *
- * {@link HttpSession}s are managed automatically by Google App Engine.
+ * {@link HttpSession}s are managed automatically by Google App Engine, which serializes a session whenever one of its
+ * attributes has been set. Therefore, a UserSession reads attributes once per request, buffers all changes and writes
+ * back only the attributes that actually changed in {@link #writeBack()}, at the end of the request.
  */
 public class UserSession extends Session implements Serializable {
 
@@ -58,15 +60,60 @@ public class UserSession extends Session implements Serializable {
 
 	protected HttpSession httpSession;
 
+	/**
+	 * Attribute values read or set during the current request; null values are cached as well
+	 */
+	protected Map<String, Object> attributes = new HashMap<String, Object>();
+
+	/**
+	 * Names of the attributes that have to be written back to the HttpSession
+	 */
+	protected Set<String> changedAttributes = new HashSet<String>();
+
+	/**
+	 * The client of this session, resolved once per request
+	 */
+	protected Client client = null;
+
+	/**
+	 * The language configuration of the client, and the language it was looked up for
+	 */
+	protected ModelConfig languageConfiguration = null;
+	protected Language configurationLanguage = null;
+
 	/**
 	 *
 	 */
 	public UserSession(String myName, String mySiteUrl, HttpSession myHttpSession, String myLanguage) {
+		this(myName, myHttpSession);
+		if (!isInitialized()) {
+			initializeHttpSession(mySiteUrl, myLanguage);
+		}
+	}
+
+	/**
+	 * Does not initialize a new HttpSession; callers check {@link #isInitialized()} and only then compute the values
+	 * needed for {@link #initializeHttpSession(String, String)}.
+	 */
+	public UserSession(String myName, HttpSession myHttpSession) {
 		httpSession = myHttpSession;
 		initialize(myName);
-		if (httpSession.getAttribute(INITIALIZED) == null) {
-			httpSession.setAttribute(SITE_URL, mySiteUrl);
-			httpSession.setAttribute(PHOTO_FILTER, PhotoFactory.getInstance().createPhotoFilter());
+	}
+
+	/**
+	 * @methodtype boolean query
+	 */
+	public boolean isInitialized() {
+		return getAttribute(INITIALIZED) != null;
+	}
+
+	/**
+	 * @methodtype initialization
+	 */
+	public void initializeHttpSession(String mySiteUrl, String myLanguage) {
+		if (!isInitialized()) {
+			setAttribute(SITE_URL, mySiteUrl);
+			setAttribute(PHOTO_FILTER, PhotoFactory.getInstance().createPhotoFilter());
 
 			setClient(new Guest());
 			try {
@@ -76,22 +123,77 @@ public class UserSession extends Session implements Serializable {
 				// default language of guest is english
 			}
 
-			clearDisplayedPhotos();
-			clearPraisedPhotos();
-			clearSavedArgs();
-			httpSession.setAttribute(INITIALIZED, INITIALIZED);
+			setAttribute(INITIALIZED, INITIALIZED);
+		}
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	protected Object getAttribute(String name) {
+		if (attributes.containsKey(name)) {
+			return attributes.get(name);
+		}
+
+		Object result = httpSession.getAttribute(name);
+		attributes.put(name, result);
+		return result;
+	}
 
+	/**
+	 * Setting a value equal to the current one does not cause a write back.
+	 *
+	 * @methodtype set
+	 */
+	protected void setAttribute(String name, Object value) {
+		Object previous = getAttribute(name);
+		if ((previous == null) ? (value != null) : !previous.equals(value)) {
+			attributes.put(name, value);
+			changedAttributes.add(name);
 		}
 	}
 
+	/**
+	 * Records that the (mutable) value of the attribute has been changed in place.
+	 *
+	 * @methodtype command
+	 */
+	protected void markAttributeChanged(String name) {
+		changedAttributes.add(name);
+	}
+
+	/**
+	 * @methodtype boolean query
+	 */
+	public boolean hasChangedAttributes() {
+		return !changedAttributes.isEmpty();
+	}
+
+	/**
+	 * Writes the changed attributes to the HttpSession; to be called once at the end of a request.
+	 *
+	 * @methodtype command
+	 */
+	public void writeBack() {
+		for (String name : changedAttributes) {
+			Object value = attributes.get(name);
+			if (value != null) {
+				httpSession.setAttribute(name, value);
+			} else {
+				httpSession.removeAttribute(name);
+			}
+		}
+		changedAttributes.clear();
+	}
+
 	/**
 	 *
 	 */
 	public void clearDisplayedPhotos() {
-		PhotoFilter photoFilter = (PhotoFilter) httpSession.getAttribute(PHOTO_FILTER);
+		PhotoFilter photoFilter = getPhotoFilter();
 		if (photoFilter != null) {
 			photoFilter.clear();
-			httpSession.setAttribute(PHOTO_FILTER, photoFilter);
+			markAttributeChanged(PHOTO_FILTER);
 		} else {
 			log.warning("No PhotoFilter found in HttpSession to clear.");
 		}
@@ -101,14 +203,22 @@ public class UserSession extends Session implements Serializable {
 	 *
 	 */
 	public void clearPraisedPhotos() {
-		httpSession.setAttribute(PRAISED_PHOTOS, new HashSet<Photo>());
+		Set praisedPhotos = (Set) getAttribute(PRAISED_PHOTOS);
+		if ((praisedPhotos != null) && !praisedPhotos.isEmpty()) {
+			setAttribute(PRAISED_PHOTOS, null);
+		}
 	}
 
 	/**
+	 * Empty saved args are not kept in the HttpSession at all.
+	 *
 	 * @methodtype init
 	 */
 	public void clearSavedArgs() {
-		httpSession.setAttribute(SAVED_ARGS, new HashMap<String, Object>());
+		Map savedArgs = (Map) getAttribute(SAVED_ARGS);
+		if ((savedArgs != null) && !savedArgs.isEmpty()) {
+			setAttribute(SAVED_ARGS, null);
+		}
 	}
 
 	/**
@@ -123,39 +233,46 @@ public class UserSession extends Session implements Serializable {
 	 * @methodtype get
 	 */
 	public String getSiteUrl() {
-		return (String) httpSession.getAttribute(SITE_URL);
-	}
-
-	@Override
-	protected void notifyNameChanged() {
-		httpSession.setAttribute(Session.NAME, super.getName());
+		return (String) getAttribute(SITE_URL);
 	}
 
 	/**
 	 * @methodtype convert Returns some signifier of current user
 	 */
 	public String getClientId() {
-		return (String) httpSession.getAttribute(CLIENT_ID);
+		return (String) getAttribute(CLIENT_ID);
 	}
 
-	@Override
-	protected void notifyProcessingTimeChanged() {
-		httpSession.setAttribute(Session.PROCESSING_TIME, super.getProcessingTime());
+	/**
+	 * @methodtype get
+	 */
+	public Client getClient() {
+		if (client == null) {
+			String clientName = (String) getAttribute(CLIENT_ID);
+			client = UserManager.getInstance().getClientById(clientName);
+		}
+		return client;
 	}
 
 	/**
+	 * Looks the configuration up again only if the language of the client has changed.
+	 *
 	 * @methodtype get
 	 */
-	public Client getClient() {
-		String clientName = (String) httpSession.getAttribute(CLIENT_ID);
-		return UserManager.getInstance().getClientById(clientName);
+	public ModelConfig getLanguageConfiguration() {
+		Client currentClient = getClient();
+		if ((languageConfiguration == null) || (configurationLanguage != currentClient.getLanguage())) {
+			configurationLanguage = currentClient.getLanguage();
+			languageConfiguration = currentClient.getLanguageConfiguration();
+		}
+		return languageConfiguration;
 	}
 
 	/**
 	 * @methodtype set
 	 */
 	public void setClient(Client newClient) {
-		String previousClientId = (String) httpSession.getAttribute(CLIENT_ID);
+		String previousClientId = (String) getAttribute(CLIENT_ID);
 		if (previousClientId != null) {
 			Client previousClient = UserManager.getInstance().getClientById(previousClientId);
 			if (previousClient instanceof Guest) {
@@ -163,7 +280,8 @@ public class UserSession extends Session implements Serializable {
 			}
 		}
 
-		httpSession.setAttribute(CLIENT_ID, newClient.getId());
+		setAttribute(CLIENT_ID, newClient.getId());
+		client = newClient;
 		UserManager.getInstance().addHttpSessionIdToClientMapping(httpSession.getId(), newClient);
 	}
 
@@ -171,30 +289,48 @@ public class UserSession extends Session implements Serializable {
 	 *
 	 */
 	public PhotoFilter getPhotoFilter() {
-		return (PhotoFilter) httpSession.getAttribute(PHOTO_FILTER);
+		return (PhotoFilter) getAttribute(PHOTO_FILTER);
+	}
+
+	/**
+	 * Returns the PhotoFilter for changing it in place; the filter is written back at the end of the request.
+	 *
+	 * @methodtype get
+	 */
+	public PhotoFilter getPhotoFilterForChange() {
+		PhotoFilter result = getPhotoFilter();
+		if (result != null) {
+			markAttributeChanged(PHOTO_FILTER);
+		}
+		return result;
+	}
+
+	/**
+	 * Needs to be called after the PhotoFilter has changed, otherwise the HttpSession does not persist the change.
+	 *
+	 * @methodtype set
+	 */
+	public void setPhotoFilter(PhotoFilter photoFilter) {
+		attributes.put(PHOTO_FILTER, photoFilter);
+		markAttributeChanged(PHOTO_FILTER);
 	}
 
 	/**
 	 * @methodtype boolean query
 	 */
 	public boolean hasPraisedPhoto(Photo photo) {
-		Set praisedPhotos = (Set) httpSession.getAttribute(PRAISED_PHOTOS);
-		if (praisedPhotos != null) {
-			return praisedPhotos.contains(photo);
-		} else {
-			log.warning("Found no set of praised Photos to search for Photo.");
-			return false;
-		}
+		Set praisedPhotos = (Set) getAttribute(PRAISED_PHOTOS);
+		return (praisedPhotos != null) && praisedPhotos.contains(photo);
 	}
 
 	/**
 	 *
 	 */
 	public void addProcessedPhoto(Photo photo) {
-		PhotoFilter photoFilter = (PhotoFilter) httpSession.getAttribute(PHOTO_FILTER);
+		PhotoFilter photoFilter = getPhotoFilter();
 		if (photoFilter != null) {
 			photoFilter.addProcessedPhoto(photo);
-			httpSession.setAttribute(PHOTO_FILTER, photoFilter);
+			markAttributeChanged(PHOTO_FILTER);
 		} else {
 			log.warning("No PhotoFilter found in HttpSession to add Photo.");
 		}
@@ -204,70 +340,70 @@ public class UserSession extends Session implements Serializable {
 	 * @methodtype get
 	 */
 	public String getHeading() {
-		return (String) httpSession.getAttribute(HEADING);
+		return (String) getAttribute(HEADING);
 	}
 
 	/**
 	 * @methodtype set
 	 */
 	public void setHeading(String myHeading) {
-		httpSession.setAttribute(HEADING, myHeading);
+		setAttribute(HEADING, myHeading);
 	}
 
 	/**
 	 * @methodtype get
 	 */
 	public String getMessage() {
-		return (String) httpSession.getAttribute(MESSAGE);
+		return (String) getAttribute(MESSAGE);
 	}
 
 	/**
 	 * @methodtype set
 	 */
 	public void setMessage(String myMessage) {
-		httpSession.setAttribute(MESSAGE, HtmlUtil.asP(myMessage));
+		setAttribute(MESSAGE, HtmlUtil.asP(myMessage));
 	}
 
 	/**
 	 * @methodtype set
 	 */
 	public void setTwoLineMessage(String msg1, String msg2) {
-		httpSession.setAttribute(MESSAGE, HtmlUtil.asP(msg1) + HtmlUtil.asP(msg2));
+		setAttribute(MESSAGE, HtmlUtil.asP(msg1) + HtmlUtil.asP(msg2));
 	}
 
 	/**
 	 * @methodtype set
 	 */
 	public void setThreeLineMessage(String msg1, String msg2, String msg3) {
-		httpSession.setAttribute(MESSAGE, HtmlUtil.asP(msg1) + HtmlUtil.asP(msg2) + HtmlUtil.asP(msg3));
+		setAttribute(MESSAGE, HtmlUtil.asP(msg1) + HtmlUtil.asP(msg2) + HtmlUtil.asP(msg3));
 	}
 
 	/**
 	 * @methodtype get
 	 */
 	public PhotoId getPhotoId() {
-		return (PhotoId) httpSession.getAttribute(Photo.ID);
+		return (PhotoId) getAttribute(Photo.ID);
 	}
 
 	/**
 	 * @methodtype set
 	 */
 	public void setPhotoId(PhotoId newPhotoId) {
-		httpSession.setAttribute(Photo.ID, newPhotoId);
+		setAttribute(Photo.ID, newPhotoId);
 	}
 
 	/**
 	 * @methodtype get
 	 */
 	public PhotoCase getPhotoCase() {
-		return (PhotoCase) httpSession.getAttribute(PHOTO_CASE);
+		return (PhotoCase) getAttribute(PHOTO_CASE);
 	}
 
 	/**
 	 * @methodtype set
 	 */
 	public void setPhotoCase(PhotoCase photoCase) {
-		httpSession.setAttribute(PHOTO_CASE, photoCase);
+		setAttribute(PHOTO_CASE, photoCase);
 	}
 
 	/**
@@ -287,8 +423,7 @@ public class UserSession extends Session implements Serializable {
 	 * @methodtype get
 	 */
 	public Object getSavedArg(String key) {
-		Map<String, Object> savedArgs = (Map<String, Object>) httpSession.getAttribute(SAVED_ARGS);
-		return savedArgs.get(key);
+		return getSavedArgs().get(key);
 	}
 
 	/**
@@ -335,14 +470,21 @@ public class UserSession extends Session implements Serializable {
 	public void setSavedArg(String key, Object value) {
 		Map<String, Object> savedArgs = getSavedArgs();
 		savedArgs.put(key, value);
-		httpSession.setAttribute(SAVED_ARGS, savedArgs);
+		markAttributeChanged(SAVED_ARGS);
 	}
 
 	/**
+	 * An empty map is only stored in the HttpSession once a saved arg is set.
+	 *
 	 * @methodtype get
 	 */
 	public Map<String, Object> getSavedArgs() {
-		return (Map<String, Object>) httpSession.getAttribute(SAVED_ARGS);
+		Map<String, Object> result = (Map<String, Object>) getAttribute(SAVED_ARGS);
+		if (result == null) {
+			result = new HashMap<String, Object>();
+			attributes.put(SAVED_ARGS, result);
+		}
+		return result;
 	}
 
 }
@@ -22,6 +22,8 @@ package org.wahlzeit.model.persistence;
 
 import com.google.appengine.api.images.Image;
 import com.google.appengine.api.images.ImagesServiceFactory;
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.LoadResult;
 import com.googlecode.objectify.ObjectifyService;
 import com.googlecode.objectify.Work;
 import com.googlecode.objectify.annotation.Entity;
@@ -34,6 +36,14 @@ import org.wahlzeit.services.OfyService;
 import java.io.IOException;
 import java.io.Serializable;
 import java.security.InvalidParameterException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
 
 /**
@@ -46,6 +56,11 @@ public class DatastoreAdapter extends ImageStorage {
 
 	private static final Logger log = Logger.getLogger(DatastoreAdapter.class.getName());
 
+	/**
+	 *
+	 */
+	protected AtomicLong keyOnlyChecks = new AtomicLong(0);
+
 
 	@Override
 	protected void doWriteImage(Serializable image, String photoIdAsString, int size)
@@ -94,24 +109,141 @@ public class DatastoreAdapter extends ImageStorage {
 		return result;
 	}
 
+	/**
+	 * Saves all images in a single batch.
+	 */
+	@Override
+	protected Set<Integer> doWriteImages(Map<Integer, ? extends Serializable> images, String photoIdAsString) {
+		Set<Integer> result = new HashSet<Integer>();
+		final List<ImageWrapper> imageWrappers = new ArrayList<ImageWrapper>();
+		for (Map.Entry<Integer, ? extends Serializable> entry : images.entrySet()) {
+			if (entry.getValue() instanceof Image) {
+				ImageWrapper imageWrapper = new ImageWrapper(photoIdAsString + entry.getKey());
+				try {
+					imageWrapper.setImage((Image) entry.getValue());
+					imageWrappers.add(imageWrapper);
+					result.add(entry.getKey());
+				} catch (ArrayIndexOutOfBoundsException e) {
+					log.warning(LogBuilder.createSystemMessage().
+							addParameter("size", entry.getKey()).
+							addException("Problem when storing image", e).toString());
+				}
+			} else {
+				log.warning(LogBuilder.createSystemMessage().
+						addMessage("did not get an Image type to store").
+						addParameter("image type", entry.getValue().toString()).toString());
+			}
+		}
+
+		if (!imageWrappers.isEmpty()) {
+			ObjectifyService.run(new Work<Boolean>() {
+				@Override
+				public Boolean run() {
+					OfyService.ofy().save().entities(imageWrappers).now();
+					return null;
+				}
+			});
+			log.config(LogBuilder.createSystemMessage().addParameter("images successfully written", result).toString());
+		}
+		return result;
+	}
+
+	/**
+	 * Loads all images in a single batch get by id.
+	 */
 	@Override
-	protected boolean doDoesImageExist(String photoIdAsString, int size) {
-		Image image = null;
-		boolean result = false;
-		try {
-			image = doReadImage(photoIdAsString, size);
-		} catch (IOException e) {
-			log.warning(
-					LogBuilder.createSystemMessage().addException("IOException when checking for Image existance", e)
-							.toString());
+	protected Map<Integer, Serializable> doReadImages(String photoIdAsString, int[] sizes) {
+		final Map<String, Integer> idToSize = new HashMap<String, Integer>();
+		for (int size : sizes) {
+			idToSize.put(photoIdAsString + size, size);
 		}
-		if (image != null) {
-			result = true;
+
+		Map<String, ImageWrapper> imageWrappers = ObjectifyService.run(new Work<Map<String, ImageWrapper>>() {
+			@Override
+			public Map<String, ImageWrapper> run() {
+				return OfyService.ofy().load().type(ImageWrapper.class).ids(idToSize.keySet());
+			}
+		});
+
+		Map<Integer, Serializable> result = new HashMap<Integer, Serializable>();
+		for (Map.Entry<String, ImageWrapper> entry : imageWrappers.entrySet()) {
+			Image image = entry.getValue().getImage();
+			if (image != null) {
+				result.put(idToSize.get(entry.getKey()), image);
+			}
 		}
+		log.config(LogBuilder.createSystemMessage().addParameter("images successfully read", result.keySet()).toString());
+		return result;
+	}
+
+	/**
+	 * Answers the question for all images with keys-only queries; all queries are started before the first result is
+	 * waited for.
+	 */
+	@Override
+	protected Set<ImageKey> doGetExistingImages(final Collection<ImageKey> imageKeys) {
+		Set<ImageKey> result = ObjectifyService.run(new Work<Set<ImageKey>>() {
+			@Override
+			public Set<ImageKey> run() {
+				Map<ImageKey, LoadResult<Key<ImageWrapper>>> existingKeys =
+						new HashMap<ImageKey, LoadResult<Key<ImageWrapper>>>();
+				for (ImageKey imageKey : imageKeys) {
+					existingKeys.put(imageKey, loadExistingKey(imageKey.getPhotoIdAsString(), imageKey.getSize()));
+				}
+
+				Set<ImageKey> result = new HashSet<ImageKey>();
+				for (Map.Entry<ImageKey, LoadResult<Key<ImageWrapper>>> entry : existingKeys.entrySet()) {
+					if (entry.getValue().now() != null) {
+						result.add(entry.getKey());
+					}
+				}
+				return result;
+			}
+		});
+
+		keyOnlyChecks.addAndGet(imageKeys.size());
+		return result;
+	}
+
+	/**
+	 * Answers the question with a keys-only query, so the image blob is neither transferred nor deserialized.
+	 */
+	@Override
+	protected boolean doDoesImageExist(final String photoIdAsString, final int size) {
+		Key<ImageWrapper> key = ObjectifyService.run(new Work<Key<ImageWrapper>>() {
+			@Override
+			public Key<ImageWrapper> run() {
+				return loadExistingKey(photoIdAsString, size).now();
+			}
+		});
+
+		boolean result = key != null;
+		keyOnlyChecks.incrementAndGet();
 		log.config(LogBuilder.createSystemMessage().addParameter("does image exist", result).toString());
 		return result;
 	}
 
+	/**
+	 * Starts a keys-only query for the image. It uses the key of the image as ancestor, since unlike a key filter an
+	 * ancestor query is strongly consistent; ImageWrappers have no children, so it matches the image only. A negative
+	 * answer is remembered by the existence cache, so it must not miss a recent write.
+	 *
+	 * @methodtype get
+	 */
+	protected LoadResult<Key<ImageWrapper>> loadExistingKey(String photoIdAsString, int size) {
+		Key<ImageWrapper> key = Key.create(ImageWrapper.class, photoIdAsString + size);
+		return OfyService.ofy().load().type(ImageWrapper.class).ancestor(key).keys().first();
+	}
+
+	/**
+	 * Number of existence checks answered by a keys-only query, i.e. full image reads saved
+	 *
+	 * @methodtype get
+	 */
+	public long getKeyOnlyChecks() {
+		return keyOnlyChecks.get();
+	}
+
 	/**
 	 * Wrapper class to store {@link Image}s in the Google Datastore with Objectify.
 	 * 
@@ -20,6 +20,7 @@
 
 package org.wahlzeit.model.persistence;
 
+import com.google.appengine.api.ThreadManager;
 import com.google.appengine.api.images.Image;
 import com.google.appengine.api.images.ImagesServiceFactory;
 import com.google.appengine.tools.cloudstorage.GcsFileMetadata;
@@ -33,12 +34,26 @@ import com.google.appengine.tools.cloudstorage.RetryParams;
 import org.wahlzeit.services.LogBuilder;
 import org.wahlzeit.services.SysConfig;
 
+import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
 import java.net.URLConnection;
 import java.nio.ByteBuffer;
 import java.security.InvalidParameterException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.logging.Logger;
 
 /**
@@ -51,21 +66,24 @@ public class GcsAdapter extends ImageStorage {
 
 	private static final Logger log = Logger.getLogger(GcsAdapter.class.getName());
 
+	/**
+	 * Upper bound for concurrent GCS requests of one batch operation, one per photo size
+	 */
+	protected static final int MAX_PARALLEL_REQUESTS = 6;
+
 	private String bucketName;
 	private String photoFolder;
 	private String defaultImageMimeTypeName;
-	private int bufferLength;
 	private GcsService gcsService;
 
 	/**
 	 * Do not use directly, instead use {@link org.wahlzeit.model.persistence.GcsAdapter.Builder} to create an object.
 	 */
-	private GcsAdapter(String bucketName, String photoFolderName, String defaultImageMimeTypeName, int bufferLength,
+	private GcsAdapter(String bucketName, String photoFolderName, String defaultImageMimeTypeName,
 					   GcsService gcsService) {
 		this.bucketName = bucketName;
 		this.photoFolder = photoFolderName;
 		this.defaultImageMimeTypeName = defaultImageMimeTypeName;
-		this.bufferLength = bufferLength;
 		this.gcsService = gcsService;
 	}
 
@@ -101,17 +119,22 @@ public class GcsAdapter extends ImageStorage {
 		}
 	}
 
+	/**
+	 * Looks up the object size first and reads the object into a buffer of exactly that size, so that neither large
+	 * images are truncated nor small ones padded.
+	 */
 	@Override
 	protected Image doReadImage(String filename, int size) throws IOException {
 		GcsFilename gcsFilename = getGcsFileName(filename, size);
 		log.config(LogBuilder.createSystemMessage().addParameter("gcsFileName", gcsFilename).toString());
 
-		GcsInputChannel readChannel = gcsService.openReadChannel(gcsFilename, 0);
-		ByteBuffer bb = ByteBuffer.allocate(bufferLength);
 		Image result = null;
 		try {
-			readChannel.read(bb);
-			result = ImagesServiceFactory.makeImage(bb.array());
+			// will be null if file does not exist
+			GcsFileMetadata gcsFileMetadata = gcsService.getMetadata(gcsFilename);
+			if (gcsFileMetadata != null) {
+				result = ImagesServiceFactory.makeImage(readFully(gcsFilename, gcsFileMetadata.getLength()));
+			}
 		} catch (IOException e) {
 			// when image does not exist, IOException is thrown
 		}
@@ -123,6 +146,30 @@ public class GcsAdapter extends ImageStorage {
 		return result;
 	}
 
+	/**
+	 * Reads from the channel until the object of the given length has been read completely.
+	 *
+	 * @methodtype get
+	 */
+	protected byte[] readFully(GcsFilename gcsFilename, long length) throws IOException {
+		if (length > Integer.MAX_VALUE) {
+			throw new IOException("Object too large to read: " + gcsFilename);
+		}
+
+		ByteBuffer bb = ByteBuffer.allocate((int) length);
+		GcsInputChannel readChannel = gcsService.openReadChannel(gcsFilename, 0);
+		try {
+			while (bb.hasRemaining()) {
+				if (readChannel.read(bb) < 0) {
+					throw new EOFException("Object shorter than its metadata: " + gcsFilename);
+				}
+			}
+		} finally {
+			readChannel.close();
+		}
+		return bb.array();
+	}
+
 	@Override
 	protected boolean doDoesImageExist(String photoIdAsString, int size) {
 		GcsFilename gcsFilename = getGcsFileName(photoIdAsString, size);
@@ -139,6 +186,138 @@ public class GcsAdapter extends ImageStorage {
 	}
 
 
+	/**
+	 * Writes all images concurrently.
+	 */
+	@Override
+	protected Set<Integer> doWriteImages(Map<Integer, ? extends Serializable> images, final String photoIdAsString)
+			throws IOException {
+
+		List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+		for (final Map.Entry<Integer, ? extends Serializable> entry : images.entrySet()) {
+			tasks.add(new Callable<Integer>() {
+				@Override
+				public Integer call() throws IOException {
+					doWriteImage(entry.getValue(), photoIdAsString, entry.getKey());
+					return entry.getKey();
+				}
+			});
+		}
+
+		Set<Integer> result = new HashSet<Integer>();
+		for (Integer size : runInParallel(tasks)) {
+			if (size != null) {
+				result.add(size);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Reads all images concurrently.
+	 */
+	@Override
+	protected Map<Integer, Serializable> doReadImages(final String photoIdAsString, int[] sizes) throws IOException {
+		List<Callable<Image>> tasks = new ArrayList<Callable<Image>>();
+		for (final int size : sizes) {
+			tasks.add(new Callable<Image>() {
+				@Override
+				public Image call() throws IOException {
+					return doReadImage(photoIdAsString, size);
+				}
+			});
+		}
+
+		List<Image> images = runInParallel(tasks);
+		Map<Integer, Serializable> result = new HashMap<Integer, Serializable>();
+		for (int i = 0; i < sizes.length; i++) {
+			if (images.get(i) != null) {
+				result.put(sizes[i], images.get(i));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Fetches the metadata of all images concurrently.
+	 */
+	@Override
+	protected Set<ImageKey> doGetExistingImages(Collection<ImageKey> imageKeys) {
+		List<Callable<ImageKey>> tasks = new ArrayList<Callable<ImageKey>>();
+		for (final ImageKey imageKey : imageKeys) {
+			tasks.add(new Callable<ImageKey>() {
+				@Override
+				public ImageKey call() {
+					boolean exists = doDoesImageExist(imageKey.getPhotoIdAsString(), imageKey.getSize());
+					return exists ? imageKey : null;
+				}
+			});
+		}
+
+		Set<ImageKey> result = new HashSet<ImageKey>();
+		try {
+			for (ImageKey imageKey : runInParallel(tasks)) {
+				if (imageKey != null) {
+					result.add(imageKey);
+				}
+			}
+		} catch (IOException e) {
+			log.warning(LogBuilder.createSystemMessage().addException("Could not check for images", e).toString());
+		}
+		return result;
+	}
+
+	/**
+	 * Runs the tasks on request threads and returns their results in order. A task that fails with a runtime
+	 * exception is logged and yields null, like a single failed write; an IOException is passed on.
+	 *
+	 * @methodtype command
+	 */
+	protected <T> List<T> runInParallel(List<Callable<T>> tasks) throws IOException {
+		List<T> result = new ArrayList<T>();
+		if (tasks.isEmpty()) {
+			return result;
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(tasks.size(), MAX_PARALLEL_REQUESTS),
+				getThreadFactory());
+		try {
+			for (Future<T> future : executor.invokeAll(tasks)) {
+				try {
+					result.add(future.get());
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof IOException) {
+						throw (IOException) e.getCause();
+					}
+					log.warning(LogBuilder.createSystemMessage().
+							addException("Problem in parallel storage operation", e.getCause()).toString());
+					result.add(null);
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for storage operations", e);
+		} finally {
+			executor.shutdownNow();
+		}
+		return result;
+	}
+
+	/**
+	 * App Engine only allows request-scoped threads; outside of a request, e.g. in tools, plain threads are used.
+	 *
+	 * @methodtype get
+	 */
+	protected static ThreadFactory getThreadFactory() {
+		ThreadFactory result = null;
+		try {
+			result = ThreadManager.currentRequestThreadFactory();
+		} catch (RuntimeException e) {
+			// no request environment
+		}
+		return (result != null) ? result : Executors.defaultThreadFactory();
+	}
+
 	/**
 	 * Creates a <code>GcsFilename</code> for the photo in the specified size. The name structure is:
 	 *
@@ -157,17 +336,11 @@ public class GcsAdapter extends ImageStorage {
 		private String bucketName;
 		private String photoFolderName;
 		private String defaultImageMimeTypeName;
-		private int bufferLength;
 
 		public Builder() {
 			bucketName = SysConfig.DATA_PATH;
 			photoFolderName = "photos";
 			defaultImageMimeTypeName = "image/jpeg";
-			/**
-			 * 1 MB Buffer, does not limit the size of the files. A valid compromise between unused allocation and
-			 * reallocation.
-			 */
-			bufferLength = 1024 * 1024;
 			gcsService = GcsServiceFactory.createGcsService(RetryParams.getDefaultInstance());
 		}
 
@@ -183,16 +356,12 @@ public class GcsAdapter extends ImageStorage {
 			this.defaultImageMimeTypeName = defaultImageMimeTypeName;
 		}
 
-		public void setBufferLength(int bufferLength) {
-			this.bufferLength = bufferLength;
-		}
-
 		public void setGcsService(GcsService gcsService) {
 			this.gcsService = gcsService;
 		}
 
 		public GcsAdapter build() {
-			return new GcsAdapter(bucketName, photoFolderName, defaultImageMimeTypeName, bufferLength, gcsService);
+			return new GcsAdapter(bucketName, photoFolderName, defaultImageMimeTypeName, gcsService);
 		}
 	}
 }
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.model.persistence;
+
+/**
+ * Value object that identifies one image in an {@link ImageStorage}, i.e. a (photo id, size) pair.
+ */
+public final class ImageKey {
+
+	/**
+	 *
+	 */
+	private final String photoIdAsString;
+	private final int size;
+
+	/**
+	 *
+	 */
+	public ImageKey(String photoIdAsString, int size) {
+		this.photoIdAsString = photoIdAsString;
+		this.size = size;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public String getPhotoIdAsString() {
+		return photoIdAsString;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * @methodtype boolean-query
+	 */
+	@Override
+	public boolean equals(Object other) {
+		if (this == other) {
+			return true;
+		}
+		if (!(other instanceof ImageKey)) {
+			return false;
+		}
+		ImageKey otherKey = (ImageKey) other;
+		return size == otherKey.size && photoIdAsString.equals(otherKey.photoIdAsString);
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	@Override
+	public int hashCode() {
+		return 31 * photoIdAsString.hashCode() + size;
+	}
+
+	/**
+	 * @methodtype conversion
+	 */
+	@Override
+	public String toString() {
+		return photoIdAsString + "/" + size;
+	}
+
+}
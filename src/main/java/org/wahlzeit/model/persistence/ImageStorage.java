@@ -1,12 +1,20 @@
 package org.wahlzeit.model.persistence;
 
 import org.wahlzeit.model.PhotoSize;
-import org.wahlzeit.services.LogBuilder;
+import org.wahlzeit.services.Log;
+import org.wahlzeit.services.MetricsRegistry;
 
 import java.io.IOException;
 import java.io.Serializable;
 import java.security.InvalidParameterException;
-import java.util.logging.Logger;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Abstract super class that offers a convenient interface for all kinds of storage types to store images.
@@ -15,9 +23,32 @@ import java.util.logging.Logger;
  */
 public abstract class ImageStorage {
 
-	private static final Logger log = Logger.getLogger(ImageStorage.class.getName());
+	private static final Log log = Log.getLog(ImageStorage.class);
 	private static ImageStorage instance = null;
 
+	/**
+	 * Names of the latency histograms
+	 */
+	protected static final String IMAGE_STORAGE_WRITE = MetricsRegistry.IMAGE_STORAGE_PREFIX + "write";
+	protected static final String IMAGE_STORAGE_WRITE_BATCH = MetricsRegistry.IMAGE_STORAGE_PREFIX + "writeBatch";
+	protected static final String IMAGE_STORAGE_READ = MetricsRegistry.IMAGE_STORAGE_PREFIX + "read";
+	protected static final String IMAGE_STORAGE_READ_BATCH = MetricsRegistry.IMAGE_STORAGE_PREFIX + "readBatch";
+	protected static final String IMAGE_STORAGE_EXISTS = MetricsRegistry.IMAGE_STORAGE_PREFIX + "exists";
+	protected static final String IMAGE_STORAGE_EXISTS_BATCH = MetricsRegistry.IMAGE_STORAGE_PREFIX + "existsBatch";
+
+	/**
+	 * Remembers for each (photo id, size) pair whether an image exists, as learned from earlier checks, reads and
+	 * writes. Entries only ever cause a redundant write, never a missing read, so they need no expiry. Since a
+	 * negative entry is kept for good, doDoesImageExist() and doGetExistingImages() must answer strongly consistent.
+	 */
+	protected ConcurrentMap<ImageKey, Boolean> existenceCache = new ConcurrentHashMap<ImageKey, Boolean>();
+
+	/**
+	 *
+	 */
+	protected AtomicLong existenceCacheHits = new AtomicLong(0);
+	protected AtomicLong existenceCacheMisses = new AtomicLong(0);
+
 	/**
 	 * @methodtype get
 	 */
@@ -34,9 +65,7 @@ public abstract class ImageStorage {
 	 * @methodtype set
 	 */
 	public static void setInstance(ImageStorage newInstance) {
-		log.config(LogBuilder.createSystemMessage().
-				addAction("set ImageStorage instance").
-				addParameter("instance", newInstance).toString());
+		log.config("set ImageStorage instance", "instance", newInstance);
 		instance = newInstance;
 	}
 
@@ -57,13 +86,12 @@ public abstract class ImageStorage {
 		assertValidPhotoId(photoIdAsString);
 		PhotoSize.assertIsValidPhotoSizeAsInt(size);
 
-		log.config(LogBuilder.createSystemMessage().
-				addAction("write image to storage").
-				addParameter("image", image).
-				addParameter("photo id", photoIdAsString).
-				addParameter("size", size).toString());
+		log.config("write image to storage", "image", image, "photo id", photoIdAsString, "size", size);
 
+		long startNanos = System.nanoTime();
 		doWriteImage(image, photoIdAsString, size);
+		MetricsRegistry.getInstance().recordSince(IMAGE_STORAGE_WRITE, startNanos);
+		existenceCache.put(new ImageKey(photoIdAsString, size), Boolean.TRUE);
 	}
 
 	/**
@@ -75,6 +103,54 @@ public abstract class ImageStorage {
 	protected abstract void doWriteImage(Serializable image, String photoIdAsString, int size)
 			throws IOException, InvalidParameterException;
 
+	/**
+	 * Writes several sizes of one photo at once, keyed by size. Returns the sizes that were actually written; an image
+	 * that the storage can not take, e.g. because it is too large, is logged and left out.
+	 *
+	 * @methodtype command
+	 * @methodproperty wrapper
+	 */
+	public Set<Integer> writeImages(Map<Integer, ? extends Serializable> images, String photoIdAsString)
+			throws IOException {
+
+		assertValidPhotoId(photoIdAsString);
+		for (Map.Entry<Integer, ? extends Serializable> entry : images.entrySet()) {
+			assertImageNotNull(entry.getValue());
+			PhotoSize.assertIsValidPhotoSizeAsInt(entry.getKey());
+		}
+
+		log.config("write images to storage", "photo id", photoIdAsString, "sizes", images.keySet());
+
+		long startNanos = System.nanoTime();
+		Set<Integer> result = doWriteImages(images, photoIdAsString);
+		MetricsRegistry.getInstance().recordSince(IMAGE_STORAGE_WRITE_BATCH, startNanos);
+		for (Integer size : result) {
+			existenceCache.put(new ImageKey(photoIdAsString, size), Boolean.TRUE);
+		}
+		return result;
+	}
+
+	/**
+	 * Actually writes the images; the default implementation writes them one after the other
+	 *
+	 * @methodtype command
+	 * @methodproperty hook
+	 */
+	protected Set<Integer> doWriteImages(Map<Integer, ? extends Serializable> images, String photoIdAsString)
+			throws IOException {
+
+		Set<Integer> result = new HashSet<Integer>();
+		for (Map.Entry<Integer, ? extends Serializable> entry : images.entrySet()) {
+			try {
+				doWriteImage(entry.getValue(), photoIdAsString, entry.getKey());
+				result.add(entry.getKey());
+			} catch (RuntimeException e) {
+				log.warning("Problem when storing image", e, "size", entry.getKey());
+			}
+		}
+		return result;
+	}
+
 
 	// read methods ----------------------------------------------------------------------------------------------------
 
@@ -90,12 +166,13 @@ public abstract class ImageStorage {
 		assertValidPhotoId(photoIdAsString);
 		PhotoSize.assertIsValidPhotoSizeAsInt(size);
 
-		log.config(LogBuilder.createSystemMessage().
-				addAction("read image from storage").
-				addParameter("photo id", photoIdAsString).
-				addParameter("size", size).toString());
+		log.config("read image from storage", "photo id", photoIdAsString, "size", size);
 
-		return doReadImage(photoIdAsString, size);
+		long startNanos = System.nanoTime();
+		Serializable result = doReadImage(photoIdAsString, size);
+		MetricsRegistry.getInstance().recordSince(IMAGE_STORAGE_READ, startNanos);
+		existenceCache.put(new ImageKey(photoIdAsString, size), result != null);
+		return result;
 	}
 
 	/**
@@ -107,6 +184,52 @@ public abstract class ImageStorage {
 	protected abstract Serializable doReadImage(String filename, int size)
 			throws IOException;
 
+	/**
+	 * Reads all sizes of one photo at once. The result maps each size that exists to its image.
+	 *
+	 * @methodtype get
+	 * @methodproperty convenience
+	 */
+	public Map<Integer, Serializable> readImages(String photoIdAsString)
+			throws IllegalArgumentException, IOException {
+
+		assertValidPhotoId(photoIdAsString);
+
+		log.config("read images from storage", "photo id", photoIdAsString);
+
+		int[] sizes = new int[PhotoSize.values().length];
+		for (PhotoSize photoSize : PhotoSize.values()) {
+			sizes[photoSize.asInt()] = photoSize.asInt();
+		}
+
+		long startNanos = System.nanoTime();
+		Map<Integer, Serializable> result = doReadImages(photoIdAsString, sizes);
+		MetricsRegistry.getInstance().recordSince(IMAGE_STORAGE_READ_BATCH, startNanos);
+		for (int size : sizes) {
+			existenceCache.put(new ImageKey(photoIdAsString, size), result.containsKey(size));
+		}
+		return result;
+	}
+
+	/**
+	 * Actually reads the images; the default implementation reads them one after the other
+	 *
+	 * @methodtype get
+	 * @methodproperty hook
+	 */
+	protected Map<Integer, Serializable> doReadImages(String photoIdAsString, int[] sizes)
+			throws IOException {
+
+		Map<Integer, Serializable> result = new HashMap<Integer, Serializable>();
+		for (int size : sizes) {
+			Serializable image = doReadImage(photoIdAsString, size);
+			if (image != null) {
+				result.put(size, image);
+			}
+		}
+		return result;
+	}
+
 
 	// exist method ----------------------------------------------------------------------------------------------------
 
@@ -122,12 +245,20 @@ public abstract class ImageStorage {
 		assertValidPhotoId(photoIdAsString);
 		PhotoSize.assertIsValidPhotoSizeAsInt(size);
 
-		log.config(LogBuilder.createSystemMessage().
-				addAction("check if image exists in storage").
-				addParameter("photo id", photoIdAsString).
-				addParameter("size", size).toString());
-
-		return doDoesImageExist(photoIdAsString, size);
+		log.config("check if image exists in storage", "photo id", photoIdAsString, "size", size);
+
+		ImageKey existenceKey = new ImageKey(photoIdAsString, size);
+		Boolean result = existenceCache.get(existenceKey);
+		if (result != null) {
+			existenceCacheHits.incrementAndGet();
+		} else {
+			existenceCacheMisses.incrementAndGet();
+			long startNanos = System.nanoTime();
+			result = doDoesImageExist(photoIdAsString, size);
+			MetricsRegistry.getInstance().recordSince(IMAGE_STORAGE_EXISTS, startNanos);
+			existenceCache.put(existenceKey, result);
+		}
+		return result;
 	}
 
 
@@ -139,6 +270,87 @@ public abstract class ImageStorage {
 	 */
 	protected abstract boolean doDoesImageExist(String photoIdAsString, int size);
 
+	/**
+	 * Checks for several images at once which of them exist in the storage. Only the unknown ones are looked up.
+	 *
+	 * @methodtype get
+	 * @methodproperty wrapper
+	 */
+	public Set<ImageKey> getExistingImages(Collection<ImageKey> imageKeys)
+			throws IllegalArgumentException {
+
+		Set<ImageKey> result = new HashSet<ImageKey>();
+		Set<ImageKey> unknownKeys = new HashSet<ImageKey>();
+		for (ImageKey imageKey : imageKeys) {
+			assertValidPhotoId(imageKey.getPhotoIdAsString());
+			PhotoSize.assertIsValidPhotoSizeAsInt(imageKey.getSize());
+
+			Boolean exists = existenceCache.get(imageKey);
+			if (exists == null) {
+				existenceCacheMisses.incrementAndGet();
+				unknownKeys.add(imageKey);
+			} else {
+				existenceCacheHits.incrementAndGet();
+				if (exists) {
+					result.add(imageKey);
+				}
+			}
+		}
+
+		if (!unknownKeys.isEmpty()) {
+			log.config("check if images exist in storage", "images", unknownKeys);
+
+			long startNanos = System.nanoTime();
+			Set<ImageKey> existingKeys = doGetExistingImages(unknownKeys);
+			MetricsRegistry.getInstance().recordSince(IMAGE_STORAGE_EXISTS_BATCH, startNanos);
+			for (ImageKey imageKey : unknownKeys) {
+				existenceCache.put(imageKey, existingKeys.contains(imageKey));
+			}
+			result.addAll(existingKeys);
+		}
+		return result;
+	}
+
+	/**
+	 * Actually checks which of the images exist; the default implementation checks them one after the other
+	 *
+	 * @methodtype get
+	 * @methodproperty hook
+	 */
+	protected Set<ImageKey> doGetExistingImages(Collection<ImageKey> imageKeys) {
+		Set<ImageKey> result = new HashSet<ImageKey>();
+		for (ImageKey imageKey : imageKeys) {
+			if (doDoesImageExist(imageKey.getPhotoIdAsString(), imageKey.getSize())) {
+				result.add(imageKey);
+			}
+		}
+		return result;
+	}
+
+
+	/**
+	 * Number of existence checks that were answered without asking the storage
+	 *
+	 * @methodtype get
+	 */
+	public long getExistenceCacheHits() {
+		return existenceCacheHits.get();
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public long getExistenceCacheMisses() {
+		return existenceCacheMisses.get();
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	public void clearExistenceCache() {
+		existenceCache.clear();
+	}
+
 
 	// assertion methods -----------------------------------------------------------------------------------------------
 
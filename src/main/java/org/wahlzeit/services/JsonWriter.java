@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.services;
+
+/**
+ * Appends JSON values to a StringBuilder without creating intermediate Strings; used for JSON log records.
+ */
+public class JsonWriter {
+
+	/**
+	 * Causes nested deeper than this are left out, which also guards against cyclic causes
+	 */
+	protected static final int MAX_CAUSE_DEPTH = 8;
+
+	protected static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+	/**
+	 *
+	 */
+	protected JsonWriter() {
+		// only static methods
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	public static void appendField(StringBuilder out, String name, String value) {
+		appendString(out, name);
+		out.append(':');
+		appendString(out, value);
+	}
+
+	/**
+	 * Numbers and booleans are written as such, all other objects as their string representation.
+	 *
+	 * @methodtype command
+	 */
+	public static void appendValue(StringBuilder out, Object value) {
+		if (value == null) {
+			out.append("null");
+		} else if (value instanceof Integer || value instanceof Long || value instanceof Short
+				|| value instanceof Byte) {
+			out.append(((Number) value).longValue());
+		} else if (value instanceof Double || value instanceof Float) {
+			double doubleValue = ((Number) value).doubleValue();
+			if (Double.isNaN(doubleValue) || Double.isInfinite(doubleValue)) {
+				appendString(out, value.toString());
+			} else {
+				out.append(doubleValue);
+			}
+		} else if (value instanceof Boolean) {
+			out.append(((Boolean) value).booleanValue());
+		} else {
+			appendString(out, value.toString());
+		}
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	public static void appendString(StringBuilder out, CharSequence value) {
+		if (value == null) {
+			out.append("null");
+			return;
+		}
+
+		out.append('"');
+		appendEscaped(out, value);
+		out.append('"');
+	}
+
+	/**
+	 * @methodtype command
+	 * @methodproperty primitive
+	 */
+	protected static void appendEscaped(StringBuilder out, CharSequence value) {
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+				case '"':
+					out.append("\\\"");
+					break;
+				case '\\':
+					out.append("\\\\");
+					break;
+				case '\n':
+					out.append("\\n");
+					break;
+				case '\r':
+					out.append("\\r");
+					break;
+				case '\t':
+					out.append("\\t");
+					break;
+				default:
+					if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+						out.append("\\u").append(HEX_DIGITS[(c >> 12) & 0xf]).append(HEX_DIGITS[(c >> 8) & 0xf]).
+								append(HEX_DIGITS[(c >> 4) & 0xf]).append(HEX_DIGITS[c & 0xf]);
+					} else {
+						out.append(c);
+					}
+			}
+		}
+	}
+
+	/**
+	 * Writes {"reason":..,"type":..,"message":..,"stacktrace":[..],"cause":{..}}; each stack frame is one array
+	 * element, so tools need not split a multi-line trace.
+	 *
+	 * @methodtype command
+	 */
+	public static void appendThrowable(StringBuilder out, String reason, Throwable throwable) {
+		out.append('{');
+		appendField(out, "reason", reason);
+		if (throwable != null) {
+			out.append(',');
+			appendThrowableFields(out, throwable, 0);
+		}
+		out.append('}');
+	}
+
+	/**
+	 * @methodtype command
+	 * @methodproperty primitive
+	 */
+	protected static void appendThrowableFields(StringBuilder out, Throwable throwable, int depth) {
+		appendField(out, "type", throwable.getClass().getName());
+		out.append(',');
+		appendField(out, "message", throwable.getMessage());
+		out.append(",\"stacktrace\":[");
+		StackTraceElement[] frames = throwable.getStackTrace();
+		for (int i = 0; i < frames.length; i++) {
+			if (i > 0) {
+				out.append(',');
+			}
+			appendFrame(out, frames[i]);
+		}
+		out.append(']');
+
+		Throwable cause = throwable.getCause();
+		if (cause != null && cause != throwable && depth < MAX_CAUSE_DEPTH) {
+			out.append(",\"cause\":{");
+			appendThrowableFields(out, cause, depth + 1);
+			out.append('}');
+		}
+	}
+
+	/**
+	 * Same text as StackTraceElement.toString(), written without creating it.
+	 *
+	 * @methodtype command
+	 * @methodproperty primitive
+	 */
+	protected static void appendFrame(StringBuilder out, StackTraceElement frame) {
+		out.append('"');
+		appendEscaped(out, frame.getClassName());
+		out.append('.');
+		appendEscaped(out, frame.getMethodName());
+		out.append('(');
+		if (frame.isNativeMethod()) {
+			out.append("Native Method");
+		} else if (frame.getFileName() == null) {
+			out.append("Unknown Source");
+		} else {
+			appendEscaped(out, frame.getFileName());
+			if (frame.getLineNumber() >= 0) {
+				out.append(':').append(frame.getLineNumber());
+			}
+		}
+		out.append(")\"");
+	}
+
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.services;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free latency histogram with exponential buckets: bucket i counts latencies in [2^i, 2^(i+1)) microseconds.
+ * Percentiles are therefore approximate, reported as the upper bound of the bucket they fall into.
+ */
+public class LatencyHistogram {
+
+	/**
+	 * 32 buckets cover latencies up to about 70 minutes
+	 */
+	public static final int NUMBER_OF_BUCKETS = 32;
+
+	/**
+	 *
+	 */
+	protected AtomicLongArray buckets = new AtomicLongArray(NUMBER_OF_BUCKETS);
+	protected AtomicLong count = new AtomicLong(0);
+	protected AtomicLong totalMicros = new AtomicLong(0);
+	protected AtomicLong maxMicros = new AtomicLong(0);
+
+	/**
+	 * @methodtype command
+	 */
+	public void record(long micros) {
+		long value = Math.max(0, micros);
+		buckets.incrementAndGet(getBucketIndex(value));
+		count.incrementAndGet();
+		totalMicros.addAndGet(value);
+
+		long max = maxMicros.get();
+		while (value > max && !maxMicros.compareAndSet(max, value)) {
+			max = maxMicros.get();
+		}
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	public void reset() {
+		for (int i = 0; i < NUMBER_OF_BUCKETS; i++) {
+			buckets.set(i, 0);
+		}
+		count.set(0);
+		totalMicros.set(0);
+		maxMicros.set(0);
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public long getMeanMicros() {
+		long currentCount = count.get();
+		return (currentCount == 0) ? 0 : totalMicros.get() / currentCount;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public long getMaxMicros() {
+		return maxMicros.get();
+	}
+
+	/**
+	 * Returns the upper bound of the bucket that contains the given percentile (0..100).
+	 *
+	 * @methodtype get
+	 */
+	public long getPercentileMicros(double percentile) {
+		long[] counts = new long[NUMBER_OF_BUCKETS];
+		long total = 0;
+		for (int i = 0; i < NUMBER_OF_BUCKETS; i++) {
+			counts[i] = buckets.get(i);
+			total += counts[i];
+		}
+		if (total == 0) {
+			return 0;
+		}
+
+		long rank = (long) Math.ceil(total * percentile / 100.0);
+		long seen = 0;
+		for (int i = 0; i < NUMBER_OF_BUCKETS; i++) {
+			seen += counts[i];
+			if (seen >= rank) {
+				return Math.min(getBucketUpperBound(i), getMaxMicros());
+			}
+		}
+		return getMaxMicros();
+	}
+
+	/**
+	 * @methodtype get
+	 * @methodproperty primitive
+	 */
+	protected static int getBucketIndex(long micros) {
+		int index = 63 - Long.numberOfLeadingZeros(Math.max(1, micros));
+		return Math.min(index, NUMBER_OF_BUCKETS - 1);
+	}
+
+	/**
+	 * @methodtype get
+	 * @methodproperty primitive
+	 */
+	protected static long getBucketUpperBound(int index) {
+		return (1L << (index + 1)) - 1;
+	}
+
+}
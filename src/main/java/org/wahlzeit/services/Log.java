@@ -0,0 +1,272 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.services;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A facade for a Logger that checks the level before a LogBuilder message is built. Messages are given as an action
+ * and name/value pairs, or through a MessageSupplier. A statement whose level is disabled therefore allocates
+ * nothing, as long as the caller passes existing objects, or primitives to the primitive overloads.
+ */
+public class Log {
+
+	/**
+	 * Defers building a message until it is known that it will be logged.
+	 */
+	public interface MessageSupplier {
+
+		/**
+		 * @methodtype factory
+		 */
+		LogBuilder get();
+
+	}
+
+	/**
+	 *
+	 */
+	protected final Logger logger;
+
+	/**
+	 *
+	 */
+	protected Log(Logger logger) {
+		this.logger = logger;
+	}
+
+	/**
+	 * @methodtype factory
+	 */
+	public static Log getLog(Class<?> type) {
+		return new Log(Logger.getLogger(type.getName()));
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public Logger getLogger() {
+		return logger;
+	}
+
+	/**
+	 * @methodtype boolean query
+	 */
+	public boolean isConfigEnabled() {
+		return logger.isLoggable(Level.CONFIG);
+	}
+
+	/**
+	 * @methodtype boolean query
+	 */
+	public boolean isInfoEnabled() {
+		return logger.isLoggable(Level.INFO);
+	}
+
+	// config ----------------------------------------------------------------------------------------------------------
+
+	/**
+	 *
+	 */
+	public void config(String message) {
+		if (logger.isLoggable(Level.CONFIG)) {
+			doLog(Level.CONFIG, LogBuilder.createSystemMessage().addMessage(message));
+		}
+	}
+
+	/**
+	 *
+	 */
+	public void config(String name, Object value) {
+		if (logger.isLoggable(Level.CONFIG)) {
+			doLog(Level.CONFIG, LogBuilder.createSystemMessage().addParameter(name, value));
+		}
+	}
+
+	/**
+	 *
+	 */
+	public void config(String name, long value) {
+		if (logger.isLoggable(Level.CONFIG)) {
+			doLog(Level.CONFIG, LogBuilder.createSystemMessage().addParameter(name, value));
+		}
+	}
+
+	/**
+	 *
+	 */
+	public void config(String action, String name, Object value) {
+		if (logger.isLoggable(Level.CONFIG)) {
+			doLog(Level.CONFIG, LogBuilder.createSystemMessage().addAction(action).addParameter(name, value));
+		}
+	}
+
+	/**
+	 *
+	 */
+	public void config(String action, String name1, Object value1, String name2, Object value2) {
+		if (logger.isLoggable(Level.CONFIG)) {
+			doLog(Level.CONFIG, LogBuilder.createSystemMessage().addAction(action).
+					addParameter(name1, value1).addParameter(name2, value2));
+		}
+	}
+
+	/**
+	 *
+	 */
+	public void config(String action, String name1, Object value1, String name2, Object value2, String name3,
+			Object value3) {
+		if (logger.isLoggable(Level.CONFIG)) {
+			doLog(Level.CONFIG, LogBuilder.createSystemMessage().addAction(action).
+					addParameter(name1, value1).addParameter(name2, value2).addParameter(name3, value3));
+		}
+	}
+
+	/**
+	 *
+	 */
+	public void config(MessageSupplier supplier) {
+		if (logger.isLoggable(Level.CONFIG)) {
+			doLog(Level.CONFIG, supplier.get());
+		}
+	}
+
+	// info ------------------------------------------------------------------------------------------------------------
+
+	/**
+	 *
+	 */
+	public void info(String message) {
+		if (logger.isLoggable(Level.INFO)) {
+			doLog(Level.INFO, LogBuilder.createSystemMessage().addMessage(message));
+		}
+	}
+
+	/**
+	 *
+	 */
+	public void info(String name, Object value) {
+		if (logger.isLoggable(Level.INFO)) {
+			doLog(Level.INFO, LogBuilder.createSystemMessage().addParameter(name, value));
+		}
+	}
+
+	/**
+	 *
+	 */
+	public void info(String name, long value) {
+		if (logger.isLoggable(Level.INFO)) {
+			doLog(Level.INFO, LogBuilder.createSystemMessage().addParameter(name, value));
+		}
+	}
+
+	/**
+	 *
+	 */
+	public void info(String action, String name, Object value) {
+		if (logger.isLoggable(Level.INFO)) {
+			doLog(Level.INFO, LogBuilder.createSystemMessage().addAction(action).addParameter(name, value));
+		}
+	}
+
+	/**
+	 *
+	 */
+	public void info(String action, String name1, Object value1, String name2, Object value2) {
+		if (logger.isLoggable(Level.INFO)) {
+			doLog(Level.INFO, LogBuilder.createSystemMessage().addAction(action).
+					addParameter(name1, value1).addParameter(name2, value2));
+		}
+	}
+
+	/**
+	 *
+	 */
+	public void info(String action, String name1, Object value1, String name2, Object value2, String name3,
+			Object value3) {
+		if (logger.isLoggable(Level.INFO)) {
+			doLog(Level.INFO, LogBuilder.createSystemMessage().addAction(action).
+					addParameter(name1, value1).addParameter(name2, value2).addParameter(name3, value3));
+		}
+	}
+
+	/**
+	 *
+	 */
+	public void info(MessageSupplier supplier) {
+		if (logger.isLoggable(Level.INFO)) {
+			doLog(Level.INFO, supplier.get());
+		}
+	}
+
+	// warning ---------------------------------------------------------------------------------------------------------
+
+	/**
+	 *
+	 */
+	public void warning(String exceptionMessage, Throwable throwable) {
+		if (logger.isLoggable(Level.WARNING)) {
+			doLog(Level.WARNING, LogBuilder.createSystemMessage().addException(exceptionMessage, throwable));
+		}
+	}
+
+	/**
+	 *
+	 */
+	public void warning(String exceptionMessage, Throwable throwable, String name, Object value) {
+		if (logger.isLoggable(Level.WARNING)) {
+			doLog(Level.WARNING, LogBuilder.createSystemMessage().addParameter(name, value).
+					addException(exceptionMessage, throwable));
+		}
+	}
+
+	/**
+	 *
+	 */
+	public void warning(String exceptionMessage, Throwable throwable, String name1, Object value1, String name2,
+			Object value2) {
+		if (logger.isLoggable(Level.WARNING)) {
+			doLog(Level.WARNING, LogBuilder.createSystemMessage().addParameter(name1, value1).
+					addParameter(name2, value2).addException(exceptionMessage, throwable));
+		}
+	}
+
+	/**
+	 *
+	 */
+	public void warning(MessageSupplier supplier) {
+		if (logger.isLoggable(Level.WARNING)) {
+			doLog(Level.WARNING, supplier.get());
+		}
+	}
+
+	/**
+	 * The logger name is given as source class, so the Logger does not have to infer it from the stack.
+	 *
+	 * @methodtype command
+	 * @methodproperty primitive
+	 */
+	protected void doLog(Level level, LogBuilder message) {
+		logger.logp(level, logger.getName(), null, message.toString());
+	}
+
+}
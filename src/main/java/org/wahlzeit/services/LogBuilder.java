@@ -6,6 +6,7 @@ import org.wahlzeit.model.UserSession;
 
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.util.Arrays;
 
 /**
  * Builder class for log messages, that ensures that log messages are all formatted equally.
@@ -14,6 +15,8 @@ import java.io.StringWriter;
  * <code>Formatter</code> could not be used
  *
  * (see https://stackoverflow.com/questions/30345665/how-to-customize-logging-for-google-app-engine-java).
+ *
+ * Messages are written as "name=value" text or, if the format is set to JSON, as single-line JSON objects.
  * 
  * @review
  */
@@ -30,12 +33,87 @@ public class LogBuilder {
 	protected static final String INFO_SEPARATOR = ", ";
 	protected static final String EXCEPTION_REASON = "exception reason";
 	protected static final String STACKTRACE = "stacktrace";
+	protected static final String PARAMETERS = "parameters";
+	protected static final String EXCEPTION = "exception";
+
+	protected static final String NO_SESSION_CONTEXT = SESSION + NAME_VALUE_SEPARATOR + Session.NO_SESSION +
+			INFO_SEPARATOR + CLIENT + NAME_VALUE_SEPARATOR + UserSession.ANONYMOUS_CLIENT;
+
+	/**
+	 * Output formats; TEXT is "name=value, name=value", JSON a single-line object per record
+	 */
+	public enum Format {
+		TEXT, JSON
+	}
+
+	protected static volatile Format format = Format.TEXT;
 
+	/**
+	 * Reused by JSON records of a thread; a record that is formatted while another one is, e.g. from a toString()
+	 * method of a parameter, gets a buffer of its own
+	 */
+	protected static final ThreadLocal<StringBuilder> jsonBuffer = new ThreadLocal<StringBuilder>() {
+		@Override
+		protected StringBuilder initialValue() {
+			return new StringBuilder(JSON_BUFFER_CAPACITY);
+		}
+	};
+
+	protected static final int JSON_BUFFER_CAPACITY = 512;
+	protected static final int JSON_BUFFER_MAX_CAPACITY = 64 * 1024;
+
+	/**
+	 * Text format
+	 */
 	protected StringBuilder logMessage;
 
+	/**
+	 * JSON format; the record is kept in fields and only formatted by toString()
+	 */
+	protected String level;
+	protected String sessionName;
+	protected String clientName;
+	protected String action;
+	protected String message;
+	protected String[] parameterNames;
+	protected Object[] parameterValues;
+	protected int parameterCount = 0;
+	protected String exceptionReason;
+	protected Throwable exception;
+
 
 	protected LogBuilder() {
-		logMessage = new StringBuilder();
+		this(Format.TEXT);
+	}
+
+	/**
+	 *
+	 */
+	protected LogBuilder(Format myFormat) {
+		if (myFormat == Format.TEXT) {
+			logMessage = new StringBuilder();
+		}
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public static Format getFormat() {
+		return format;
+	}
+
+	/**
+	 * @methodtype set
+	 */
+	public static void setFormat(Format newFormat) {
+		format = (newFormat != null) ? newFormat : Format.TEXT;
+	}
+
+	/**
+	 * @methodtype boolean query
+	 */
+	public boolean isJson() {
+		return logMessage == null;
 	}
 
 
@@ -58,30 +136,58 @@ public class LogBuilder {
 	 * the clients name.
 	 */
 	protected static LogBuilder doCreateMessage(String level) {
-		LogBuilder result = new LogBuilder();
+		LogBuilder result = new LogBuilder(format);
 		Session session = SessionManager.getThreadLocalSession();
-		String sessionName;
-		String clientName;
-		if (session != null) {
-			sessionName = session.getName();
-			Client client = UserManager.getInstance().getClientById(session.getClientId());
-			if (client != null) {
-				clientName = client.getNickName();
-			} else {
-				clientName = UserSession.ANONYMOUS_CLIENT;
-			}
+		if (result.isJson()) {
+			result.level = level;
+			result.sessionName = (session != null) ? session.getName() : Session.NO_SESSION;
+			result.clientName = getClientName(session);
 		} else {
-			sessionName = Session.NO_SESSION;
-			clientName = UserSession.ANONYMOUS_CLIENT;
+			result.logMessage.append(LEVEL).append(NAME_VALUE_SEPARATOR).append(level);
+			result.add(getLogContext(session));
+		}
+		return result;
+	}
+
+	/**
+	 * @methodtype get
+	 *
+	 * Returns the session and client part of a log message. It is built once and then cached in the session, so that
+	 * it does not have to be assembled for each message of a request.
+	 */
+	protected static String getLogContext(Session session) {
+		if (session == null) {
+			return NO_SESSION_CONTEXT;
 		}
 
-		result.add(LEVEL + NAME_VALUE_SEPARATOR + level);
-		result.add(SESSION + NAME_VALUE_SEPARATOR + sessionName);
-		result.add(CLIENT + NAME_VALUE_SEPARATOR + clientName);
+		String clientName = getClientName(session);
+		String result = session.getLogContext(clientName);
+		if (result == null) {
+			result = SESSION + NAME_VALUE_SEPARATOR + session.getName() + INFO_SEPARATOR +
+					CLIENT + NAME_VALUE_SEPARATOR + clientName;
+			session.setLogContext(clientName, result);
+		}
 
 		return result;
 	}
 
+	/**
+	 * @methodtype get
+	 */
+	protected static String getClientName(Session session) {
+		if (session == null) {
+			return UserSession.ANONYMOUS_CLIENT;
+		}
+
+		Client client;
+		if (session instanceof UserSession) {
+			client = ((UserSession) session).getClient();
+		} else {
+			client = UserManager.getInstance().getClientById(session.getClientId());
+		}
+		return (client != null) ? client.getNickName() : UserSession.ANONYMOUS_CLIENT;
+	}
+
 	/**
 	 * @methodtype set
 	 */
@@ -116,6 +222,24 @@ public class LogBuilder {
 	 * Adds the following to the LogMessage: ", <name>=<value>".
 	 */
 	public LogBuilder addParameter(String name, int value) {
+		if (isJson()) {
+			addJsonParameter(name, value);
+			return this;
+		}
+		add(name + NAME_VALUE_SEPARATOR + String.valueOf(value));
+		return this;
+	}
+
+	/**
+	 * @methodtype mutate
+	 *
+	 * Adds the following to the LogMessage: ", <name>=<value>".
+	 */
+	public LogBuilder addParameter(String name, long value) {
+		if (isJson()) {
+			addJsonParameter(name, value);
+			return this;
+		}
 		add(name + NAME_VALUE_SEPARATOR + String.valueOf(value));
 		return this;
 	}
@@ -126,6 +250,10 @@ public class LogBuilder {
 	 * Adds the following to the LogMessage: ", <name>=<value>".
 	 */
 	public LogBuilder addParameter(String name, boolean value) {
+		if (isJson()) {
+			addJsonParameter(name, value);
+			return this;
+		}
 		add(name + NAME_VALUE_SEPARATOR + String.valueOf(value));
 		return this;
 	}
@@ -136,6 +264,10 @@ public class LogBuilder {
 	 * Adds the following to the LogMessage: ", <name>=<value>".
 	 */
 	public LogBuilder addParameter(String name, String value) {
+		if (isJson()) {
+			addJsonParameter(name, value);
+			return this;
+		}
 		add(name + NAME_VALUE_SEPARATOR + value);
 		return this;
 	}
@@ -146,6 +278,10 @@ public class LogBuilder {
 	 * Adds the following to the LogMessage: ", <name>=<value>.toString()".
 	 */
 	public LogBuilder addParameter(String name, Object value) {
+		if (isJson()) {
+			addJsonParameter(name, value);
+			return this;
+		}
 		add(name + NAME_VALUE_SEPARATOR + value.toString());
 		return this;
 	}
@@ -156,6 +292,10 @@ public class LogBuilder {
 	 * Adds the message to the LogMessage: ", <message>".
 	 */
 	public LogBuilder addMessage(String message) {
+		if (isJson()) {
+			this.message = (this.message == null) ? message : this.message + INFO_SEPARATOR + message;
+			return this;
+		}
 		add(message);
 		return this;
 	}
@@ -166,6 +306,11 @@ public class LogBuilder {
 	 * Adds the stacktrace and the <code>exceptionMessage</code> to the log message.
 	 */
 	public LogBuilder addException(String exceptionMessage, Throwable throwable) {
+		if (isJson()) {
+			exceptionReason = exceptionMessage;
+			exception = throwable;
+			return this;
+		}
 		add(EXCEPTION_REASON + NAME_VALUE_SEPARATOR + exceptionMessage);
 		StringWriter sw = new StringWriter();
 		throwable.printStackTrace(new PrintWriter(sw));
@@ -182,6 +327,10 @@ public class LogBuilder {
 	 * Adds the info that the action is performed the log message: "action=<action>".
 	 */
 	public LogBuilder addAction(String action) {
+		if (isJson()) {
+			this.action = action;
+			return this;
+		}
 		add(ACTION + NAME_VALUE_SEPARATOR + action);
 		return this;
 	}
@@ -196,10 +345,95 @@ public class LogBuilder {
 	 */
 	@Override
 	public String toString() {
+		if (isJson()) {
+			return toJsonString();
+		}
 
-		assert logMessage != null;
 		assert logMessage.length() > 0;
 
 		return logMessage.toString();
 	}
+
+	/**
+	 * @methodtype set
+	 * @methodproperty primitive
+	 */
+	protected void addJsonParameter(String name, Object value) {
+		if (parameterNames == null) {
+			parameterNames = new String[4];
+			parameterValues = new Object[4];
+		} else if (parameterCount == parameterNames.length) {
+			parameterNames = Arrays.copyOf(parameterNames, parameterCount * 2);
+			parameterValues = Arrays.copyOf(parameterValues, parameterCount * 2);
+		}
+		parameterNames[parameterCount] = name;
+		parameterValues[parameterCount] = value;
+		parameterCount++;
+	}
+
+	/**
+	 * @methodtype conversion
+	 *
+	 * Writes the record as a single-line JSON object into the thread's buffer; the returned String is the only copy.
+	 */
+	protected String toJsonString() {
+		StringBuilder buffer = jsonBuffer.get();
+		boolean isShared = buffer.length() == 0;
+		if (!isShared) {
+			buffer = new StringBuilder(JSON_BUFFER_CAPACITY);
+		}
+
+		try {
+			appendJson(buffer);
+			return buffer.toString();
+		} finally {
+			if (isShared) {
+				buffer.setLength(0);
+				if (buffer.capacity() > JSON_BUFFER_MAX_CAPACITY) {
+					jsonBuffer.remove();
+				}
+			}
+		}
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	protected void appendJson(StringBuilder out) {
+		out.append('{');
+		JsonWriter.appendField(out, LEVEL, level);
+		out.append(',');
+		JsonWriter.appendField(out, SESSION, sessionName);
+		out.append(',');
+		JsonWriter.appendField(out, CLIENT, clientName);
+		if (action != null) {
+			out.append(',');
+			JsonWriter.appendField(out, ACTION, action);
+		}
+		if (message != null) {
+			out.append(',');
+			JsonWriter.appendField(out, MESSAGE, message);
+		}
+		if (parameterCount > 0) {
+			out.append(',');
+			JsonWriter.appendString(out, PARAMETERS);
+			out.append(":{");
+			for (int i = 0; i < parameterCount; i++) {
+				if (i > 0) {
+					out.append(',');
+				}
+				JsonWriter.appendString(out, String.valueOf(parameterNames[i]));
+				out.append(':');
+				JsonWriter.appendValue(out, parameterValues[i]);
+			}
+			out.append('}');
+		}
+		if (exception != null || exceptionReason != null) {
+			out.append(',');
+			JsonWriter.appendString(out, EXCEPTION);
+			out.append(':');
+			JsonWriter.appendThrowable(out, exceptionReason, exception);
+		}
+		out.append('}');
+	}
 }
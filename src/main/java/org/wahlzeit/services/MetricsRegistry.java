@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.services;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The MetricsRegistry singleton collects named latency histograms and counters of the hot paths. Recording is
+ * lock-free; metric names must come from code, never from request data, to keep the number of metrics bounded.
+ */
+public class MetricsRegistry {
+
+	/**
+	 * Metric names
+	 */
+	public static final String HANDLER_PREFIX = "handler.";
+	public static final String DATASTORE_READ = "datastore.read";
+	public static final String DATASTORE_WRITE = "datastore.write";
+	public static final String DATASTORE_DELETE = "datastore.delete";
+	public static final String IMAGE_STORAGE_PREFIX = "imageStorage.";
+	public static final String PHOTO_CACHE_HITS = "photoCache.hits";
+	public static final String PHOTO_CACHE_MISSES = "photoCache.misses";
+
+	/**
+	 *
+	 */
+	protected static final MetricsRegistry instance = new MetricsRegistry();
+
+	/**
+	 *
+	 */
+	protected ConcurrentMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<String, LatencyHistogram>();
+	protected ConcurrentMap<String, AtomicLong> counters = new ConcurrentHashMap<String, AtomicLong>();
+
+	/**
+	 * Metric names of handler classes, so that naming a handler metric does not allocate
+	 */
+	protected static final ConcurrentMap<Class<?>, String> handlerNames = new ConcurrentHashMap<Class<?>, String>();
+
+	/**
+	 *
+	 */
+	public static MetricsRegistry getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Handler metrics are named by the class of the handler that served the request, not by the requested link,
+	 * so that unknown links all end up in the metric of the default handler.
+	 *
+	 * @methodtype get
+	 */
+	public static String getHandlerMetricName(Object handler) {
+		Class<?> type = handler.getClass();
+		String result = handlerNames.get(type);
+		if (result == null) {
+			result = HANDLER_PREFIX + type.getSimpleName();
+			handlerNames.putIfAbsent(type, result);
+		}
+		return result;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public LatencyHistogram getHistogram(String name) {
+		LatencyHistogram result = histograms.get(name);
+		if (result == null) {
+			LatencyHistogram newHistogram = new LatencyHistogram();
+			result = histograms.putIfAbsent(name, newHistogram);
+			if (result == null) {
+				result = newHistogram;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public AtomicLong getCounter(String name) {
+		AtomicLong result = counters.get(name);
+		if (result == null) {
+			AtomicLong newCounter = new AtomicLong(0);
+			result = counters.putIfAbsent(name, newCounter);
+			if (result == null) {
+				result = newCounter;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Records the time passed since startNanos, as taken from System.nanoTime().
+	 *
+	 * @methodtype command
+	 */
+	public void recordSince(String name, long startNanos) {
+		getHistogram(name).record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos));
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	public void increment(String name) {
+		getCounter(name).incrementAndGet();
+	}
+
+	/**
+	 * Resets all values; the metrics themselves are kept, as callers may hold on to them.
+	 *
+	 * @methodtype command
+	 */
+	public void reset() {
+		for (LatencyHistogram histogram : histograms.values()) {
+			histogram.reset();
+		}
+		for (AtomicLong counter : counters.values()) {
+			counter.set(0);
+		}
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public SortedMap<String, Long> getCounterValues() {
+		SortedMap<String, Long> result = new TreeMap<String, Long>();
+		for (Map.Entry<String, AtomicLong> entry : counters.entrySet()) {
+			result.put(entry.getKey(), entry.getValue().get());
+		}
+		return result;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public SortedMap<String, LatencyHistogram> getHistograms() {
+		return new TreeMap<String, LatencyHistogram>(histograms);
+	}
+
+}
@@ -22,10 +22,15 @@ package org.wahlzeit.services;
 
 import com.google.appengine.api.datastore.Key;
 import com.google.appengine.api.datastore.KeyFactory;
+import com.googlecode.objectify.Result;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
-import java.util.logging.Logger;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * An ObjectManager creates/reads/updates/deletes Persistent (objects) from Google Datastore.
@@ -38,7 +43,23 @@ public abstract class ObjectManager {
 	 */
 	public static final Key applicationRootKey = KeyFactory.createKey("Application", "Wahlzeit");
 
-	private static final Logger log = Logger.getLogger(ObjectManager.class.getName());
+	private static final Log log = Log.getLog(ObjectManager.class);
+
+	/**
+	 *
+	 */
+	protected static final String DATASTORE_WRITE_BATCH = MetricsRegistry.DATASTORE_WRITE + "Batch";
+
+	/**
+	 * Dirty objects queued by updateObjects() that have not been written yet
+	 */
+	protected final Set<Persistent> pendingWrites =
+			Collections.newSetFromMap(new ConcurrentHashMap<Persistent, Boolean>());
+
+	/**
+	 *
+	 */
+	protected final Object flushLock = new Object();
 
 
 	/**
@@ -48,9 +69,13 @@ public abstract class ObjectManager {
 		assertIsNonNullArgument(type, "type");
 		assertIsNonNullArgument(id, "id");
 
-		log.config(LogBuilder.createSystemMessage().
-				addMessage("Load Type " + type.toString() + " with ID " + id + " from datastore.").toString());
-		return OfyService.ofy().load().type(type).id(id).now();
+		log.config("Datastore: load entity", "type", type, "id", id);
+		long startNanos = System.nanoTime();
+		try {
+			return OfyService.ofy().load().type(type).id(id).now();
+		} finally {
+			MetricsRegistry.getInstance().recordSince(MetricsRegistry.DATASTORE_READ, startNanos);
+		}
 	}
 
 	/**
@@ -69,9 +94,13 @@ public abstract class ObjectManager {
 		assertIsNonNullArgument(type, "type");
 		assertIsNonNullArgument(id, "id");
 
-		log.config(LogBuilder.createSystemMessage().
-				addMessage("Load Type " + type.toString() + " with ID " + id + " from datastore.").toString());
-		return OfyService.ofy().load().type(type).id(id).now();
+		log.config("Datastore: load entity", "type", type, "id", id);
+		long startNanos = System.nanoTime();
+		try {
+			return OfyService.ofy().load().type(type).id(id).now();
+		} finally {
+			MetricsRegistry.getInstance().recordSince(MetricsRegistry.DATASTORE_READ, startNanos);
+		}
 	}
 
 	/**
@@ -83,12 +112,15 @@ public abstract class ObjectManager {
 		assertIsNonNullArgument(parameterName, "parameterName");
 		assertIsNonNullArgument(value, "value");
 
-		log.config(LogBuilder.createSystemMessage().
-				addMessage("Load Type " + type.toString() + " with parameter " +
-						parameterName + " == " + value + " from datastore.").toString());
+		log.config("Datastore: load entity", "type", type, parameterName, value);
 
-		return OfyService.ofy().load().type(type).ancestor(applicationRootKey).filter(parameterName, value).first()
-				.now();
+		long startNanos = System.nanoTime();
+		try {
+			return OfyService.ofy().load().type(type).ancestor(applicationRootKey).filter(parameterName, value).first()
+					.now();
+		} finally {
+			MetricsRegistry.getInstance().recordSince(MetricsRegistry.DATASTORE_READ, startNanos);
+		}
 	}
 
 	/**
@@ -98,11 +130,11 @@ public abstract class ObjectManager {
 		assertIsNonNullArgument(result, "result");
 		assertIsNonNullArgument(type, "type");
 
-		log.config(LogBuilder.createSystemMessage().
-				addParameter("Datastore: load all entities of type", type.getName()).toString());
+		log.config("Datastore: load all entities of type", type.getName());
+		long startNanos = System.nanoTime();
 		List<E> objects = OfyService.ofy().load().type(type).ancestor(applicationRootKey).list();
-		log.config(LogBuilder.createSystemMessage().
-				addParameter("Datastore: number of loaded objects", objects.size()).toString());
+		MetricsRegistry.getInstance().recordSince(MetricsRegistry.DATASTORE_READ, startNanos);
+		log.config("Datastore: number of loaded objects", objects.size());
 		result.addAll(objects);
 	}
 
@@ -116,25 +148,90 @@ public abstract class ObjectManager {
 		assertIsNonNullArgument(propertyName, "propertyName");
 		assertIsNonNullArgument(value, "value");
 
-		log.info(LogBuilder.createSystemMessage().
-				addMessage("Datastore: Load all Entities of type " + type.toString() + " where parameter "
-						+ propertyName + " = " + value.toString() + " from datastore.").toString());
+		log.info("Datastore: load all entities", "type", type, propertyName, value);
+		long startNanos = System.nanoTime();
 		List<E> objects = OfyService.ofy().load().type(type).
 				ancestor(applicationRootKey).filter(propertyName, value).list();
-		log.config(LogBuilder.createSystemMessage().
-				addParameter("Datastore: number of loaded objects", objects.size()).toString());
+		MetricsRegistry.getInstance().recordSince(MetricsRegistry.DATASTORE_READ, startNanos);
+		log.config("Datastore: number of loaded objects", objects.size());
 		result.addAll(objects);
 	}
 
 	/**
-	 * Updates all entities of the given collection in the datastore.
+	 * Queues all dirty entities of the given collection for writing; nothing is written here. Objects that are
+	 * already queued are not queued twice. Call flush() to write them.
 	 */
 	protected void updateObjects(Collection<? extends Persistent> collection) {
 		for (Persistent object : collection) {
-			updateObject(object);
+			if (object.isDirty()) {
+				pendingWrites.add(object);
+			}
+		}
+	}
+
+	/**
+	 * Writes all queued entities in batches of getWriteBatchSize(). The saves of all batches are started before the
+	 * first one is waited for; updateDependents() runs for the objects of a batch once that batch is complete.
+	 * Returns when all queued entities have been written. If a batch fails, its objects and those of all later
+	 * batches are queued again before the exception is passed on.
+	 */
+	public void flush() {
+		synchronized (flushLock) {
+			List<Persistent> objects = new ArrayList<Persistent>();
+			for (Iterator<Persistent> i = pendingWrites.iterator(); i.hasNext(); ) {
+				objects.add(i.next());
+				i.remove();
+			}
+			if (objects.isEmpty()) {
+				return;
+			}
+
+			int batchSize = getWriteBatchSize();
+			log.info("Datastore: write objects", "objects", objects.size(), "batch size", batchSize);
+
+			long startNanos = System.nanoTime();
+			List<List<Persistent>> batches = new ArrayList<List<Persistent>>();
+			for (int from = 0; from < objects.size(); from += batchSize) {
+				batches.add(objects.subList(from, Math.min(from + batchSize, objects.size())));
+			}
+
+			int completedBatches = 0;
+			try {
+				List<Result<?>> results = new ArrayList<Result<?>>();
+				for (List<Persistent> batch : batches) {
+					results.add(saveObjects(batch));
+				}
+
+				for (; completedBatches < batches.size(); completedBatches++) {
+					results.get(completedBatches).now();
+					for (Persistent object : batches.get(completedBatches)) {
+						updateDependents(object);
+						object.resetWriteCount();
+					}
+				}
+			} finally {
+				for (int i = completedBatches; i < batches.size(); i++) {
+					pendingWrites.addAll(batches.get(i));
+				}
+				MetricsRegistry.getInstance().recordSince(DATASTORE_WRITE_BATCH, startNanos);
+			}
 		}
 	}
 
+	/**
+	 * Starts saving the given entities in a single batch; the save is complete when the result is waited for.
+	 */
+	protected Result<?> saveObjects(List<Persistent> batch) {
+		return OfyService.ofy().save().entities(batch);
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	protected int getWriteBatchSize() {
+		return SysConfig.getWriteBatchSize();
+	}
+
 	/**
 	 * Updates the given entity in the datastore.
 	 */
@@ -149,14 +246,40 @@ public abstract class ObjectManager {
 		assertIsNonNullArgument(object, "object");
 
 		if (object.isDirty()) {
-			log.info(LogBuilder.createSystemMessage().
-					addParameter("Datastore: Write object of type", object).toString());
+			log.info("Datastore: Write object of type", object);
+			long startNanos = System.nanoTime();
 			OfyService.ofy().save().entity(object).now();
+			MetricsRegistry.getInstance().recordSince(MetricsRegistry.DATASTORE_WRITE, startNanos);
 			updateDependents(object);
 			object.resetWriteCount();
 		} else {
-			log.info(LogBuilder.createSystemMessage().
-					addParameter("Datastore: No need to update object", object).toString());
+			log.info("Datastore: No need to update object", object);
+		}
+	}
+
+	/**
+	 * Writes all dirty entities of the given collection to the datastore in a single batch.
+	 */
+	protected void writeObjects(Collection<? extends Persistent> objects) {
+		assertIsNonNullArgument(objects, "objects");
+
+		List<Persistent> dirtyObjects = new ArrayList<Persistent>();
+		for (Persistent object : objects) {
+			if (object.isDirty()) {
+				dirtyObjects.add(object);
+			}
+		}
+		if (dirtyObjects.isEmpty()) {
+			return;
+		}
+
+		log.info("Datastore: Write objects", dirtyObjects.size());
+		long startNanos = System.nanoTime();
+		OfyService.ofy().save().entities(dirtyObjects).now();
+		MetricsRegistry.getInstance().recordSince(DATASTORE_WRITE_BATCH, startNanos);
+		for (Persistent object : dirtyObjects) {
+			updateDependents(object);
+			object.resetWriteCount();
 		}
 	}
 
@@ -173,8 +296,25 @@ public abstract class ObjectManager {
 	protected <E> void deleteObject(E object) {
 		assertIsNonNullArgument(object, "object");
 
-		log.config(LogBuilder.createSystemMessage().addParameter("Datastore: delete entity", object).toString());
+		log.config("Datastore: delete entity", object);
+		long startNanos = System.nanoTime();
 		OfyService.ofy().delete().entity(object).now();
+		MetricsRegistry.getInstance().recordSince(MetricsRegistry.DATASTORE_DELETE, startNanos);
+	}
+
+	/**
+	 * Deletes all given entities from the datastore in a single batch.
+	 */
+	protected <E> void deleteObjects(Collection<E> objects) {
+		assertIsNonNullArgument(objects, "objects");
+		if (objects.isEmpty()) {
+			return;
+		}
+
+		log.config("Datastore: delete entities", objects.size());
+		long startNanos = System.nanoTime();
+		OfyService.ofy().delete().entities(objects).now();
+		MetricsRegistry.getInstance().recordSince(MetricsRegistry.DATASTORE_DELETE, startNanos);
 	}
 
 	/**
@@ -186,12 +326,12 @@ public abstract class ObjectManager {
 		assertIsNonNullArgument(propertyName, "propertyName");
 		assertIsNonNullArgument(value, "value");
 
-		log.info(LogBuilder.createSystemMessage().
-				addMessage("Datastore: delete entities of type " + type
-						+ " where property " + propertyName + " == " + value).toString());
+		log.info("Datastore: delete entities", "type", type, propertyName, value);
+		long startNanos = System.nanoTime();
 		List<com.googlecode.objectify.Key<E>> keys = OfyService.ofy().load().type(type).
 				ancestor(applicationRootKey).filter(propertyName, value).keys().list();
 		OfyService.ofy().delete().keys(keys);
+		MetricsRegistry.getInstance().recordSince(MetricsRegistry.DATASTORE_DELETE, startNanos);
 	}
 
 	/**
@@ -42,6 +42,12 @@ public class Session {
 	 */
 	protected long processingTime = 0;
 
+	/**
+	 * Session and client part of log messages, cached together with the client name it was built for
+	 */
+	protected String logContext = null;
+	protected String logContextClientName = null;
+
 	/**
 	 *
 	 */
@@ -54,6 +60,7 @@ public class Session {
 	 */
 	protected void initialize(String myName) {
 		name = myName;
+		logContext = null;
 		notifyNameChanged();
 	}
 
@@ -80,6 +87,24 @@ public class Session {
 		return "system";
 	}
 
+	/**
+	 * Returns null if no context has been cached for this client name yet; nicknames are compared by identity, as a
+	 * renamed client gets a new String.
+	 *
+	 * @methodtype get
+	 */
+	public String getLogContext(String clientName) {
+		return (clientName == logContextClientName) ? logContext : null;
+	}
+
+	/**
+	 * @methodtype set
+	 */
+	public void setLogContext(String clientName, String newLogContext) {
+		logContextClientName = clientName;
+		logContext = newLogContext;
+	}
+
 	/**
 	 * @methodtype init
 	 */
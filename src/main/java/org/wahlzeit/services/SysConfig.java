@@ -21,6 +21,7 @@
 package org.wahlzeit.services;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.logging.Logger;
 
 /**
@@ -29,6 +30,37 @@ import java.util.logging.Logger;
 public class SysConfig extends AbstractConfig {
 
 	public static String DATA_PATH = "org-wahlzeit-dirkriehle";
+
+	/**
+	 * Configuration keys
+	 */
+	public static final String IMAGE_CACHE_MAX_BYTES = "imageCacheMaxBytes";
+	public static final String LOAD_IMAGES_ON_STARTUP = "loadImagesOnStartUp";
+	public static final String WARM_UP_THUMBNAILS = "warmUpThumbnails";
+	public static final String WRITE_BATCH_SIZE = "writeBatchSize";
+	public static final String ID_BLOCK_SIZE = "idBlockSize";
+	public static final String LOG_FORMAT = "logFormat";
+	public static final String RELOAD_TEMPLATES = "reloadTemplates";
+
+	/**
+	 * Optional file in the config directory that overrides the tunable values of a deployment
+	 */
+	public static final String PROPERTIES_FILE_NAME = "SysConfig.properties";
+
+	/**
+	 *
+	 */
+	public static final long DEFAULT_IMAGE_CACHE_MAX_BYTES = 64L * 1024 * 1024;
+
+	/**
+	 * The datastore accepts at most 500 entities per batch put
+	 */
+	public static final int DEFAULT_WRITE_BATCH_SIZE = 100;
+
+	/**
+	 * Number of ids an instance reserves at once; unused ids of a block are lost when the instance shuts down
+	 */
+	public static final int DEFAULT_ID_BLOCK_SIZE = 100;
 	
 	/**
 	 *
@@ -44,6 +76,7 @@ public class SysConfig extends AbstractConfig {
 	/**
 	 *
 	 */
+	protected Directory configDir;
 	protected ConfigDir scriptsDir;
 	protected ConfigDir staticDir;
 	protected ConfigDir templatesDir;
@@ -70,6 +103,7 @@ public class SysConfig extends AbstractConfig {
 		rootDir = myRootDir;
 
 		// Config directories
+		configDir = new Directory(rootDir, "config");
 		scriptsDir = new ConfigDir(rootDir, "config" + File.separator + "scripts");
 		staticDir = new ConfigDir(rootDir, "config" + File.separator + "static");
 		templatesDir = new ConfigDir(rootDir, "config" + File.separator + "templates");
@@ -78,6 +112,34 @@ public class SysConfig extends AbstractConfig {
 		photosDir = new Directory(rootDir, DATA_PATH + File.separator + "photos");
 		backupDir = new Directory(rootDir, DATA_PATH + File.separator + "backup");
 		tempDir = new Directory(rootDir, DATA_PATH + File.separator + "temp");
+
+		// Tunable values, may be overridden by setValue() or in config/SysConfig.properties, see loadPropertiesFile()
+		doSetValue(IMAGE_CACHE_MAX_BYTES, String.valueOf(DEFAULT_IMAGE_CACHE_MAX_BYTES));
+		doSetValue(LOAD_IMAGES_ON_STARTUP, String.valueOf(false));
+		doSetValue(WARM_UP_THUMBNAILS, String.valueOf(true));
+		doSetValue(WRITE_BATCH_SIZE, String.valueOf(DEFAULT_WRITE_BATCH_SIZE));
+		doSetValue(ID_BLOCK_SIZE, String.valueOf(DEFAULT_ID_BLOCK_SIZE));
+		doSetValue(LOG_FORMAT, LogBuilder.Format.TEXT.name());
+		doSetValue(RELOAD_TEMPLATES, String.valueOf(false));
+	}
+
+	/**
+	 * Loads config/SysConfig.properties if it exists; values not set there keep their defaults.
+	 *
+	 * @methodtype command
+	 */
+	public void loadPropertiesFile() {
+		File file = new File(configDir.asString() + File.separator + PROPERTIES_FILE_NAME);
+		if (!file.exists()) {
+			return;
+		}
+
+		try {
+			loadProperties(file);
+			log.config(LogBuilder.createSystemMessage().addParameter("loaded SysConfig", file.getPath()).toString());
+		} catch (IOException ioex) {
+			log.warning(LogBuilder.createSystemMessage().addException("loading SysConfig failed", ioex).toString());
+		}
 	}
 
 	/**
@@ -169,4 +231,57 @@ public class SysConfig extends AbstractConfig {
 		return getInstance().tempDir;
 	}
 
+	/**
+	 *
+	 */
+	public static long getImageCacheMaxBytes() {
+		return Long.parseLong(getInstance().getValue(IMAGE_CACHE_MAX_BYTES));
+	}
+
+	/**
+	 * If false, only photo metadata is loaded at startup and images are loaded on first access
+	 */
+	public static boolean isLoadImagesOnStartUp() {
+		return Boolean.parseBoolean(getInstance().getValue(LOAD_IMAGES_ON_STARTUP));
+	}
+
+	/**
+	 *
+	 */
+	public static boolean isWarmUpThumbnails() {
+		return Boolean.parseBoolean(getInstance().getValue(WARM_UP_THUMBNAILS));
+	}
+
+	/**
+	 *
+	 */
+	public static int getWriteBatchSize() {
+		return Math.max(1, Integer.parseInt(getInstance().getValue(WRITE_BATCH_SIZE)));
+	}
+
+	/**
+	 *
+	 */
+	public static int getIdBlockSize() {
+		return Math.max(1, Integer.parseInt(getInstance().getValue(ID_BLOCK_SIZE)));
+	}
+
+	/**
+	 * If true, templates are read again when their files change, e.g. while editing them in development
+	 */
+	public static boolean isReloadTemplates() {
+		return Boolean.parseBoolean(getInstance().getValue(RELOAD_TEMPLATES));
+	}
+
+	/**
+	 * TEXT or JSON; unknown values fall back to TEXT
+	 */
+	public static LogBuilder.Format getLogFormat() {
+		try {
+			return LogBuilder.Format.valueOf(getInstance().getValue(LOG_FORMAT).trim().toUpperCase());
+		} catch (IllegalArgumentException e) {
+			return LogBuilder.Format.TEXT;
+		}
+	}
+
 }
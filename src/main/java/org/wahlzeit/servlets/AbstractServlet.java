@@ -34,6 +34,7 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.net.InetAddress;
 import java.util.Iterator;
@@ -47,6 +48,7 @@ public abstract class AbstractServlet extends HttpServlet {
 
 	private static final Logger log = Logger.getLogger(AbstractServlet.class.getName());
 	private static final long serialVersionUID = 42L; // any does; class never serialized
+
 	/**
 	 *
 	 */
@@ -83,13 +85,16 @@ public abstract class AbstractServlet extends HttpServlet {
 		UserSession us = ensureUserSession(request);
 		SessionManager.setThreadLocalSession(us);
 
-		if (ServiceMain.getInstance().isShuttingDown() || (us == null)) {
-			displayNullPage(request, response);
-		} else {
-			myGet(request, response);
+		try {
+			if (ServiceMain.getInstance().isShuttingDown() || (us == null)) {
+				displayNullPage(request, response);
+			} else {
+				myGet(request, response);
+			}
+		} finally {
+			writeBackUserSession(us);
+			SessionManager.dropThreadLocalSession();
 		}
-
-		SessionManager.dropThreadLocalSession();
 	}
 
 	/**
@@ -102,13 +107,16 @@ public abstract class AbstractServlet extends HttpServlet {
 		UserSession us = ensureUserSession(request);
 		SessionManager.setThreadLocalSession(us);
 
-		if (ServiceMain.getInstance().isShuttingDown() || (us == null)) {
-			displayNullPage(request, response);
-		} else {
-			myPost(request, response);
+		try {
+			if (ServiceMain.getInstance().isShuttingDown() || (us == null)) {
+				displayNullPage(request, response);
+			} else {
+				myPost(request, response);
+			}
+		} finally {
+			writeBackUserSession(us);
+			SessionManager.dropThreadLocalSession();
 		}
-
-		SessionManager.dropThreadLocalSession();
 	}
 
 	/**
@@ -120,19 +128,28 @@ public abstract class AbstractServlet extends HttpServlet {
 	}
 
 	/**
-	 *
+	 * Site url and locale are only needed to initialize a new HttpSession.
 	 */
 	protected UserSession ensureUserSession(HttpServletRequest request) {
 		HttpSession httpSession = request.getSession();
-
-		String sessionName = httpSession.getId();
-		String siteUrl = getSiteUrl(request); // @TODO Application
-
-		UserSession result = new UserSession(sessionName, siteUrl, httpSession, request.getLocale().getLanguage());
+		UserSession result = new UserSession(httpSession.getId(), httpSession);
+		if (!result.isInitialized()) {
+			String siteUrl = getSiteUrl(request); // @TODO Application
+			result.initializeHttpSession(siteUrl, request.getLocale().getLanguage());
+		}
 
 		return result;
 	}
 
+	/**
+	 * Changes to the UserSession are written to the HttpSession only once per request.
+	 */
+	protected void writeBackUserSession(UserSession us) {
+		if (us != null) {
+			us.writeBack();
+		}
+	}
+
 	/**
 	 *
 	 */
@@ -175,21 +192,34 @@ public abstract class AbstractServlet extends HttpServlet {
 	}
 
 	/**
-	 *
+	 * Renders the page into a buffer first, so that it can be gzipped and sent in one write with a Content-Length.
 	 */
-	protected void configureResponse(Session ctx, HttpServletResponse response, WebPart result) throws IOException {
+	protected void configureResponse(Session ctx, HttpServletRequest request, HttpServletResponse response,
+			WebPart result) throws IOException {
 		long processingTime = ctx.getProcessingTime();
 		result.addString("processingTime", StringUtil.asStringInSeconds((processingTime == 0) ? 1 : processingTime));
 		log.config(LogBuilder.createSystemMessage().
 				addParameter("proctime", String.valueOf(processingTime)).toString());
 
 		response.setContentType("text/html");
+		response.addHeader("Vary", "Accept-Encoding");
 
-		PrintWriter out = response.getWriter();
-		result.writeOn(out);
-		out.close();
+		ResponseBuffer buffer = ResponseBuffer.acquire();
+		try {
+			result.writeOn(buffer.getWriter());
+			if (ResponseBuffer.isGzipAccepted(request.getHeader("Accept-Encoding")) && buffer.compress()) {
+				response.setHeader("Content-Encoding", "gzip");
+			}
 
-		response.setStatus(HttpServletResponse.SC_OK);
+			response.setStatus(HttpServletResponse.SC_OK);
+			response.setContentLength(buffer.getContentLength());
+
+			OutputStream out = response.getOutputStream();
+			buffer.writeTo(out);
+			out.close();
+		} finally {
+			buffer.release();
+		}
 	}
 
 	/**
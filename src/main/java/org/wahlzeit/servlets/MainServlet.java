@@ -34,6 +34,7 @@ import org.wahlzeit.handlers.WebPartHandlerManager;
 import org.wahlzeit.model.User;
 import org.wahlzeit.model.UserSession;
 import org.wahlzeit.services.LogBuilder;
+import org.wahlzeit.services.MetricsRegistry;
 import org.wahlzeit.services.SessionManager;
 import org.wahlzeit.webparts.WebPart;
 
@@ -65,6 +66,7 @@ public class MainServlet extends AbstractServlet {
 	 */
 	public void myPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
 		long startTime = System.currentTimeMillis();
+		long startNanos = System.nanoTime();
 
 		UserSession us = (UserSession) SessionManager.getThreadLocalSession();
 		String link = request.getRequestURI();
@@ -89,6 +91,9 @@ public class MainServlet extends AbstractServlet {
 
 		redirectRequest(response, link);
 		us.addProcessingTime(System.currentTimeMillis() - startTime);
+		if (formHandler != null) {
+			MetricsRegistry.getInstance().recordSince(MetricsRegistry.getHandlerMetricName(formHandler), startNanos);
+		}
 		SessionManager.dropThreadLocalSession();
 	}
 
@@ -97,6 +102,7 @@ public class MainServlet extends AbstractServlet {
 	 */
 	public void myGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
 		long startTime = System.currentTimeMillis();
+		long startNanos = System.nanoTime();
 
 		UserSession us = (UserSession) SessionManager.getThreadLocalSession();
 		String link = request.getRequestURI();
@@ -122,13 +128,16 @@ public class MainServlet extends AbstractServlet {
 		if (newLink.equals(link)) { // no redirect necessary
 			WebPart result = handler.makeWebPart(us);
 			us.addProcessingTime(System.currentTimeMillis() - startTime);
-			configureResponse(us, response, result);
+			configureResponse(us, request, response, result);
 			us.clearSavedArgs(); // saved args go from post to next get
 			us.resetProcessingTime();
 		} else {
 			redirectRequest(response, newLink);
 			us.addProcessingTime(System.currentTimeMillis() - startTime);
 		}
+		if (handler != null) {
+			MetricsRegistry.getInstance().recordSince(MetricsRegistry.getHandlerMetricName(handler), startNanos);
+		}
 		SessionManager.dropThreadLocalSession();
 	}
 
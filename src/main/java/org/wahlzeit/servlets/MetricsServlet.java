@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.servlets;
+
+import org.wahlzeit.model.PhotoImageCache;
+import org.wahlzeit.model.PhotoManager;
+import org.wahlzeit.model.persistence.ImageStorage;
+import org.wahlzeit.services.LatencyHistogram;
+import org.wahlzeit.services.LogBuilder;
+import org.wahlzeit.services.MetricsRegistry;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.logging.Logger;
+
+/**
+ * The admin-only servlet that returns a snapshot of the MetricsRegistry, as plain text or, with format=json, as JSON.
+ * With reset=true, all metrics are reset after the snapshot has been taken.
+ */
+public class MetricsServlet extends HttpServlet {
+
+	private static final Logger log = Logger.getLogger(MetricsServlet.class.getName());
+
+	/**
+	 *
+	 */
+	private static final long serialVersionUID = 42L; // any one does; class never serialized
+
+	/**
+	 * @methodtype command
+	 */
+	@Override
+	protected void doGet(HttpServletRequest request, HttpServletResponse response)
+			throws ServletException, IOException {
+
+		MetricsRegistry registry = MetricsRegistry.getInstance();
+		SortedMap<String, Long> counters = registry.getCounterValues();
+		addCacheCounters(counters);
+		SortedMap<String, LatencyHistogram> histograms = registry.getHistograms();
+
+		String result;
+		if ("json".equals(request.getParameter("format"))) {
+			response.setContentType("application/json; charset=UTF-8");
+			result = asJson(counters, histograms);
+		} else {
+			response.setContentType("text/plain; charset=UTF-8");
+			result = asText(counters, histograms);
+		}
+
+		if ("true".equals(request.getParameter("reset"))) {
+			log.info(LogBuilder.createSystemMessage().addAction("reset metrics").toString());
+			registry.reset();
+		}
+
+		response.setHeader("Cache-Control", "no-cache");
+		response.getWriter().write(result);
+	}
+
+	/**
+	 * The image caches keep their own counters, which are added to the snapshot here.
+	 *
+	 * @methodtype command
+	 */
+	protected void addCacheCounters(SortedMap<String, Long> counters) {
+		PhotoImageCache imageCache = PhotoManager.getInstance().getImageCache();
+		counters.put("imageCache.hits", imageCache.getHits());
+		counters.put("imageCache.misses", imageCache.getMisses());
+		counters.put("imageCache.evictions", imageCache.getEvictions());
+		counters.put("imageCache.bytes", imageCache.getWeight());
+
+		try {
+			ImageStorage imageStorage = ImageStorage.getInstance();
+			counters.put("imageStorage.existenceCache.hits", imageStorage.getExistenceCacheHits());
+			counters.put("imageStorage.existenceCache.misses", imageStorage.getExistenceCacheMisses());
+		} catch (NullPointerException e) {
+			// no image storage configured yet
+		}
+	}
+
+	/**
+	 * @methodtype conversion
+	 */
+	protected static String asText(SortedMap<String, Long> counters, SortedMap<String, LatencyHistogram> histograms) {
+		StringBuilder result = new StringBuilder();
+		for (Map.Entry<String, Long> entry : counters.entrySet()) {
+			result.append("counter ").append(entry.getKey()).append(' ').append(entry.getValue()).append('\n');
+		}
+		for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+			LatencyHistogram histogram = entry.getValue();
+			result.append("latency ").append(entry.getKey()).
+					append(" count=").append(histogram.getCount()).
+					append(" meanMicros=").append(histogram.getMeanMicros()).
+					append(" p50Micros=").append(histogram.getPercentileMicros(50)).
+					append(" p90Micros=").append(histogram.getPercentileMicros(90)).
+					append(" p99Micros=").append(histogram.getPercentileMicros(99)).
+					append(" maxMicros=").append(histogram.getMaxMicros()).append('\n');
+		}
+		return result.toString();
+	}
+
+	/**
+	 * Metric names are set in code and contain no characters that need escaping in JSON.
+	 *
+	 * @methodtype conversion
+	 */
+	protected static String asJson(SortedMap<String, Long> counters, SortedMap<String, LatencyHistogram> histograms) {
+		StringBuilder result = new StringBuilder("{\"counters\":{");
+		String separator = "";
+		for (Map.Entry<String, Long> entry : counters.entrySet()) {
+			result.append(separator).append('"').append(entry.getKey()).append("\":").append(entry.getValue());
+			separator = ",";
+		}
+
+		result.append("},\"latencies\":{");
+		separator = "";
+		for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+			LatencyHistogram histogram = entry.getValue();
+			result.append(separator).append('"').append(entry.getKey()).append("\":{").
+					append("\"count\":").append(histogram.getCount()).
+					append(",\"meanMicros\":").append(histogram.getMeanMicros()).
+					append(",\"p50Micros\":").append(histogram.getPercentileMicros(50)).
+					append(",\"p90Micros\":").append(histogram.getPercentileMicros(90)).
+					append(",\"p99Micros\":").append(histogram.getPercentileMicros(99)).
+					append(",\"maxMicros\":").append(histogram.getMaxMicros()).append('}');
+			separator = ",";
+		}
+		return result.append("}}").toString();
+	}
+
+}
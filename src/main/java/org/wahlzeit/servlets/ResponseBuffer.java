@@ -0,0 +1,331 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.servlets;
+
+import org.wahlzeit.webparts.EncodingWriter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * A ResponseBuffer collects a rendered page, optionally gzips it, and writes it in one piece, so that the length is
+ * known before the body is sent. Each thread reuses its buffers, Deflater, and EncodingWriter across requests.
+ */
+public class ResponseBuffer {
+
+	/**
+	 *
+	 */
+	public static final int INITIAL_CAPACITY = 32 * 1024;
+
+	/**
+	 * Buffers that grew beyond this are dropped after use, so that one huge page does not pin memory per thread
+	 */
+	public static final int MAX_RETAINED_CAPACITY = 512 * 1024;
+
+	/**
+	 * Smaller bodies are sent uncompressed; gzip's overhead would outweigh the gain
+	 */
+	public static final int MIN_COMPRESSED_LENGTH = 1024;
+
+	/**
+	 * Header of a gzip member without name, comment, or modification time (RFC 1952)
+	 */
+	protected static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+	/**
+	 *
+	 */
+	protected static final ThreadLocal<ResponseBuffer> buffers = new ThreadLocal<ResponseBuffer>() {
+		@Override
+		protected ResponseBuffer initialValue() {
+			return new ResponseBuffer();
+		}
+	};
+
+	/**
+	 * Returns the buffer of the current thread, or a new one if that is in use.
+	 *
+	 * @methodtype factory
+	 */
+	public static ResponseBuffer acquire() {
+		ResponseBuffer result = buffers.get();
+		if (result.isInUse) {
+			result = new ResponseBuffer();
+		}
+		result.isInUse = true;
+		result.reset();
+		return result;
+	}
+
+	/**
+	 * Evaluates an Accept-Encoding header; gzip is accepted if it is listed without q=0, or if it is not listed and
+	 * "*" is listed without q=0. An explicit gzip entry takes precedence over "*".
+	 *
+	 * @methodtype boolean query
+	 */
+	public static boolean isGzipAccepted(String acceptEncoding) {
+		if (acceptEncoding == null) {
+			return false;
+		}
+
+		boolean isAcceptedByWildcard = false;
+		int length = acceptEncoding.length();
+		for (int start = 0; start < length; ) {
+			int end = acceptEncoding.indexOf(',', start);
+			if (end == -1) {
+				end = length;
+			}
+
+			int parameters = acceptEncoding.indexOf(';', start);
+			int nameEnd = (parameters != -1 && parameters < end) ? parameters : end;
+			String coding = acceptEncoding.substring(start, nameEnd).trim();
+			if (coding.equalsIgnoreCase("gzip")) {
+				return !isZeroQuality(acceptEncoding.substring(nameEnd, end));
+			} else if (coding.equals("*")) {
+				isAcceptedByWildcard = !isZeroQuality(acceptEncoding.substring(nameEnd, end));
+			}
+
+			start = end + 1;
+		}
+		return isAcceptedByWildcard;
+	}
+
+	/**
+	 * @methodtype boolean query
+	 * @methodproperty primitive
+	 */
+	protected static boolean isZeroQuality(String parameters) {
+		int q = parameters.indexOf("q=");
+		if (q == -1) {
+			return false;
+		}
+		try {
+			return Double.parseDouble(parameters.substring(q + 2).trim()) == 0;
+		} catch (NumberFormatException ex) {
+			return false;
+		}
+	}
+
+	/**
+	 *
+	 */
+	protected Bytes body = new Bytes(INITIAL_CAPACITY);
+	protected Bytes compressed = new Bytes(INITIAL_CAPACITY / 4);
+
+	/**
+	 * The body as written
+	 */
+	protected EncodingWriter writer = new EncodingWriter(body);
+
+	/**
+	 * Raw deflate; gzip header and trailer are written by compress()
+	 */
+	protected final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+	protected final CRC32 crc = new CRC32();
+
+	/**
+	 *
+	 */
+	protected boolean isInUse = false;
+	protected boolean isCompressed = false;
+
+	/**
+	 *
+	 */
+	protected ResponseBuffer() {
+		// do nothing
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public Writer getWriter() {
+		return writer;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public int getLength() throws IOException {
+		writer.flush();
+		return body.count;
+	}
+
+	/**
+	 * Length of what writeTo() writes, i.e. of the compressed body if it was compressed
+	 *
+	 * @methodtype get
+	 */
+	public int getContentLength() throws IOException {
+		return isCompressed ? compressed.count : getLength();
+	}
+
+	/**
+	 * @methodtype boolean query
+	 */
+	public boolean isCompressed() {
+		return isCompressed;
+	}
+
+	/**
+	 * Gzips the body unless it is shorter than MIN_COMPRESSED_LENGTH; returns true if it did.
+	 *
+	 * @methodtype command
+	 */
+	public boolean compress() throws IOException {
+		if (getLength() < MIN_COMPRESSED_LENGTH) {
+			return false;
+		}
+
+		compressed.reset();
+		compressed.write(GZIP_HEADER);
+
+		deflater.reset();
+		deflater.setInput(body.buffer, 0, body.count);
+		deflater.finish();
+		while (!deflater.finished()) {
+			compressed.ensureCapacity(compressed.count + 4096);
+			compressed.count += deflater.deflate(compressed.buffer, compressed.count,
+					compressed.buffer.length - compressed.count);
+		}
+
+		crc.reset();
+		crc.update(body.buffer, 0, body.count);
+		compressed.writeIntLittleEndian((int) crc.getValue());
+		compressed.writeIntLittleEndian(body.count);
+
+		isCompressed = true;
+		return true;
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	public void writeTo(OutputStream out) throws IOException {
+		writer.flush();
+		Bytes result = isCompressed ? compressed : body;
+		out.write(result.buffer, 0, result.count);
+	}
+
+	/**
+	 * Makes the buffer available for the next request of its thread.
+	 *
+	 * @methodtype command
+	 */
+	public void release() {
+		reset();
+		if (body.buffer.length > MAX_RETAINED_CAPACITY) {
+			body = new Bytes(INITIAL_CAPACITY);
+			writer = new EncodingWriter(body);
+		}
+		if (compressed.buffer.length > MAX_RETAINED_CAPACITY) {
+			compressed = new Bytes(INITIAL_CAPACITY / 4);
+		}
+		isInUse = false;
+	}
+
+	/**
+	 * @methodtype command
+	 * @methodproperty primitive
+	 */
+	protected void reset() {
+		try {
+			writer.flush();
+		} catch (IOException ex) {
+			// writing to Bytes does not fail
+		}
+		body.reset();
+		compressed.reset();
+		isCompressed = false;
+	}
+
+	/**
+	 * An unsynchronized byte array stream whose array can be read without copying it.
+	 */
+	protected static class Bytes extends OutputStream {
+
+		/**
+		 *
+		 */
+		protected byte[] buffer;
+		protected int count = 0;
+
+		/**
+		 *
+		 */
+		protected Bytes(int capacity) {
+			buffer = new byte[capacity];
+		}
+
+		/**
+		 * @methodtype command
+		 */
+		protected void ensureCapacity(int capacity) {
+			if (capacity > buffer.length) {
+				buffer = Arrays.copyOf(buffer, Math.max(capacity, buffer.length * 2));
+			}
+		}
+
+		/**
+		 *
+		 */
+		@Override
+		public void write(int b) {
+			ensureCapacity(count + 1);
+			buffer[count++] = (byte) b;
+		}
+
+		/**
+		 *
+		 */
+		@Override
+		public void write(byte[] bytes, int offset, int length) {
+			ensureCapacity(count + length);
+			System.arraycopy(bytes, offset, buffer, count, length);
+			count += length;
+		}
+
+		/**
+		 * @methodtype command
+		 */
+		protected void writeIntLittleEndian(int value) {
+			ensureCapacity(count + 4);
+			buffer[count++] = (byte) value;
+			buffer[count++] = (byte) (value >> 8);
+			buffer[count++] = (byte) (value >> 16);
+			buffer[count++] = (byte) (value >> 24);
+		}
+
+		/**
+		 * @methodtype command
+		 */
+		protected void reset() {
+			count = 0;
+		}
+
+	}
+
+}
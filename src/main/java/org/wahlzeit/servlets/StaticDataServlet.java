@@ -11,7 +11,9 @@ import org.wahlzeit.services.LogBuilder;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Serializable;
+import java.net.URLConnection;
 import java.util.logging.Logger;
 
 /**
@@ -26,6 +28,22 @@ public class StaticDataServlet extends AbstractServlet {
 
 	Logger log = Logger.getLogger(StaticDataServlet.class.getName());
 
+	/**
+	 * Images of a photo id and size never change, but a visible photo may still be flagged and hidden; shared caches
+	 * therefore keep it for an hour only, after which the ETag makes revalidation cheap
+	 */
+	protected static final String VISIBLE_IMAGE_CACHE_CONTROL = "public, max-age=3600";
+
+	/**
+	 * Photos that are not visible are only shown to their owners and moderators; they must not go into shared caches
+	 */
+	protected static final String HIDDEN_IMAGE_CACHE_CONTROL = "private, no-cache";
+
+	/**
+	 *
+	 */
+	protected static final String DEFAULT_CONTENT_TYPE = "image/jpeg";
+
 	@Override
 	public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
 		try {
@@ -40,44 +58,176 @@ public class StaticDataServlet extends AbstractServlet {
 					addParameter("size", size).toString());
 
 			if ("image".equals(type)) {
-				Image image = getImage(photoId, size);
-				if (image != null) {
-					response.getOutputStream().write(image.getImageData());
-					response.getOutputStream().flush();
-					response.setStatus(HttpStatus.SC_OK);
-				} else {
-					log.warning(LogBuilder.createSystemMessage().addMessage("image not found").toString());
-					response.setStatus(HttpStatus.SC_NOT_FOUND);
-				}
+				serveImage(request, response, photoId, PhotoSize.getFromInt(size));
 			} else {
 				log.warning(LogBuilder.createSystemMessage().
 						addMessage("unimplemented static resource type has been requested").toString());
 				response.setStatus(HttpStatus.SC_NOT_IMPLEMENTED);
 			}
 
+		} catch (IllegalArgumentException e) {
+			log.warning(LogBuilder.createSystemMessage().addException("Invalid static resource request", e).toString());
+			response.setStatus(HttpStatus.SC_BAD_REQUEST);
 		} catch (Exception e) {
 			log.severe(LogBuilder.createSystemMessage().addException("Problem when loading image", e).toString());
 		}
 	}
 
+	/**
+	 * @methodtype command
+	 *
+	 * Answers conditional requests for known photos without loading the image, and otherwise writes the whole image or
+	 * the requested byte range in a single write.
+	 */
+	protected void serveImage(HttpServletRequest request, HttpServletResponse response, String photoId,
+							  PhotoSize photoSize) throws IOException {
+		Photo photo = PhotoManager.getInstance().getPhoto(photoId);
+		boolean isVisible = (photo != null) && photo.isVisible();
+
+		String eTag = getETag(photoId, photoSize);
+		response.setHeader("ETag", eTag);
+		response.setHeader("Cache-Control", isVisible ? VISIBLE_IMAGE_CACHE_CONTROL : HIDDEN_IMAGE_CACHE_CONTROL);
+
+		if (photo != null && isETagMatching(request.getHeader("If-None-Match"), eTag)) {
+			response.setStatus(HttpStatus.SC_NOT_MODIFIED);
+			return;
+		}
+
+		Image image = getImage(photo, photoId, photoSize);
+		if (image == null) {
+			log.warning(LogBuilder.createSystemMessage().addMessage("image not found").toString());
+			response.setHeader("Cache-Control", "no-cache");
+			response.setStatus(HttpStatus.SC_NOT_FOUND);
+			return;
+		}
+
+		byte[] imageData = image.getImageData();
+		int offset = 0;
+		int length = imageData.length;
+		response.setContentType(getContentType((photo != null) ? photo.getEnding() : null));
+		response.setHeader("Accept-Ranges", "bytes");
+
+		String range = request.getHeader("Range");
+		String ifRange = request.getHeader("If-Range");
+		if (range != null && (ifRange == null || ifRange.equals(eTag))) {
+			long[] byteRange = parseByteRange(range, imageData.length);
+			if (byteRange == null) {
+				response.setHeader("Content-Range", "bytes */" + imageData.length);
+				response.setStatus(HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+				return;
+			}
+			if (byteRange.length == 2) {
+				offset = (int) byteRange[0];
+				length = (int) (byteRange[1] - byteRange[0] + 1);
+				response.setHeader("Content-Range", "bytes " + byteRange[0] + "-" + byteRange[1] + "/" + imageData.length);
+				response.setStatus(HttpStatus.SC_PARTIAL_CONTENT);
+			}
+		}
+
+		response.setContentLength(length);
+		OutputStream out = response.getOutputStream();
+		out.write(imageData, offset, length);
+		out.flush();
+	}
+
+	/**
+	 * @methodtype conversion
+	 */
+	protected static String getETag(String photoId, PhotoSize photoSize) {
+		return "\"" + photoId + "-" + photoSize.asInt() + "\"";
+	}
+
+	/**
+	 * @methodtype boolean-query
+	 */
+	protected static boolean isETagMatching(String ifNoneMatch, String eTag) {
+		if (ifNoneMatch == null) {
+			return false;
+		}
+		for (String candidate : ifNoneMatch.split(",")) {
+			String trimmed = candidate.trim();
+			if (trimmed.equals("*") || trimmed.equals(eTag) || trimmed.equals("W/" + eTag)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Parses a single byte range "bytes=first-last", "bytes=first-" or "bytes=-suffixLength". Returns the inclusive
+	 * {first, last} positions, an empty array if the header is to be ignored (e.g. multiple ranges), or null if the
+	 * range can not be satisfied.
+	 *
+	 * @methodtype conversion
+	 */
+	protected static long[] parseByteRange(String range, int contentLength) {
+		if (!range.startsWith("bytes=") || range.indexOf(',') >= 0) {
+			return new long[0];
+		}
+
+		String spec = range.substring("bytes=".length()).trim();
+		int dash = spec.indexOf('-');
+		if (dash < 0) {
+			return new long[0];
+		}
+
+		try {
+			long first;
+			long last;
+			if (dash == 0) {
+				long suffixLength = Long.parseLong(spec.substring(1));
+				if (suffixLength <= 0) {
+					return null;
+				}
+				first = Math.max(0, contentLength - suffixLength);
+				last = contentLength - 1;
+			} else {
+				first = Long.parseLong(spec.substring(0, dash));
+				String lastString = spec.substring(dash + 1);
+				last = lastString.isEmpty() ? Long.MAX_VALUE : Long.parseLong(lastString);
+				if (first > last) {
+					return new long[0];
+				}
+				last = Math.min(last, contentLength - 1);
+			}
+
+			if (first >= contentLength) {
+				return null;
+			}
+			return new long[]{first, last};
+		} catch (NumberFormatException e) {
+			return new long[0];
+		}
+	}
+
+	/**
+	 * @methodtype conversion
+	 */
+	protected static String getContentType(String ending) {
+		String result = null;
+		if (ending != null) {
+			String lowerCaseEnding = ending.toLowerCase();
+			result = "jpg".equals(lowerCaseEnding) ? "image/jpeg" :
+					URLConnection.guessContentTypeFromName("image." + lowerCaseEnding);
+		}
+		return (result != null) ? result : DEFAULT_CONTENT_TYPE;
+	}
+
 	/**
 	 * @methodtype command
 	 *
 	 * Loads image either from the <@link>PhotoManager</@link> or from the <@link>ImageStorage</@link>. If image does
-	 * not exist, null is returned.
+	 * not exist, null is returned. The PhotoManager already falls back to the ImageStorage for known photos, so the
+	 * storage is only read here for photos the PhotoManager does not know.
 	 */
-	private Image getImage(String photoId, int size) {
+	private Image getImage(Photo photo, String photoId, PhotoSize photoSize) {
 		Image image = null;
-		Photo photo = PhotoManager.getInstance().getPhoto(photoId);
 		if (photo != null) {
-			PhotoSize photoSize = PhotoSize.getFromInt(size);
 			image = photo.getImage(photoSize);
-		}
-		// if not in cache load from Google Cloud Storage
-		if (image == null) {
+		} else {
 			Serializable rawImage = null;
 			try {
-				rawImage = ImageStorage.getInstance().readImage(photoId, size);
+				rawImage = ImageStorage.getInstance().readImage(photoId, photoSize.asInt());
 			} catch (IOException e) {
 				log.warning(LogBuilder.createSystemMessage().addException("Problem when reading image.", e).toString());
 			}
@@ -88,4 +238,3 @@ public class StaticDataServlet extends AbstractServlet {
 		return image;
 	}
 }
-
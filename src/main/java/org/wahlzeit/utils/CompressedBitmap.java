@@ -0,0 +1,657 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.utils;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * A compressed set of non-negative ints, e.g. photo ids. Values are grouped by their upper 16 bits; each group is
+ * kept either as a sorted array of the lower 16 bits (sparse groups) or as a plain 2^16 bit bitmap (dense groups).
+ * Set operations work group by group, so their cost depends on the number of groups, not on the number of values.
+ */
+public class CompressedBitmap implements Serializable {
+
+	/**
+	 * Groups with more values than this are kept as bitmap, smaller ones as sorted array
+	 */
+	protected static final int MAX_ARRAY_SIZE = 4096;
+
+	/**
+	 *
+	 */
+	protected char[] keys = new char[0];
+	protected Container[] containers = new Container[0];
+	protected int noContainers = 0;
+
+	/**
+	 *
+	 */
+	public CompressedBitmap() {
+		// do nothing
+	}
+
+	/**
+	 * @methodtype constructor
+	 */
+	public CompressedBitmap(CompressedBitmap other) {
+		keys = Arrays.copyOf(other.keys, other.noContainers);
+		containers = new Container[other.noContainers];
+		for (int i = 0; i < other.noContainers; i++) {
+			containers[i] = other.containers[i].copy();
+		}
+		noContainers = other.noContainers;
+	}
+
+	/**
+	 * @methodtype conversion
+	 */
+	public static CompressedBitmap valueOf(int... values) {
+		CompressedBitmap result = new CompressedBitmap();
+		for (int value : values) {
+			result.add(value);
+		}
+		return result;
+	}
+
+	/**
+	 * @methodtype boolean-query
+	 */
+	public boolean contains(int value) {
+		int index = getKeyIndex(highBits(value));
+		return (index >= 0) && containers[index].contains(lowBits(value));
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	public void add(int value) {
+		assertIsNonNegative(value);
+
+		char high = highBits(value);
+		int index = getKeyIndex(high);
+		if (index >= 0) {
+			containers[index] = containers[index].add(lowBits(value));
+		} else {
+			insertContainer(-index - 1, high, new ArrayContainer().add(lowBits(value)));
+		}
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	public void remove(int value) {
+		int index = getKeyIndex(highBits(value));
+		if (index >= 0) {
+			Container container = containers[index].remove(lowBits(value));
+			if (container.getCardinality() == 0) {
+				removeContainer(index);
+			} else {
+				containers[index] = container;
+			}
+		}
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public int size() {
+		int result = 0;
+		for (int i = 0; i < noContainers; i++) {
+			result += containers[i].getCardinality();
+		}
+		return result;
+	}
+
+	/**
+	 * @methodtype boolean-query
+	 */
+	public boolean isEmpty() {
+		return noContainers == 0;
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	public void clear() {
+		keys = new char[0];
+		containers = new Container[0];
+		noContainers = 0;
+	}
+
+	/**
+	 * Removes all values that are also contained in other ("AND-NOT").
+	 *
+	 * @methodtype command
+	 */
+	public void andNot(CompressedBitmap other) {
+		int newNoContainers = 0;
+		for (int i = 0; i < noContainers; i++) {
+			int otherIndex = other.getKeyIndex(keys[i]);
+			Container container = containers[i];
+			if (otherIndex >= 0) {
+				container = container.andNot(other.containers[otherIndex]);
+			}
+			if (container.getCardinality() > 0) {
+				keys[newNoContainers] = keys[i];
+				containers[newNoContainers] = container;
+				newNoContainers++;
+			}
+		}
+		truncate(newNoContainers);
+	}
+
+	/**
+	 * Keeps only the values that are also contained in other ("AND").
+	 *
+	 * @methodtype command
+	 */
+	public void and(CompressedBitmap other) {
+		int newNoContainers = 0;
+		for (int i = 0; i < noContainers; i++) {
+			int otherIndex = other.getKeyIndex(keys[i]);
+			if (otherIndex >= 0) {
+				Container container = containers[i].and(other.containers[otherIndex]);
+				if (container.getCardinality() > 0) {
+					keys[newNoContainers] = keys[i];
+					containers[newNoContainers] = container;
+					newNoContainers++;
+				}
+			}
+		}
+		truncate(newNoContainers);
+	}
+
+	/**
+	 * Adds all values of other ("OR").
+	 *
+	 * @methodtype command
+	 */
+	public void or(CompressedBitmap other) {
+		for (int i = 0; i < other.noContainers; i++) {
+			int index = getKeyIndex(other.keys[i]);
+			if (index >= 0) {
+				containers[index] = containers[index].or(other.containers[i]);
+			} else {
+				insertContainer(-index - 1, other.keys[i], other.containers[i].copy());
+			}
+		}
+	}
+
+	/**
+	 * Returns all values in ascending order.
+	 *
+	 * @methodtype conversion
+	 */
+	public int[] toArray() {
+		int[] result = new int[size()];
+		int offset = 0;
+		for (int i = 0; i < noContainers; i++) {
+			offset = containers[i].copyValuesTo(keys[i] << 16, result, offset);
+		}
+		return result;
+	}
+
+	/**
+	 *
+	 */
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof CompressedBitmap)) {
+			return false;
+		}
+		return Arrays.equals(toArray(), ((CompressedBitmap) o).toArray());
+	}
+
+	/**
+	 *
+	 */
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(toArray());
+	}
+
+	/**
+	 *
+	 */
+	@Override
+	public String toString() {
+		return Arrays.toString(toArray());
+	}
+
+	/**
+	 * @methodtype helper
+	 */
+	protected static char highBits(int value) {
+		return (char) (value >>> 16);
+	}
+
+	/**
+	 * @methodtype helper
+	 */
+	protected static char lowBits(int value) {
+		return (char) value;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	protected int getKeyIndex(char key) {
+		return Arrays.binarySearch(keys, 0, noContainers, key);
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	protected void insertContainer(int index, char key, Container container) {
+		if (noContainers == keys.length) {
+			int newLength = Math.max(4, noContainers * 2);
+			keys = Arrays.copyOf(keys, newLength);
+			containers = Arrays.copyOf(containers, newLength);
+		}
+		System.arraycopy(keys, index, keys, index + 1, noContainers - index);
+		System.arraycopy(containers, index, containers, index + 1, noContainers - index);
+		keys[index] = key;
+		containers[index] = container;
+		noContainers++;
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	protected void removeContainer(int index) {
+		System.arraycopy(keys, index + 1, keys, index, noContainers - index - 1);
+		System.arraycopy(containers, index + 1, containers, index, noContainers - index - 1);
+		noContainers--;
+		containers[noContainers] = null;
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	protected void truncate(int newNoContainers) {
+		for (int i = newNoContainers; i < noContainers; i++) {
+			containers[i] = null;
+		}
+		noContainers = newNoContainers;
+	}
+
+	/**
+	 * @methodtype assertion
+	 */
+	protected void assertIsNonNegative(int value) {
+		if (value < 0) {
+			throw new IllegalArgumentException("CompressedBitmap only holds non-negative values: " + value);
+		}
+	}
+
+	/**
+	 * Writes only the used part of the arrays to keep the serialized form small.
+	 */
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.writeInt(noContainers);
+		for (int i = 0; i < noContainers; i++) {
+			out.writeChar(keys[i]);
+			out.writeObject(containers[i]);
+		}
+	}
+
+	/**
+	 *
+	 */
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		noContainers = in.readInt();
+		keys = new char[noContainers];
+		containers = new Container[noContainers];
+		for (int i = 0; i < noContainers; i++) {
+			keys[i] = in.readChar();
+			containers[i] = (Container) in.readObject();
+		}
+	}
+
+
+	/**
+	 * Holds the lower 16 bits of all values that share the same upper 16 bits.
+	 */
+	protected static abstract class Container implements Serializable {
+
+		/**
+		 * @methodtype boolean-query
+		 */
+		protected abstract boolean contains(char value);
+
+		/**
+		 * Returns the container that holds the result, which may be a new one of a different type.
+		 *
+		 * @methodtype command
+		 */
+		protected abstract Container add(char value);
+
+		/**
+		 * @methodtype command
+		 */
+		protected abstract Container remove(char value);
+
+		/**
+		 * @methodtype get
+		 */
+		protected abstract int getCardinality();
+
+		/**
+		 * @methodtype conversion
+		 */
+		protected abstract char[] getValues();
+
+		/**
+		 * @methodtype factory
+		 */
+		protected abstract Container copy();
+
+		/**
+		 * @methodtype conversion
+		 */
+		protected int copyValuesTo(int high, int[] target, int offset) {
+			char[] values = getValues();
+			for (int i = 0; i < values.length; i++) {
+				target[offset++] = high | values[i];
+			}
+			return offset;
+		}
+
+		/**
+		 * @methodtype factory
+		 */
+		protected Container and(Container other) {
+			if (this instanceof BitmapContainer && other instanceof BitmapContainer) {
+				return ((BitmapContainer) this).combine((BitmapContainer) other, BitmapContainer.AND);
+			}
+
+			Container small = (this instanceof ArrayContainer) ? this : other;
+			Container large = (small == this) ? other : this;
+			return small.filter(large, true);
+		}
+
+		/**
+		 * @methodtype factory
+		 */
+		protected Container andNot(Container other) {
+			if (this instanceof BitmapContainer && other instanceof BitmapContainer) {
+				return ((BitmapContainer) this).combine((BitmapContainer) other, BitmapContainer.AND_NOT);
+			}
+
+			if (this instanceof ArrayContainer) {
+				return filter(other, false);
+			}
+
+			Container result = copy();
+			char[] values = other.getValues();
+			for (int i = 0; i < values.length; i++) {
+				result = result.remove(values[i]);
+			}
+			return result;
+		}
+
+		/**
+		 * @methodtype factory
+		 */
+		protected Container or(Container other) {
+			if (this instanceof BitmapContainer && other instanceof BitmapContainer) {
+				return ((BitmapContainer) this).combine((BitmapContainer) other, BitmapContainer.OR);
+			}
+
+			Container large = (this instanceof BitmapContainer) ? this : other;
+			Container small = (large == this) ? other : this;
+			Container result = large.copy();
+			char[] values = small.getValues();
+			for (int i = 0; i < values.length; i++) {
+				result = result.add(values[i]);
+			}
+			return result;
+		}
+
+		/**
+		 * Returns a container with all own values that are (or are not) contained in other.
+		 *
+		 * @methodtype factory
+		 */
+		protected Container filter(Container other, boolean keepContained) {
+			char[] values = getValues();
+			char[] result = new char[values.length];
+			int cardinality = 0;
+			for (int i = 0; i < values.length; i++) {
+				if (other.contains(values[i]) == keepContained) {
+					result[cardinality++] = values[i];
+				}
+			}
+			return new ArrayContainer(result, cardinality);
+		}
+	}
+
+
+	/**
+	 * Container for sparse groups, holds the values as sorted array.
+	 */
+	protected static class ArrayContainer extends Container {
+
+		protected char[] content;
+		protected int cardinality;
+
+		/**
+		 *
+		 */
+		protected ArrayContainer() {
+			this(new char[4], 0);
+		}
+
+		/**
+		 *
+		 */
+		protected ArrayContainer(char[] content, int cardinality) {
+			this.content = content;
+			this.cardinality = cardinality;
+		}
+
+		@Override
+		protected boolean contains(char value) {
+			return Arrays.binarySearch(content, 0, cardinality, value) >= 0;
+		}
+
+		@Override
+		protected Container add(char value) {
+			int index = Arrays.binarySearch(content, 0, cardinality, value);
+			if (index >= 0) {
+				return this;
+			}
+
+			if (cardinality >= MAX_ARRAY_SIZE) {
+				return toBitmapContainer().add(value);
+			}
+
+			index = -index - 1;
+			if (cardinality == content.length) {
+				content = Arrays.copyOf(content, Math.min(MAX_ARRAY_SIZE, Math.max(4, cardinality * 2)));
+			}
+			System.arraycopy(content, index, content, index + 1, cardinality - index);
+			content[index] = value;
+			cardinality++;
+			return this;
+		}
+
+		@Override
+		protected Container remove(char value) {
+			int index = Arrays.binarySearch(content, 0, cardinality, value);
+			if (index >= 0) {
+				System.arraycopy(content, index + 1, content, index, cardinality - index - 1);
+				cardinality--;
+			}
+			return this;
+		}
+
+		@Override
+		protected int getCardinality() {
+			return cardinality;
+		}
+
+		@Override
+		protected char[] getValues() {
+			return Arrays.copyOf(content, cardinality);
+		}
+
+		@Override
+		protected Container copy() {
+			return new ArrayContainer(Arrays.copyOf(content, Math.max(cardinality, 1)), cardinality);
+		}
+
+		/**
+		 * @methodtype conversion
+		 */
+		protected BitmapContainer toBitmapContainer() {
+			BitmapContainer result = new BitmapContainer();
+			for (int i = 0; i < cardinality; i++) {
+				result.add(content[i]);
+			}
+			return result;
+		}
+
+		/**
+		 *
+		 */
+		private void writeObject(ObjectOutputStream out) throws IOException {
+			out.writeInt(cardinality);
+			for (int i = 0; i < cardinality; i++) {
+				out.writeChar(content[i]);
+			}
+		}
+
+		/**
+		 *
+		 */
+		private void readObject(ObjectInputStream in) throws IOException {
+			cardinality = in.readInt();
+			content = new char[Math.max(cardinality, 1)];
+			for (int i = 0; i < cardinality; i++) {
+				content[i] = in.readChar();
+			}
+		}
+	}
+
+
+	/**
+	 * Container for dense groups, holds one bit per possible value.
+	 */
+	protected static class BitmapContainer extends Container {
+
+		protected static final int AND = 0;
+		protected static final int AND_NOT = 1;
+		protected static final int OR = 2;
+
+		protected long[] words = new long[1 << 10];
+		protected int cardinality = 0;
+
+		@Override
+		protected boolean contains(char value) {
+			return (words[value >>> 6] & (1L << value)) != 0;
+		}
+
+		@Override
+		protected Container add(char value) {
+			long word = words[value >>> 6];
+			long newWord = word | (1L << value);
+			if (word != newWord) {
+				words[value >>> 6] = newWord;
+				cardinality++;
+			}
+			return this;
+		}
+
+		@Override
+		protected Container remove(char value) {
+			long word = words[value >>> 6];
+			long newWord = word & ~(1L << value);
+			if (word != newWord) {
+				words[value >>> 6] = newWord;
+				cardinality--;
+			}
+			return (cardinality <= MAX_ARRAY_SIZE) ? toArrayContainer() : this;
+		}
+
+		@Override
+		protected int getCardinality() {
+			return cardinality;
+		}
+
+		@Override
+		protected char[] getValues() {
+			char[] result = new char[cardinality];
+			int index = 0;
+			for (int i = 0; i < words.length; i++) {
+				long word = words[i];
+				while (word != 0) {
+					result[index++] = (char) ((i << 6) + Long.numberOfTrailingZeros(word));
+					word &= word - 1;
+				}
+			}
+			return result;
+		}
+
+		@Override
+		protected Container copy() {
+			BitmapContainer result = new BitmapContainer();
+			result.words = words.clone();
+			result.cardinality = cardinality;
+			return result;
+		}
+
+		/**
+		 * @methodtype factory
+		 */
+		protected Container combine(BitmapContainer other, int operation) {
+			BitmapContainer result = new BitmapContainer();
+			int resultCardinality = 0;
+			for (int i = 0; i < words.length; i++) {
+				long word;
+				if (operation == AND) {
+					word = words[i] & other.words[i];
+				} else if (operation == AND_NOT) {
+					word = words[i] & ~other.words[i];
+				} else {
+					word = words[i] | other.words[i];
+				}
+				result.words[i] = word;
+				resultCardinality += Long.bitCount(word);
+			}
+			result.cardinality = resultCardinality;
+			return (resultCardinality <= MAX_ARRAY_SIZE) ? result.toArrayContainer() : result;
+		}
+
+		/**
+		 * @methodtype conversion
+		 */
+		protected ArrayContainer toArrayContainer() {
+			char[] values = getValues();
+			return new ArrayContainer((values.length > 0) ? values : new char[1], values.length);
+		}
+	}
+
+}
@@ -21,6 +21,8 @@
 package org.wahlzeit.utils;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
 
 /**
  * A set of utility functions for HTML formatting.
@@ -80,45 +82,133 @@ public class HtmlUtil {
 	 *
 	 */
 	public static String asHref(String link, String body) {
-		return "<a href=\"" + link + "\" rel=\"nofollow\">" + body + "</a>";
+		return new StringBuilder(link.length() + body.length() + 32).append("<a href=\"").append(link).
+				append("\" rel=\"nofollow\">").append(body).append("</a>").toString();
 	}
 
 	/**
 	 *
 	 */
 	public static String asImg(String link) {
-		return "<img src=\"" + link + "\" />";
+		return new StringBuilder(link.length() + 16).append("<img src=\"").append(link).append("\" />").toString();
 	}
 
 	/**
 	 *
 	 */
 	public static String asImg(String link, int width, int height) {
-		return "<img src=\"" + link + "\" width=\"" + width + "\" height=\"" + height + "\" />";
+		return new StringBuilder(link.length() + 40).append("<img src=\"").append(link).append("\" width=\"").
+				append(width).append("\" height=\"").append(height).append("\" />").toString();
 	}
 
 	/**
 	 *
 	 */
 	public static String asP(String value) {
-		return "<p>" + value + "</p>";
+		return new StringBuilder(value.length() + 7).append("<p>").append(value).append("</p>").toString();
 	}
 
 	/**
 	 *
 	 */
-	public static String maskForWeb(String s) {
-		StringBuffer result = new StringBuffer(s.length() + 16);
+	public static void appendHref(Appendable out, String link) throws IOException {
+		appendHref(out, link, link);
+	}
+
+	/**
+	 *
+	 */
+	public static void appendHref(Appendable out, String link, String body) throws IOException {
+		out.append("<a href=\"").append(link).append("\" rel=\"nofollow\">").append(body).append("</a>");
+	}
+
+	/**
+	 *
+	 */
+	public static void appendImg(Appendable out, String link) throws IOException {
+		out.append("<img src=\"").append(link).append("\" />");
+	}
+
+	/**
+	 *
+	 */
+	public static void appendImg(Appendable out, String link, int width, int height) throws IOException {
+		out.append("<img src=\"").append(link).append("\" width=\"");
+		appendInt(out, width);
+		out.append("\" height=\"");
+		appendInt(out, height);
+		out.append("\" />");
+	}
+
+	/**
+	 *
+	 */
+	public static void appendP(Appendable out, String value) throws IOException {
+		out.append("<p>").append(value).append("</p>");
+	}
+
+	/**
+	 * Appends the digits of value one by one, so that no String is created for them.
+	 *
+	 * @methodtype command
+	 * @methodproperty primitive
+	 */
+	protected static void appendInt(Appendable out, int value) throws IOException {
+		if (value < 0) {
+			if (value == Integer.MIN_VALUE) {
+				out.append(String.valueOf(value));
+				return;
+			}
+			out.append('-');
+			value = -value;
+		}
+
+		int divisor = 1;
+		while (value / divisor >= 10) {
+			divisor *= 10;
+		}
+		for (; divisor > 0; divisor /= 10) {
+			out.append((char) ('0' + (value / divisor) % 10));
+		}
+	}
+
+	/**
+	 * Returns the index of the first char that maskForWeb() replaces, or -1 if s can be used as is.
+	 *
+	 * @methodtype query
+	 */
+	public static int indexOfMaskable(CharSequence s) {
 		for (int i = 0; i < s.length(); i++) {
+			if (getMaskFor(s.charAt(i)) != null) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @methodtype boolean query
+	 */
+	public static boolean needsMasking(CharSequence s) {
+		return indexOfMaskable(s) != -1;
+	}
+
+	/**
+	 * Returns s itself if it contains nothing to mask.
+	 */
+	public static String maskForWeb(String s) {
+		int first = indexOfMaskable(s);
+		if (first == -1) {
+			return s;
+		}
+
+		StringBuilder result = new StringBuilder(s.length() + 16);
+		result.append(s, 0, first);
+		for (int i = first; i < s.length(); i++) {
 			char c = s.charAt(i);
-			if (c == '&') {
-				result.append("&amp;");
-			} else if (c == '"') {
-				result.append("&quot;");
-			} else if (c == '<') {
-				result.append("&lt;");
-			} else if (c == '>') {
-				result.append("&gt;");
+			String mask = getMaskFor(c);
+			if (mask != null) {
+				result.append(mask);
 			} else {
 				result.append(c);
 			}
@@ -127,4 +217,62 @@ public class HtmlUtil {
 		return result.toString();
 	}
 
+	/**
+	 * Writes s masked as maskForWeb() does; unmasked runs are written as substrings of s without copying them.
+	 *
+	 * @methodtype command
+	 */
+	public static void writeMaskedForWeb(Writer out, String s) throws IOException {
+		int start = 0;
+		for (int i = 0; i < s.length(); i++) {
+			String mask = getMaskFor(s.charAt(i));
+			if (mask != null) {
+				out.write(s, start, i - start);
+				out.write(mask);
+				start = i + 1;
+			}
+		}
+		out.write(s, start, s.length() - start);
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	public static void appendMaskedForWeb(Appendable out, CharSequence s) throws IOException {
+		if (out instanceof Writer && s instanceof String) {
+			// Writer.append(CharSequence, int, int) would create a subSequence for every run
+			writeMaskedForWeb((Writer) out, (String) s);
+			return;
+		}
+
+		int start = 0;
+		for (int i = 0; i < s.length(); i++) {
+			String mask = getMaskFor(s.charAt(i));
+			if (mask != null) {
+				out.append(s, start, i).append(mask);
+				start = i + 1;
+			}
+		}
+		out.append(s, start, s.length());
+	}
+
+	/**
+	 * @methodtype get
+	 * @methodproperty primitive
+	 */
+	protected static String getMaskFor(char c) {
+		switch (c) {
+			case '&':
+				return "&amp;";
+			case '"':
+				return "&quot;";
+			case '<':
+				return "&lt;";
+			case '>':
+				return "&gt;";
+			default:
+				return null;
+		}
+	}
+
 }
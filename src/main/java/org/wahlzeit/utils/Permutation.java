@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.utils;
+
+/**
+ * A seeded random permutation of 0..size-1 that maps a position to its element in constant time, without
+ * materializing the permutation. It is a small Feistel network over the next even power of two, with cycle walking
+ * to stay below size.
+ */
+public class Permutation {
+
+	/**
+	 *
+	 */
+	protected static final int ROUNDS = 4;
+
+	/**
+	 * Returns the element at position index of the permutation of 0..size-1 given by seed.
+	 *
+	 * @methodtype conversion
+	 */
+	public static int permute(int index, int size, long seed) {
+		if ((index < 0) || (index >= size)) {
+			throw new IllegalArgumentException("index " + index + " out of 0.." + (size - 1));
+		}
+		if (size == 1) {
+			return 0;
+		}
+
+		int bits = 32 - Integer.numberOfLeadingZeros(size - 1);
+		int halfBits = (bits + 1) / 2;
+		long halfMask = (1L << halfBits) - 1;
+
+		long result = index;
+		do {
+			result = encrypt(result, halfBits, halfMask, seed);
+		} while (result >= size);
+		return (int) result;
+	}
+
+	/**
+	 * @methodtype conversion
+	 * @methodproperty primitive
+	 */
+	protected static long encrypt(long value, int halfBits, long halfMask, long seed) {
+		long left = value >>> halfBits;
+		long right = value & halfMask;
+		for (int round = 0; round < ROUNDS; round++) {
+			long next = left ^ (mix(right ^ (seed + round * 0x9E3779B97F4A7C15L)) & halfMask);
+			left = right;
+			right = next;
+		}
+		return (left << halfBits) | right;
+	}
+
+	/**
+	 * The finalizer of SplitMix64
+	 *
+	 * @methodtype conversion
+	 * @methodproperty primitive
+	 */
+	protected static long mix(long value) {
+		long result = (value ^ (value >>> 30)) * 0xBF58476D1CE4E5B9L;
+		result = (result ^ (result >>> 27)) * 0x94D049BB133111EBL;
+		return result ^ (result >>> 31);
+	}
+
+}
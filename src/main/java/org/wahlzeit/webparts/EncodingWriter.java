@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.webparts;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+
+/**
+ * An EncodingWriter encodes chars as UTF-8 into a buffer and writes it to an OutputStream. It also takes bytes that
+ * are already encoded, e.g. the literal segments of a WebPartTemplate, so they need not be encoded per request.
+ */
+public class EncodingWriter extends Writer {
+
+	/**
+	 *
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 8 * 1024;
+
+	/**
+	 * Written for chars that are not part of a valid surrogate pair, as String.getBytes() does
+	 */
+	protected static final byte REPLACEMENT = (byte) '?';
+
+	/**
+	 *
+	 */
+	protected OutputStream out;
+
+	/**
+	 *
+	 */
+	protected byte[] buffer;
+	protected int count = 0;
+
+	/**
+	 * A high surrogate at the end of a write, waiting for its low surrogate
+	 */
+	protected char highSurrogate = 0;
+
+	/**
+	 *
+	 */
+	public EncodingWriter(OutputStream myOut) {
+		this(myOut, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 *
+	 */
+	public EncodingWriter(OutputStream myOut, int bufferSize) {
+		out = myOut;
+		buffer = new byte[Math.max(bufferSize, 4)];
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	public void writeEncoded(byte[] bytes) throws IOException {
+		writeEncoded(bytes, 0, bytes.length);
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	public void writeEncoded(byte[] bytes, int offset, int length) throws IOException {
+		flushHighSurrogate();
+		if (length > buffer.length - count) {
+			flushBuffer();
+			if (length > buffer.length) {
+				out.write(bytes, offset, length);
+				return;
+			}
+		}
+		System.arraycopy(bytes, offset, buffer, count, length);
+		count += length;
+	}
+
+	/**
+	 *
+	 */
+	@Override
+	public void write(int c) throws IOException {
+		writeChar((char) c);
+	}
+
+	/**
+	 *
+	 */
+	@Override
+	public void write(char[] chars, int offset, int length) throws IOException {
+		for (int i = offset, end = offset + length; i < end; i++) {
+			writeChar(chars[i]);
+		}
+	}
+
+	/**
+	 *
+	 */
+	@Override
+	public void write(String string, int offset, int length) throws IOException {
+		for (int i = offset, end = offset + length; i < end; i++) {
+			writeChar(string.charAt(i));
+		}
+	}
+
+	/**
+	 * @methodtype command
+	 * @methodproperty primitive
+	 */
+	protected void writeChar(char c) throws IOException {
+		if (buffer.length - count < 4) {
+			flushBuffer();
+		}
+
+		if (highSurrogate != 0) {
+			char high = highSurrogate;
+			highSurrogate = 0;
+			if (Character.isLowSurrogate(c)) {
+				int codePoint = Character.toCodePoint(high, c);
+				buffer[count++] = (byte) (0xf0 | (codePoint >> 18));
+				buffer[count++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+				buffer[count++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+				buffer[count++] = (byte) (0x80 | (codePoint & 0x3f));
+				return;
+			}
+			buffer[count++] = REPLACEMENT;
+			if (buffer.length - count < 3) {
+				flushBuffer();
+			}
+		}
+
+		if (c < 0x80) {
+			buffer[count++] = (byte) c;
+		} else if (c < 0x800) {
+			buffer[count++] = (byte) (0xc0 | (c >> 6));
+			buffer[count++] = (byte) (0x80 | (c & 0x3f));
+		} else if (Character.isHighSurrogate(c)) {
+			highSurrogate = c;
+		} else if (Character.isLowSurrogate(c)) {
+			buffer[count++] = REPLACEMENT;
+		} else {
+			buffer[count++] = (byte) (0xe0 | (c >> 12));
+			buffer[count++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+			buffer[count++] = (byte) (0x80 | (c & 0x3f));
+		}
+	}
+
+	/**
+	 * @methodtype command
+	 * @methodproperty primitive
+	 */
+	protected void flushHighSurrogate() throws IOException {
+		if (highSurrogate != 0) {
+			highSurrogate = 0;
+			if (count == buffer.length) {
+				flushBuffer();
+			}
+			buffer[count++] = REPLACEMENT;
+		}
+	}
+
+	/**
+	 * @methodtype command
+	 * @methodproperty primitive
+	 */
+	protected void flushBuffer() throws IOException {
+		if (count > 0) {
+			out.write(buffer, 0, count);
+			count = 0;
+		}
+	}
+
+	/**
+	 *
+	 */
+	@Override
+	public void flush() throws IOException {
+		flushHighSurrogate();
+		flushBuffer();
+		out.flush();
+	}
+
+	/**
+	 *
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			flush();
+		} finally {
+			out.close();
+		}
+	}
+
+}
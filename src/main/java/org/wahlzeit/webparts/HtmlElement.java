@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.webparts;
+
+import org.wahlzeit.utils.HtmlUtil;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+
+/**
+ * An HtmlElement is a Writable for the markup that HtmlUtil builds as Strings. It keeps only its arguments and writes
+ * the markup straight to the Writer of a WebPart, so no intermediate String is created for it.
+ */
+public abstract class HtmlElement implements Writable {
+
+	/**
+	 * @methodtype factory
+	 */
+	public static HtmlElement asHref(String link) {
+		return asHref(link, link);
+	}
+
+	/**
+	 * @methodtype factory
+	 */
+	public static HtmlElement asHref(final String link, final String body) {
+		return new HtmlElement() {
+			public void writeOn(Writer out) throws IOException {
+				HtmlUtil.appendHref(out, link, body);
+			}
+		};
+	}
+
+	/**
+	 * @methodtype factory
+	 */
+	public static HtmlElement asImg(final String link) {
+		return new HtmlElement() {
+			public void writeOn(Writer out) throws IOException {
+				HtmlUtil.appendImg(out, link);
+			}
+		};
+	}
+
+	/**
+	 * @methodtype factory
+	 */
+	public static HtmlElement asImg(final String link, final int width, final int height) {
+		return new HtmlElement() {
+			public void writeOn(Writer out) throws IOException {
+				HtmlUtil.appendImg(out, link, width, height);
+			}
+		};
+	}
+
+	/**
+	 * @methodtype factory
+	 */
+	public static HtmlElement asP(final String value) {
+		return new HtmlElement() {
+			public void writeOn(Writer out) throws IOException {
+				HtmlUtil.appendP(out, value);
+			}
+		};
+	}
+
+	/**
+	 * Text that is masked while it is written; see HtmlUtil.maskForWeb().
+	 *
+	 * @methodtype factory
+	 */
+	public static HtmlElement asMasked(final String value) {
+		return new HtmlElement() {
+			public void writeOn(Writer out) throws IOException {
+				HtmlUtil.writeMaskedForWeb(out, value);
+			}
+		};
+	}
+
+	/**
+	 * Renders the element; meant for debugging, not for the render path.
+	 */
+	@Override
+	public String toString() {
+		StringWriter result = new StringWriter();
+		try {
+			writeOn(result);
+		} catch (IOException ex) {
+			// a StringWriter does not throw
+		}
+		return result.toString();
+	}
+
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.webparts;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The WebFragmentCache keeps web parts that are the same for many requests, e.g. the frame of a page for a language,
+ * access rights, and photo size. A fragment is a WebPartTemplate with its values already rendered into pre-encoded
+ * segments; see WebPart.asTemplate(). Keys are lists of the things a fragment depends on, including its template, so
+ * that a reloaded template is not served from an outdated fragment.
+ */
+public class WebFragmentCache {
+
+	/**
+	 *
+	 */
+	protected static final WebFragmentCache instance = new WebFragmentCache();
+
+	/**
+	 * Convenience method...
+	 */
+	public static WebFragmentCache getInstance() {
+		return instance;
+	}
+
+	/**
+	 *
+	 */
+	protected final ConcurrentMap<List<?>, WebPartTemplate> fragments =
+			new ConcurrentHashMap<List<?>, WebPartTemplate>();
+
+	/**
+	 * Incremented by clear(), so that a fragment rendered before clearing is not put afterwards
+	 */
+	protected final AtomicLong generation = new AtomicLong();
+
+	/**
+	 *
+	 */
+	protected WebFragmentCache() {
+		// do nothing
+	}
+
+	/**
+	 * Returns null if there is no fragment for the key.
+	 *
+	 * @methodtype get
+	 */
+	public WebPartTemplate getFragment(List<?> key) {
+		return fragments.get(key);
+	}
+
+	/**
+	 * To be called before rendering a fragment, with the result passed to putFragment().
+	 *
+	 * @methodtype get
+	 */
+	public long getGeneration() {
+		return generation.get();
+	}
+
+	/**
+	 * Returns the fragment that is cached for the key; this is the given one unless another thread was faster.
+	 *
+	 * @methodtype set
+	 */
+	public WebPartTemplate putFragment(List<?> key, WebPartTemplate fragment, long renderedInGeneration) {
+		if (renderedInGeneration != generation.get()) {
+			return fragment;
+		}
+
+		WebPartTemplate result = fragments.putIfAbsent(key, fragment);
+		if (generation.get() != renderedInGeneration) {
+			fragments.remove(key, fragment);
+		}
+		return (result != null) ? result : fragment;
+	}
+
+	/**
+	 * Drops all fragments; to be called when templates or language configurations change.
+	 *
+	 * @methodtype command
+	 */
+	public void clear() {
+		generation.incrementAndGet();
+		fragments.clear();
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public int getSize() {
+		return fragments.size();
+	}
+
+}
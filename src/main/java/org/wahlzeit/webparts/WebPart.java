@@ -25,13 +25,13 @@ import org.wahlzeit.utils.HtmlUtil;
 
 import java.io.IOException;
 import java.io.Writer;
-import java.util.HashMap;
 import java.util.Map;
 
 /**
  * A WebPart is a Writable formatted as HTML, working off a template.
  * A WebPart has its data set from a client using key/value pairs.
  * A WebPart has a recursive structure; it may contain further WebParts.
+ * Values are kept in an array indexed by the key ids of the template; keys without a slot in the template are ignored.
  */
 public class WebPart implements Writable {
 
@@ -43,17 +43,22 @@ public class WebPart implements Writable {
 	/**
 	 *
 	 */
-	protected Map<String, Object> parts = new HashMap<String, Object>();
+	protected Object[] parts;
 
 	/**
 	 *
 	 */
 	public WebPart(WebPartTemplate myTemplate) {
-		template = myTemplate;
+		template = (myTemplate != null) ? myTemplate : new WebPartTemplate(null);
+		parts = new Object[template.getKeyCount()];
 	}
 
+	/**
+	 *
+	 */
 	public Object getValue(String key) {
-		return parts.get(key);
+		int keyId = template.getKeyId(key);
+		return (keyId != -1) ? parts[keyId] : null;
 	}
 
 	/**
@@ -70,7 +75,7 @@ public class WebPart implements Writable {
 	 */
 	public void maskAndAddString(String key, String value) {
 		if (value != null) {
-			putValue(key, HtmlUtil.maskForWeb(value));
+			putMaskedValue(key, value);
 		}
 	}
 
@@ -90,7 +95,7 @@ public class WebPart implements Writable {
 	public void maskAndAddStringFromArgs(Map args, String key) {
 		Object value = args.get(key);
 		if (value != null) {
-			addString(key, HtmlUtil.maskForWeb(value.toString()));
+			putMaskedValue(key, value.toString());
 		}
 	}
 
@@ -112,9 +117,9 @@ public class WebPart implements Writable {
 	public void maskAndAddStringFromArgsWithDefault(Map args, String key, String defval) {
 		Object value = args.get(key);
 		if (value != null) {
-			addString(key, HtmlUtil.maskForWeb(value.toString()));
-		} else {
-			addString(key, HtmlUtil.maskForWeb(defval));
+			putMaskedValue(key, value.toString());
+		} else if (defval != null) {
+			putMaskedValue(key, defval);
 		}
 	}
 
@@ -170,41 +175,34 @@ public class WebPart implements Writable {
 	 */
 	protected void putValue(String key, Object value) {
 		if (value != null) {
-			parts.put(key, value);
+			int keyId = template.getKeyId(key);
+			if (keyId != -1) {
+				parts[keyId] = value;
+			}
 		}
 	}
 
 	/**
-	 *
+	 * A value that needs masking is kept as is and masked while it is written, so no masked copy is created.
 	 */
-	public void writeOn(Writer out) throws IOException {
-		String tmpl = template.asString();
-		String[] keys = template.getKeys();
-		int[] slots = template.getSlots();
-
-		int start = 0;
-		for (int i = 0; i < keys.length; i++) {
-			int index = slots[i];
-			out.write(tmpl, start, index - start);
-
-			String key = keys[i];
-			if (key != null) {
-				Object object = parts.get(key);
-				if (object != null) {
-					if (object instanceof Writable) {
-						Writable part = (Writable) object;
-						part.writeOn(out);
-					} else {
-						String value = object.toString();
-						out.write(value);
-					}
-				}
-			}
+	protected void putMaskedValue(String key, String value) {
+		putValue(key, HtmlUtil.needsMasking(value) ? HtmlElement.asMasked(value) : value);
+	}
 
-			start = index;
-		}
+	/**
+	 * Renders the values added so far into a new template; see WebPartTemplate.bind().
+	 *
+	 * @methodtype conversion
+	 */
+	public WebPartTemplate asTemplate(boolean keepUnboundSlots) throws IOException {
+		return template.bind(parts, keepUnboundSlots);
+	}
 
-		out.write(tmpl, start, tmpl.length() - start);
+	/**
+	 *
+	 */
+	public void writeOn(Writer out) throws IOException {
+		template.writeOn(out, parts);
 	}
 
 }
@@ -20,30 +20,62 @@
 
 package org.wahlzeit.webparts;
 
-import java.util.LinkedList;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * A WebPartTmpl is a template for a WebPart.
  * It gets initialized once and is read-only after that.
+ *
+ * Initializing compiles the source into literal segments and slots; segment i is followed by slot i, the last segment
+ * by nothing. Each slot refers to a key by id, and a WebPart keeps its values in an array indexed by these ids.
  */
 public class WebPartTemplate {
 
 	/**
 	 *
 	 */
-	protected String name;
+	public static final Charset ENCODING = Charset.forName("UTF-8");
 
 	/**
 	 *
 	 */
-	protected String template;
+	protected static final String SLOT_START = "{$";
+	protected static final char SLOT_END = '}';
 
 	/**
 	 *
 	 */
-	protected String[] keys = null;
-	protected int[] slots = null;
+	protected String name;
+
+	/**
+	 * The template without its slots
+	 */
+	protected String template;
+
+	/**
+	 * Literal segments, as chars and pre-encoded in ENCODING
+	 */
+	protected char[][] segments = new char[][]{new char[0]};
+	protected byte[][] encodedSegments = new byte[][]{new byte[0]};
+
+	/**
+	 * Key id of each slot; a key that occurs several times has one id
+	 */
+	protected int[] slotKeyIds = new int[0];
+
+	/**
+	 * Distinct keys, indexed by key id
+	 */
+	protected String[] keys = new String[0];
+	protected Map<String, Integer> keyIds = Collections.emptyMap();
 
 	/**
 	 *
@@ -53,42 +85,101 @@ public class WebPartTemplate {
 	}
 
 	/**
+	 * Compiles the source in a single pass. A slot is "{$key}"; a "{$" without a closing "}" is kept as text.
+	 *
 	 * @methodtype initialization
 	 */
 	public void initialize(String source) {
-		List<String> keyList = new LinkedList<String>();
-		List<Integer> slotList = new LinkedList<Integer>();
-
-		StringBuffer buffer = new StringBuffer(source);
-
-		for (int index = 0; index != -1; ) {
-			int nextSlot = buffer.indexOf("{$", index);
-			if (nextSlot != -1) {
-				int endSlot = buffer.indexOf("}", nextSlot);
-				if (endSlot != -1) {
-					String key = buffer.substring(nextSlot + 2, endSlot);
-
-					keyList.add(key);
-					slotList.add(nextSlot);
-
-					buffer.replace(nextSlot, endSlot + 1, "");
-					index = nextSlot;
-				}
-				index = endSlot;
-			} else {
-				index = -1;
+		List<String> segmentList = new ArrayList<String>();
+		List<String> slotKeyList = new ArrayList<String>();
+
+		int index = 0;
+		for (int nextSlot = source.indexOf(SLOT_START); nextSlot != -1; nextSlot = source.indexOf(SLOT_START, index)) {
+			int endSlot = source.indexOf(SLOT_END, nextSlot + SLOT_START.length());
+			if (endSlot == -1) {
+				break;
+			}
+
+			segmentList.add(source.substring(index, nextSlot));
+			slotKeyList.add(source.substring(nextSlot + SLOT_START.length(), endSlot));
+			index = endSlot + 1;
+		}
+		segmentList.add(source.substring(index));
+
+		initialize(segmentList, slotKeyList);
+	}
+
+	/**
+	 * Returns a template in which the slots that have a value are replaced by the rendered value. Slots without a
+	 * value are kept if keepUnboundSlots is true, and dropped otherwise. The result renders the bound values from its
+	 * pre-encoded segments, so that values that are the same for many requests need to be rendered only once.
+	 *
+	 * @methodtype factory
+	 */
+	public WebPartTemplate bind(Object[] values, boolean keepUnboundSlots) throws IOException {
+		List<String> segmentList = new ArrayList<String>();
+		List<String> slotKeyList = new ArrayList<String>();
+
+		StringWriter segment = new StringWriter();
+		segment.write(segments[0]);
+		for (int i = 0; i < slotKeyIds.length; i++) {
+			Object value = values[slotKeyIds[i]];
+			if (value instanceof Writable) {
+				((Writable) value).writeOn(segment);
+			} else if (value != null) {
+				segment.write(value.toString());
+			} else if (keepUnboundSlots) {
+				segmentList.add(segment.toString());
+				slotKeyList.add(keys[slotKeyIds[i]]);
+				segment = new StringWriter();
+			}
+			segment.write(segments[i + 1]);
+		}
+		segmentList.add(segment.toString());
+
+		WebPartTemplate result = new WebPartTemplate(name);
+		result.initialize(segmentList, slotKeyList);
+		return result;
+	}
+
+	/**
+	 * Segment i of segmentList is followed by the slot for key i of slotKeyList.
+	 *
+	 * @methodtype initialization
+	 * @methodproperty primitive
+	 */
+	protected void initialize(List<String> segmentList, List<String> slotKeyList) {
+		List<String> keyList = new ArrayList<String>();
+		Map<String, Integer> keyIdMap = new HashMap<String, Integer>();
+		int[] newSlotKeyIds = new int[slotKeyList.size()];
+		for (int i = 0; i < newSlotKeyIds.length; i++) {
+			String key = slotKeyList.get(i);
+			Integer keyId = keyIdMap.get(key);
+			if (keyId == null) {
+				keyId = keyList.size();
+				keyList.add(key);
+				keyIdMap.put(key, keyId);
 			}
+			newSlotKeyIds[i] = keyId;
 		}
 
-		int length = keyList.size();
-		keys = new String[length];
-		slots = new int[length];
-		for (int i = 0; i < length; i++) {
-			keys[i] = keyList.get(i);
-			slots[i] = slotList.get(i);
+		StringBuilder text = new StringBuilder();
+		int segmentCount = segmentList.size();
+		char[][] newSegments = new char[segmentCount][];
+		byte[][] newEncodedSegments = new byte[segmentCount][];
+		for (int i = 0; i < segmentCount; i++) {
+			String segment = segmentList.get(i);
+			newSegments[i] = segment.toCharArray();
+			newEncodedSegments[i] = segment.getBytes(ENCODING);
+			text.append(segment);
 		}
 
-		template = buffer.toString();
+		segments = newSegments;
+		encodedSegments = newEncodedSegments;
+		slotKeyIds = newSlotKeyIds;
+		keys = keyList.toArray(new String[keyList.size()]);
+		keyIds = Collections.unmodifiableMap(keyIdMap);
+		template = text.toString();
 	}
 
 	/**
@@ -106,17 +197,64 @@ public class WebPartTemplate {
 	}
 
 	/**
+	 * @methodtype get
+	 */
+	public int getKeyCount() {
+		return keys.length;
+	}
+
+	/**
+	 * Returns -1 if the template has no slot for the key.
 	 *
+	 * @methodtype get
 	 */
-	public String[] getKeys() {
-		return keys; // @FIXME needs cloning?
+	public int getKeyId(String key) {
+		Integer result = keyIds.get(key);
+		return (result != null) ? result : -1;
 	}
 
 	/**
+	 * @methodtype get
+	 */
+	public String getKey(int keyId) {
+		return keys[keyId];
+	}
+
+	/**
+	 * Writes the template with the value of each slot taken from values, indexed by key id; null values leave the
+	 * slot empty. Literal segments are written pre-encoded if the writer is an EncodingWriter.
 	 *
+	 * @methodtype command
+	 */
+	public void writeOn(Writer out, Object[] values) throws IOException {
+		EncodingWriter encodingOut = (out instanceof EncodingWriter) ? (EncodingWriter) out : null;
+
+		for (int i = 0; i < slotKeyIds.length; i++) {
+			writeSegmentOn(out, encodingOut, i);
+
+			Object value = values[slotKeyIds[i]];
+			if (value instanceof Writable) {
+				((Writable) value).writeOn(out);
+			} else if (value instanceof String) {
+				out.write((String) value);
+			} else if (value != null) {
+				out.write(value.toString());
+			}
+		}
+
+		writeSegmentOn(out, encodingOut, slotKeyIds.length);
+	}
+
+	/**
+	 * @methodtype command
+	 * @methodproperty primitive
 	 */
-	public int[] getSlots() {
-		return slots; // @FIXME needs cloning?
+	protected void writeSegmentOn(Writer out, EncodingWriter encodingOut, int i) throws IOException {
+		if (encodingOut != null) {
+			encodingOut.writeEncoded(encodedSegments[i]);
+		} else {
+			out.write(segments[i]);
+		}
 	}
 
 }
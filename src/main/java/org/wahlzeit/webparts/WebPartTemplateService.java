@@ -23,17 +23,24 @@ package org.wahlzeit.webparts;
 import com.google.common.base.Charsets;
 import com.google.common.io.Files;
 import org.wahlzeit.services.ConfigDir;
+import org.wahlzeit.services.Log;
 import org.wahlzeit.services.LogBuilder;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.logging.Logger;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
 /**
  * The WebPartTemplateService creates WebPartTemplates upon request by reading them from disk.
  * It requires configuration with a template directory and uses the following naming convention: tmplDir/language/part-type/part-name.html
+ *
+ * Templates are cached per language and name. A template is read by the first thread that asks for it, while other
+ * threads asking for it wait for that read. Missing templates are cached as well. If reloading is enabled, a template
+ * is read again once its file has changed.
  */
 public class WebPartTemplateService {
 
@@ -41,15 +48,33 @@ public class WebPartTemplateService {
 	 *
 	 */
 	protected static final WebPartTemplateService instance = new WebPartTemplateService();
-	private static final Logger log = Logger.getLogger(WebPartTemplateService.class.getName());
+	private static final Log log = Log.getLog(WebPartTemplateService.class);
+
+	/**
+	 *
+	 */
+	protected static final String TEMPLATE_FILE_EXTENSION = ".html";
+
+	/**
+	 * Minimum time between two checks of the same template file if reloading is enabled
+	 */
+	protected static final long RELOAD_CHECK_INTERVAL_MILLIS = 1000;
+
+	/**
+	 * Maps language to template name to template
+	 */
+	protected final ConcurrentMap<String, ConcurrentMap<String, TemplateEntry>> templates =
+			new ConcurrentHashMap<String, ConcurrentMap<String, TemplateEntry>>();
+
 	/**
 	 *
 	 */
-	protected Map<String, WebPartTemplate> templates = new HashMap<String, WebPartTemplate>();
+	protected volatile ConfigDir templatesDir = null;
+
 	/**
 	 *
 	 */
-	protected ConfigDir templatesDir = null;
+	protected volatile boolean reloadChangedTemplates = false;
 
 	/**
 	 *
@@ -66,51 +91,134 @@ public class WebPartTemplateService {
 	}
 
 	/**
-	 *
+	 * Returns null if there is no such template.
 	 */
 	public WebPartTemplate getTemplate(String lang, String name) {
-		String shortName = lang + File.separator + name;
-		WebPartTemplate result = templates.get(shortName);
+		ConcurrentMap<String, TemplateEntry> languageTemplates = getLanguageTemplates(lang);
+		TemplateEntry entry = languageTemplates.get(name);
 
-		if (result == null) {
-			try {
-				loadTemplate(shortName);
-				result = templates.get(shortName);
-			} catch (IOException ioex) {
-				log.warning(LogBuilder.createSystemMessage().
-						addParameter("template name", shortName).
-						addException("Problem loading template", ioex).toString());
+		if (entry == null) {
+			TemplateEntry newEntry = new TemplateEntry(lang, name);
+			entry = languageTemplates.putIfAbsent(name, newEntry);
+			if (entry == null) {
+				entry = newEntry;
+				entry.run();
+			}
+		} else if (reloadChangedTemplates && entry.isOutdated()) {
+			TemplateEntry newEntry = new TemplateEntry(lang, name);
+			if (languageTemplates.replace(name, entry, newEntry)) {
+				log.info("reload changed template", "template name", entry.getShortName());
+				entry = newEntry;
+				entry.run();
+				WebFragmentCache.getInstance().clear();
+			} else {
+				return getTemplate(lang, name);
 			}
 		}
 
+		return entry.getTemplate();
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	protected ConcurrentMap<String, TemplateEntry> getLanguageTemplates(String lang) {
+		ConcurrentMap<String, TemplateEntry> result = templates.get(lang);
+		if (result == null) {
+			ConcurrentMap<String, TemplateEntry> newResult = new ConcurrentHashMap<String, TemplateEntry>();
+			result = templates.putIfAbsent(lang, newResult);
+			if (result == null) {
+				result = newResult;
+			}
+		}
 		return result;
 	}
 
 	/**
-	 *
+	 * Reads a template from its file; returns null if there is no such file or it cannot be read.
 	 */
-	protected void loadTemplate(String shortName) throws IOException {
-		WebPartTemplate template = new WebPartTemplate(shortName);
-		String fileName = getTemplatesDir().getAbsoluteConfigFileName(shortName + ".html");
-		log.config(LogBuilder.createSystemMessage().
-				addAction("open html template file").
-				addParameter("file name", fileName).toString());
-		File file = new File(fileName);
+	protected WebPartTemplate loadTemplate(String shortName, final File file) {
+		log.config("open html template file", "file name", file.getPath());
+		if (!file.isFile()) {
+			log.warning(new Log.MessageSupplier() {
+				public LogBuilder get() {
+					return LogBuilder.createSystemMessage().addMessage("Template file does not exist").
+							addParameter("file name", file.getPath());
+				}
+			});
+			return null;
+		}
 
 		try {
 			String source = Files.toString(file, Charsets.UTF_8);
-			//String source = Resources.toString(Resources.getResource(fileName), Charsets.UTF_8);
+			WebPartTemplate result = new WebPartTemplate(shortName);
+			result.initialize(source);
+			log.config("Initialize template", "template name", shortName);
+			return result;
+		} catch (IOException e) {
+			log.warning("I/O Error while reading Template file", e, "template name", shortName);
+			return null;
+		}
+	}
 
-			if (source != null) {
-				template.initialize(source);
-				log.config(LogBuilder.createSystemMessage().addAction("Initialize template").toString());
+	/**
+	 * Reads all templates of all languages, from the default and the custom directory.
+	 *
+	 * @methodtype command
+	 */
+	public int preloadTemplates() {
+		int result = 0;
+		ConfigDir dir = getTemplatesDir();
+		String[] configDirNames = {ConfigDir.DEFAULT_DIR_NAME, ConfigDir.CUSTOM_DIR_NAME};
+		for (String configDirName : configDirNames) {
+			File[] languageDirs = new File(dir.asString(), configDirName).listFiles();
+			if (languageDirs == null) {
+				continue;
+			}
+			for (File languageDir : languageDirs) {
+				if (languageDir.isDirectory()) {
+					result += preloadTemplates(languageDir.getName(), languageDir, "");
+				}
 			}
+		}
 
-			templates.put(shortName, template);
-		} catch (IOException e) {
-			log.warning(LogBuilder.createSystemMessage().
-					addException("I/O Error while reading Template file", e).toString());
+		log.info("preload templates", "templates", result, "languages", templates.size());
+		return result;
+	}
+
+	/**
+	 * @methodtype command
+	 * @methodproperty primitive
+	 */
+	protected int preloadTemplates(String lang, File dir, String namePrefix) {
+		int result = 0;
+		File[] files = dir.listFiles();
+		if (files == null) {
+			return result;
 		}
+
+		for (File file : files) {
+			String fileName = file.getName();
+			if (file.isDirectory()) {
+				result += preloadTemplates(lang, file, namePrefix + fileName + "/");
+			} else if (fileName.endsWith(TEMPLATE_FILE_EXTENSION)) {
+				String name = namePrefix + fileName.substring(0, fileName.length() - TEMPLATE_FILE_EXTENSION.length());
+				if (getTemplate(lang, name) != null) {
+					result++;
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Drops all cached templates and the fragments rendered from them, e.g. after the templates directory changed.
+	 *
+	 * @methodtype command
+	 */
+	public void clearTemplates() {
+		templates.clear();
+		WebFragmentCache.getInstance().clear();
 	}
 
 	/**
@@ -125,6 +233,139 @@ public class WebPartTemplateService {
 	 */
 	public void setTemplatesDir(ConfigDir newTemplatesDir) {
 		templatesDir = newTemplatesDir;
+		clearTemplates();
+	}
+
+	/**
+	 * @methodtype boolean query
+	 */
+	public boolean isReloadChangedTemplates() {
+		return reloadChangedTemplates;
+	}
+
+	/**
+	 * If true, each template file is checked for changes at most every RELOAD_CHECK_INTERVAL_MILLIS; meant for
+	 * development, where templates are edited while the application runs.
+	 *
+	 * @methodtype set
+	 */
+	public void setReloadChangedTemplates(boolean newReloadChangedTemplates) {
+		reloadChangedTemplates = newReloadChangedTemplates;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	protected long getReloadCheckIntervalMillis() {
+		return RELOAD_CHECK_INTERVAL_MILLIS;
+	}
+
+	/**
+	 * A cached template, or the cached absence of one. The template is read by the thread that runs the entry; other
+	 * threads block in getTemplate() until it is done.
+	 */
+	protected class TemplateEntry {
+
+		/**
+		 *
+		 */
+		protected final String shortName;
+		protected final FutureTask<WebPartTemplate> task;
+
+		/**
+		 * Set when the entry is run
+		 */
+		protected volatile File file = null;
+		protected volatile long lastModified = 0;
+		protected volatile long lastChecked = 0;
+
+		/**
+		 *
+		 */
+		protected TemplateEntry(String lang, String name) {
+			shortName = lang + File.separator + name;
+			task = new FutureTask<WebPartTemplate>(new Callable<WebPartTemplate>() {
+				public WebPartTemplate call() {
+					return load();
+				}
+			});
+		}
+
+		/**
+		 * @methodtype get
+		 */
+		public String getShortName() {
+			return shortName;
+		}
+
+		/**
+		 * @methodtype command
+		 */
+		protected void run() {
+			task.run();
+		}
+
+		/**
+		 * @methodtype command
+		 * @methodproperty primitive
+		 */
+		protected WebPartTemplate load() {
+			File templateFile = getTemplateFile();
+			file = templateFile;
+			lastModified = templateFile.lastModified();
+			lastChecked = System.currentTimeMillis();
+			return loadTemplate(shortName, templateFile);
+		}
+
+		/**
+		 * @methodtype get
+		 */
+		protected File getTemplateFile() {
+			return new File(getTemplatesDir().getAbsoluteConfigFileName(shortName + TEMPLATE_FILE_EXTENSION));
+		}
+
+		/**
+		 * Waits for the entry to be loaded; returns null if there is no template.
+		 *
+		 * @methodtype get
+		 */
+		protected WebPartTemplate getTemplate() {
+			boolean isInterrupted = false;
+			try {
+				while (true) {
+					try {
+						return task.get();
+					} catch (InterruptedException e) {
+						isInterrupted = true;
+					}
+				}
+			} catch (ExecutionException e) {
+				log.warning("Problem loading template", e.getCause(), "template name", shortName);
+				return null;
+			} finally {
+				if (isInterrupted) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+
+		/**
+		 * A template is outdated if its file was changed, created, or deleted, or if a default file now shadows the
+		 * custom one or vice versa.
+		 *
+		 * @methodtype boolean query
+		 */
+		protected boolean isOutdated() {
+			long now = System.currentTimeMillis();
+			if (!task.isDone() || now - lastChecked < getReloadCheckIntervalMillis()) {
+				return false;
+			}
+
+			lastChecked = now;
+			File templateFile = getTemplateFile();
+			return !templateFile.equals(file) || templateFile.lastModified() != lastModified;
+		}
+
 	}
 
 }
@@ -0,0 +1,252 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package org.wahlzeit.model;
+
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.wahlzeit.services.Persistent;
+import org.wahlzeit.testEnvironmentProvider.LocalDatastoreServiceTestConfigProvider;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for {@link ClientManager}, mostly about concurrent use.
+ */
+public class ClientManagerTest {
+
+	@ClassRule
+	public static LocalDatastoreServiceTestConfigProvider datastore = new LocalDatastoreServiceTestConfigProvider();
+
+	protected static final int THREADS = 8;
+	protected static final int ITERATIONS = 500;
+	protected static final int SHARED_NICKNAMES = 5;
+
+	private ClientManager clientManager;
+	private AtomicInteger writes;
+
+	@Before
+	public void initClientManager() {
+		writes = new AtomicInteger(0);
+		clientManager = new ClientManager() {
+			@Override
+			protected void writeObject(Persistent object) {
+				writes.incrementAndGet();
+			}
+
+			@Override
+			protected void updateObject(Persistent object) {
+				writes.incrementAndGet();
+			}
+
+			@Override
+			protected <E> void deleteObject(E object) {
+				// nothing to persist in this test
+			}
+		};
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testNicknamesAreReleasedOnDeleteAndChange() {
+		Client client = new TestClient("id1", "alice");
+		clientManager.addClient(client);
+		assertTrue(clientManager.isNicknameUsed("alice"));
+
+		clientManager.changeNickname("alice", "bob");
+		client.nickName = "bob";
+		assertFalse(clientManager.isNicknameUsed("alice"));
+
+		clientManager.addHttpSessionIdToClientMapping("session1", client);
+		clientManager.deleteClient(client);
+		assertFalse(clientManager.isNicknameUsed("bob"));
+		assertNull(clientManager.getClientByHttpSessionId("session1"));
+	}
+
+	/**
+	 *
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testDuplicateNicknameIsRejected() {
+		clientManager.addClient(new TestClient("id1", "alice"));
+		clientManager.addClient(new TestClient("id2", "alice"));
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testEphemeralClientIsOnlyWrittenWhenPersisted() {
+		Client guest = new TestClient("guest#1", "guest#1");
+		guest.setEphemeral(true);
+
+		clientManager.addClient(guest);
+		clientManager.addHttpSessionIdToClientMapping("session1", guest);
+		clientManager.saveClients();
+		assertEquals(0, writes.get());
+
+		clientManager.persistClient(guest);
+		clientManager.persistClient(guest);
+		assertFalse(guest.isEphemeral());
+		assertEquals(1, writes.get());
+
+		clientManager.saveClient(guest);
+		assertEquals(2, writes.get());
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testDeletingPreviousClientKeepsSessionMapping() {
+		Client guest = new TestClient("guest#1", "guest#1");
+		Client user = new TestClient("id1", "alice");
+		clientManager.addClient(guest);
+		clientManager.addClient(user);
+
+		clientManager.addHttpSessionIdToClientMapping("session1", guest);
+		clientManager.addHttpSessionIdToClientMapping("session1", user);
+		assertSame(user, clientManager.getClientByHttpSessionId("session1"));
+
+		clientManager.deleteClient(guest);
+		assertSame(user, clientManager.getClientByHttpSessionId("session1"));
+		assertEquals("session1", user.getHttpSessionId());
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testLoadedClientIsAddedOnce() {
+		Client first = new TestClient("id1", "alice");
+		Client second = new TestClient("id1", "alice");
+
+		assertSame(first, clientManager.doAddClient(first));
+		assertSame(first, clientManager.doAddClient(second));
+		assertSame(first, clientManager.getClientById("id1"));
+		assertTrue(clientManager.isNicknameUsed("alice"));
+
+		clientManager.deleteClient(first);
+		assertFalse(clientManager.isNicknameUsed("alice"));
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testConcurrentAddChangeAndDelete() throws InterruptedException {
+		final ConcurrentMap<String, Client> nicknameHolders = new ConcurrentHashMap<String, Client>();
+		final List<Throwable> failures = new CopyOnWriteArrayList<Throwable>();
+
+		Thread[] threads = new Thread[THREADS];
+		for (int t = 0; t < threads.length; t++) {
+			final int thread = t;
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						for (int i = 0; i < ITERATIONS; i++) {
+							runIteration(thread, i, nicknameHolders);
+						}
+					} catch (Throwable e) {
+						failures.add(e);
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		assertEquals(Collections.emptyList(), failures);
+		assertTrue(nicknameHolders.isEmpty());
+		assertTrue(clientManager.idClientMap.isEmpty());
+		assertTrue(clientManager.httpSessionIdToClientMap.isEmpty());
+		assertTrue(clientManager.usedNicknames.isEmpty());
+	}
+
+	/**
+	 * Adds a client under a nickname all threads compete for, renames it to one of a few shared nicknames if free,
+	 * and deletes it again. nicknameHolders tracks who holds which nickname, so two clients granted the same
+	 * nickname at the same time are detected.
+	 */
+	protected void runIteration(int thread, int i, ConcurrentMap<String, Client> nicknameHolders) {
+		String clientId = "client-" + thread + "-" + i;
+		Client client = new TestClient(clientId, "contended-" + (i % SHARED_NICKNAMES));
+		try {
+			clientManager.addClient(client);
+		} catch (IllegalArgumentException e) {
+			client = new TestClient(clientId, "own-" + clientId);
+			clientManager.addClient(client);
+		}
+		claimNickname(nicknameHolders, client.getNickName(), client);
+		clientManager.addHttpSessionIdToClientMapping("session-" + clientId, client);
+
+		String oldNickname = client.getNickName();
+		String sharedNickname = "shared-" + (i % SHARED_NICKNAMES);
+		nicknameHolders.remove(oldNickname, client);
+		try {
+			clientManager.changeNickname(oldNickname, sharedNickname);
+			claimNickname(nicknameHolders, sharedNickname, client);
+			client.nickName = sharedNickname;
+		} catch (IllegalArgumentException e) {
+			// held by another thread right now
+			claimNickname(nicknameHolders, oldNickname, client);
+		}
+
+		nicknameHolders.remove(client.getNickName(), client);
+		clientManager.deleteClient(client);
+	}
+
+	/**
+	 *
+	 */
+	protected void claimNickname(ConcurrentMap<String, Client> nicknameHolders, String nickName, Client client) {
+		if (nicknameHolders.putIfAbsent(nickName, client) != null) {
+			throw new AssertionError(nickName + " was given to two clients");
+		}
+	}
+
+	/**
+	 * A client that does not register itself with the UserManager.
+	 */
+	protected static class TestClient extends Client {
+
+		protected TestClient(String id, String nickName) {
+			this.id = id;
+			this.nickName = nickName;
+		}
+	}
+
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package org.wahlzeit.model;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test class for {@link IdBlockAllocator}.
+ */
+public class IdBlockAllocatorTest {
+
+	/**
+	 *
+	 */
+	@Test
+	public void testCountsLocallyWithoutBlockSource() {
+		IdBlockAllocator allocator = new IdBlockAllocator();
+		assertEquals(1, allocator.nextId());
+		assertEquals(2, allocator.nextId());
+
+		allocator.setLastId(41);
+		assertEquals(42, allocator.nextId());
+		assertEquals(42, allocator.getLastId());
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testAllocatorsSharingBlockSourceHandOutUniqueIds() throws InterruptedException {
+		final AtomicLong lastReserved = new AtomicLong(0);
+		final AtomicInteger reservations = new AtomicInteger(0);
+		IdBlockAllocator.BlockSource source = new IdBlockAllocator.BlockSource() {
+			@Override
+			public long reserveBlock(int count) {
+				reservations.incrementAndGet();
+				return lastReserved.getAndAdd(count) + 1;
+			}
+		};
+
+		final IdBlockAllocator[] allocators = {new IdBlockAllocator(), new IdBlockAllocator()};
+		for (IdBlockAllocator allocator : allocators) {
+			allocator.setBlockSource(source, 10);
+		}
+
+		final Set<Long> ids = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+		Thread[] threads = new Thread[8];
+		for (int i = 0; i < threads.length; i++) {
+			final IdBlockAllocator allocator = allocators[i % allocators.length];
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					for (int j = 0; j < 1000; j++) {
+						ids.add(allocator.nextId());
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		assertEquals(8000, ids.size());
+		assertEquals(800, reservations.get());
+	}
+
+}
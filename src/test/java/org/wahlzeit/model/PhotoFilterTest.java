@@ -22,7 +22,17 @@ package org.wahlzeit.model;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
@@ -47,7 +57,8 @@ public class PhotoFilterTest {
 		assertEquals(Tags.EMPTY_TAGS, photoFilter.tags);
 
 		assertEquals(0, photoFilter.processedPhotoIds.size());
-		assertEquals(0, photoFilter.displayablePhotoIds.size());
+		assertEquals(0, photoFilter.displayableCursor);
+		assertEquals(PhotoFilter.INVALID_VERSION, photoFilter.displayablePhotosVersion);
 	}
 
 	/**
@@ -70,18 +81,167 @@ public class PhotoFilterTest {
 		photoFilter.setTags(new Tags("test"));
 		assertEquals("test", photoFilter.getTags().asString());
 
-		photoFilter.displayablePhotoIds.add(new PhotoId(3));
-		assertTrue(photoFilter.displayablePhotoIds.size() == 1);
+		photoFilter.displayableCursor = 1;
+		photoFilter.displayablePhotosVersion = 0;
 
-		photoFilter.processedPhotoIds.add(new PhotoId(2));
+		photoFilter.processedPhotoIds.add(new PhotoId(2).asInt());
 		assertTrue(photoFilter.processedPhotoIds.size() == 1);
 
 		photoFilter.clear();
 
 		assertEquals("", photoFilter.getUserName());
 		assertEquals(Tags.EMPTY_TAGS, photoFilter.getTags());
-		assertTrue(photoFilter.displayablePhotoIds.isEmpty());
+		assertEquals(0, photoFilter.displayableCursor);
+		assertEquals(PhotoFilter.INVALID_VERSION, photoFilter.displayablePhotosVersion);
 		assertTrue(photoFilter.processedPhotoIds.isEmpty());
 	}
 
+	/**
+	 *
+	 */
+	@Test
+	public void testOnlySeedAndCursorAreSerialized() throws IOException, ClassNotFoundException {
+		photoFilter.displayableCursor = 1;
+		photoFilter.displayableSeed = 42;
+		photoFilter.displayablePhotosVersion = 7;
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(photoFilter);
+		out.close();
+
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+		PhotoFilter copy = (PhotoFilter) in.readObject();
+
+		assertEquals(1, copy.displayableCursor);
+		assertEquals(42, copy.displayableSeed);
+		assertEquals(7, copy.displayablePhotosVersion);
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testCursorAdvancesWithoutRebuilding() {
+		TestPhotoManager photoManager = createPhotoManager(10);
+		PhotoFilter filter = createPhotoFilter(photoManager);
+
+		Set<PhotoId> shown = new HashSet<PhotoId>();
+		for (int i = 0; i < 10; i++) {
+			PhotoId photoId = filter.getNextDisplayablePhotoId();
+			assertTrue(shown.add(photoId));
+			filter.addProcessedPhoto(photoManager.getPhotoFromId(photoId));
+		}
+
+		assertEquals(1, photoManager.candidateComputations);
+		assertEquals(10, filter.displayableCursor);
+		assertEquals(PhotoId.NULL_ID, filter.getNextDisplayablePhotoId());
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testProcessedSkippedAndHiddenPhotosArePassedOver() {
+		TestPhotoManager photoManager = createPhotoManager(4);
+		PhotoFilter filter = createPhotoFilter(photoManager);
+		filter.addProcessedPhoto(photoManager.getPhotoFromId(new PhotoId(1)));
+		filter.addSkippedPhotoId(new PhotoId(2));
+		photoManager.getPhotoFromId(new PhotoId(3)).setStatus(PhotoStatus.MODERATED);
+
+		assertEquals(new PhotoId(4), filter.getNextDisplayablePhotoId());
+		filter.addProcessedPhoto(photoManager.getPhotoFromId(new PhotoId(4)));
+
+		// only the skipped photo is left, so it is shown again
+		assertEquals(new PhotoId(2), filter.getNextDisplayablePhotoId());
+		assertTrue(filter.isDisplayingSkippedPhotos);
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testVersionBumpInvalidatesCursor() {
+		TestPhotoManager photoManager = createPhotoManager(10);
+		PhotoFilter filter = createPhotoFilter(photoManager);
+		filter.getNextDisplayablePhotoId();
+		filter.getNextDisplayablePhotoId();
+		assertTrue(filter.hasCurrentDisplayablePhotoIds());
+
+		photoManager.photosVersion.incrementAndGet();
+		assertFalse(filter.hasCurrentDisplayablePhotoIds());
+
+		filter.getNextDisplayablePhotoId();
+		assertTrue(filter.hasCurrentDisplayablePhotoIds());
+		assertEquals(1, filter.displayableCursor);
+		assertEquals(2, photoManager.candidateComputations);
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testFilterChangesInvalidateCursor() {
+		TestPhotoManager photoManager = createPhotoManager(10);
+		PhotoFilter filter = createPhotoFilter(photoManager);
+		filter.getNextDisplayablePhotoId();
+		assertTrue(filter.hasCurrentDisplayablePhotoIds());
+
+		filter.setTags(new Tags("odd"));
+		assertFalse(filter.hasCurrentDisplayablePhotoIds());
+		assertEquals(0, filter.displayableCursor);
+		for (int i = 0; i < 5; i++) {
+			PhotoId photoId = filter.getNextDisplayablePhotoId();
+			assertEquals(1, photoId.asInt() % 2);
+			filter.addProcessedPhoto(photoManager.getPhotoFromId(photoId));
+		}
+		assertEquals(PhotoId.NULL_ID, filter.getNextDisplayablePhotoId());
+
+		filter.setUserName("someone");
+		assertFalse(filter.hasCurrentDisplayablePhotoIds());
+		assertEquals(0, filter.displayableCursor);
+	}
+
+	/**
+	 * Creates a PhotoManager with photos 1..count; the odd ones are tagged "odd".
+	 */
+	protected TestPhotoManager createPhotoManager(int count) {
+		TestPhotoManager result = new TestPhotoManager();
+		for (int i = 1; i <= count; i++) {
+			Photo photo = new Photo(new PhotoId(i));
+			photo.setStatus(PhotoStatus.VISIBLE);
+			if (i % 2 == 1) {
+				photo.setTags(new Tags("odd"));
+			}
+			result.doAddPhoto(photo);
+		}
+		return result;
+	}
+
+	/**
+	 *
+	 */
+	protected PhotoFilter createPhotoFilter(final PhotoManager photoManager) {
+		return new PhotoFilter() {
+			@Override
+			protected PhotoManager getPhotoManager() {
+				return photoManager;
+			}
+		};
+	}
+
+	/**
+	 * Counts how often the candidate photo ids are computed.
+	 */
+	protected static class TestPhotoManager extends PhotoManager {
+
+		protected int candidateComputations = 0;
+
+		@Override
+		protected int[] doGetCandidatePhotoIds(Collection<String> conditions) {
+			candidateComputations++;
+			return super.doGetCandidatePhotoIds(conditions);
+		}
+	}
+
 }
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package org.wahlzeit.model;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Test class for {@link PhotoId} and {@link PhotoIdTable}.
+ */
+public class PhotoIdTest {
+
+	/**
+	 *
+	 */
+	@Test
+	public void testStringConversion() {
+		for (int id : new int[] {1, 35, 36, 1000, 123456789, Integer.MAX_VALUE - PhotoId.ID_START}) {
+			assertEquals(id, PhotoId.getFromString(PhotoId.getFromInt(id)));
+		}
+
+		assertEquals(0, PhotoId.getFromString(null));
+		assertEquals(0, PhotoId.getFromString("x"));
+		assertEquals(0, PhotoId.getFromString("x1A"));
+		assertEquals(0, PhotoId.getFromString("x1-2"));
+		assertEquals(0, PhotoId.getFromString("xzzzzzzzzzz"));
+		assertSame(PhotoId.NULL_ID, PhotoId.getIdFromString("x!"));
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testUnknownIdsAreNotInterned() {
+		int unknownId = PhotoId.getCurrentIdAsInt() + 1000000;
+		PhotoId photoId = PhotoId.getIdFromInt(unknownId);
+
+		assertEquals(unknownId, photoId.asInt());
+		assertNotSame(photoId, PhotoId.getIdFromInt(unknownId));
+		assertEquals(photoId, PhotoId.getIdFromInt(unknownId));
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testTableAllocatesOnlyTouchedSegments() {
+		PhotoIdTable table = new PhotoIdTable();
+		PhotoId first = table.getOrCreate(5);
+		PhotoId last = table.getOrCreate(Integer.MAX_VALUE);
+
+		assertSame(first, table.getOrCreate(5));
+		assertSame(last, table.get(Integer.MAX_VALUE));
+		assertNull(table.get(PhotoIdTable.SEGMENT_SIZE));
+		assertNull(table.directory.get(1));
+		assertNull(table.directory.get(0).get(1));
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testConcurrentInterning() throws InterruptedException {
+		final PhotoIdTable table = new PhotoIdTable();
+		final AtomicReferenceArray<PhotoId> seen = new AtomicReferenceArray<PhotoId>(5000);
+		final boolean[] failed = new boolean[1];
+		Thread[] threads = new Thread[8];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					for (int id = 0; id < seen.length(); id++) {
+						PhotoId photoId = table.getOrCreate(id);
+						if (!seen.compareAndSet(id, null, photoId) && seen.get(id) != photoId) {
+							failed[0] = true;
+						}
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		assertFalse(failed[0]);
+	}
+
+}
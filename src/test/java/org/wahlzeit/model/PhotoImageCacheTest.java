@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package org.wahlzeit.model;
+
+import com.google.appengine.api.images.Image;
+import com.google.appengine.api.images.ImagesServiceFactory;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for {@link PhotoImageCache}.
+ */
+public class PhotoImageCacheTest {
+
+	private PhotoImageCache cache;
+
+	@Before
+	public void initCache() {
+		// a single segment, so that the LRU order is global
+		cache = new PhotoImageCache(250, 1);
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testEvictsLeastRecentlyUsed() {
+		cache.put(new PhotoId(1), PhotoSize.THUMB, createImage(100));
+		cache.put(new PhotoId(2), PhotoSize.THUMB, createImage(100));
+		assertNotNull(cache.get(new PhotoId(1), PhotoSize.THUMB));
+
+		cache.put(new PhotoId(3), PhotoSize.THUMB, createImage(100));
+
+		assertNull(cache.get(new PhotoId(2), PhotoSize.THUMB));
+		assertNotNull(cache.get(new PhotoId(1), PhotoSize.THUMB));
+		assertNotNull(cache.get(new PhotoId(3), PhotoSize.THUMB));
+		assertEquals(200, cache.getWeight());
+		assertEquals(1, cache.getEvictions());
+		assertEquals(3, cache.getHits());
+		assertEquals(1, cache.getMisses());
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testSizesAreCachedSeparately() {
+		cache.put(new PhotoId(1), PhotoSize.THUMB, createImage(10));
+		cache.put(new PhotoId(1), PhotoSize.SMALL, createImage(20));
+		cache.put(new PhotoId(1), PhotoSize.SMALL, createImage(30));
+
+		assertEquals(2, cache.getSize());
+		assertEquals(40, cache.getWeight());
+
+		cache.remove(new PhotoId(1), PhotoSize.THUMB);
+		assertNull(cache.get(new PhotoId(1), PhotoSize.THUMB));
+		assertEquals(30, cache.getWeight());
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testShrinkingMaxWeightEvicts() {
+		cache.put(new PhotoId(1), PhotoSize.THUMB, createImage(100));
+		cache.put(new PhotoId(2), PhotoSize.THUMB, createImage(100));
+		cache.put(new PhotoId(3), PhotoSize.THUMB, createImage(300));
+		assertEquals(2, cache.getSize());
+
+		cache.setMaxWeight(150);
+		assertEquals(1, cache.getSize());
+		assertNotNull(cache.get(new PhotoId(2), PhotoSize.THUMB));
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testSegmentsShareMaxWeight() {
+		PhotoImageCache segmentedCache = new PhotoImageCache(400, 4);
+		segmentedCache.put(new PhotoId(1), PhotoSize.THUMB, createImage(150));
+		assertNull(segmentedCache.get(new PhotoId(1), PhotoSize.THUMB));
+
+		for (int i = 1; i <= 100; i++) {
+			segmentedCache.put(new PhotoId(i), PhotoSize.THUMB, createImage(10));
+		}
+		assertEquals(400, segmentedCache.getMaxWeight());
+		assertTrue(segmentedCache.getWeight() <= 400);
+		assertEquals(segmentedCache.getWeight(), 10 * segmentedCache.getSize());
+		assertEquals(100 - segmentedCache.getSize(), segmentedCache.getEvictions());
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testConcurrentAccess() throws InterruptedException {
+		final PhotoImageCache concurrentCache = new PhotoImageCache(16 * 1000);
+		final Image image = createImage(100);
+		Thread[] threads = new Thread[8];
+		for (int t = 0; t < threads.length; t++) {
+			final int offset = t * 1000;
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					for (int i = 0; i < 1000; i++) {
+						PhotoId photoId = new PhotoId(offset + i);
+						concurrentCache.put(photoId, PhotoSize.THUMB, image);
+						concurrentCache.get(photoId, PhotoSize.THUMB);
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		assertTrue(concurrentCache.getWeight() <= 16 * 1000);
+		assertEquals(concurrentCache.getWeight(), 100 * concurrentCache.getSize());
+		assertEquals(8000, concurrentCache.getHits() + concurrentCache.getMisses());
+		assertEquals(8000 - concurrentCache.getSize(), concurrentCache.getEvictions());
+	}
+
+	/**
+	 *
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testSegmentCountMustBePowerOfTwo() {
+		new PhotoImageCache(250, 3);
+	}
+
+	private Image createImage(int length) {
+		return ImagesServiceFactory.makeImage(new byte[length]);
+	}
+
+}
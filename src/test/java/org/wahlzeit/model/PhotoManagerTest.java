@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.model;
+
+import com.google.appengine.api.images.Image;
+import com.google.appengine.api.images.ImagesServiceFactory;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.RuleChain;
+import org.wahlzeit.services.Persistent;
+import org.wahlzeit.services.SysConfig;
+import org.wahlzeit.testEnvironmentProvider.LocalDatastoreServiceTestConfigProvider;
+import org.wahlzeit.testEnvironmentProvider.RegisteredOfyEnvironmentProvider;
+import org.wahlzeit.testEnvironmentProvider.SysConfigProvider;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for {@link PhotoManager}, with the datastore and the ImageStorage replaced by in-memory hooks.
+ */
+public class PhotoManagerTest {
+
+	@ClassRule
+	public static RuleChain ruleChain = RuleChain.
+			outerRule(new LocalDatastoreServiceTestConfigProvider()).
+			around(new RegisteredOfyEnvironmentProvider()).
+			around(new SysConfigProvider());
+
+	private List<Photo> storedPhotos;
+	private List<PhotoSize> loadedImages;
+	private List<PhotoId> loadedScaledImages;
+	private List<Tag> storedTags;
+	private List<List<String>> deletedTagBatches;
+	private List<List<String>> writtenTagBatches;
+	private PhotoManager photoManager;
+
+	@Before
+	public void initPhotoManager() {
+		storedPhotos = new ArrayList<Photo>();
+		loadedImages = new ArrayList<PhotoSize>();
+		loadedScaledImages = new ArrayList<PhotoId>();
+		storedTags = new ArrayList<Tag>();
+		deletedTagBatches = new ArrayList<List<String>>();
+		writtenTagBatches = new ArrayList<List<String>>();
+		photoManager = new PhotoManager() {
+			@Override
+			protected <E> void readObjects(Collection<E> result, Class<E> type) {
+				for (Photo photo : storedPhotos) {
+					result.add(type.cast(photo));
+				}
+			}
+
+			@Override
+			protected <E> void readObjects(Collection<E> result, Class<E> type, String propertyName, Object value) {
+				for (Tag tag : storedTags) {
+					if (tag.getPhotoId().equals(value)) {
+						result.add(type.cast(tag));
+					}
+				}
+			}
+
+			@Override
+			protected <E> void deleteObjects(Collection<E> objects) {
+				deletedTagBatches.add(asTexts(objects));
+			}
+
+			@Override
+			protected void writeObjects(Collection<? extends Persistent> objects) {
+				writtenTagBatches.add(asTexts(objects));
+			}
+
+			@Override
+			protected void loadScaledImages(Photo photo) {
+				loadedScaledImages.add(photo.getId());
+			}
+
+			@Override
+			protected Image loadImage(PhotoId id, PhotoSize photoSize) {
+				loadedImages.add(photoSize);
+				return ImagesServiceFactory.makeImage(new byte[10]);
+			}
+		};
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testLoadPhotosReadsNoImagesByDefault() {
+		storedPhotos.add(new Photo(new PhotoId(1)));
+		storedPhotos.add(new Photo(new PhotoId(2)));
+
+		photoManager.loadPhotos();
+
+		assertTrue(photoManager.doHasPhoto(new PhotoId(1)));
+		assertTrue(photoManager.doHasPhoto(new PhotoId(2)));
+		assertTrue(loadedScaledImages.isEmpty());
+		assertTrue(loadedImages.isEmpty());
+		assertEquals(0, photoManager.getImageCache().getSize());
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testLoadPhotosReadsImagesIfConfigured() {
+		storedPhotos.add(new Photo(new PhotoId(1)));
+		SysConfig.getInstance().setValue(SysConfig.LOAD_IMAGES_ON_STARTUP, String.valueOf(true));
+		try {
+			photoManager.loadPhotos();
+		} finally {
+			SysConfig.getInstance().setValue(SysConfig.LOAD_IMAGES_ON_STARTUP, String.valueOf(false));
+		}
+
+		assertEquals(1, loadedScaledImages.size());
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testWarmUpOnlyLoadsThumbnails() {
+		for (int i = 1; i <= 3; i++) {
+			photoManager.doAddPhoto(new Photo(new PhotoId(i)));
+		}
+
+		photoManager.warmUpImages(PhotoSize.THUMB);
+
+		assertEquals(3, loadedImages.size());
+		for (PhotoSize photoSize : loadedImages) {
+			assertEquals(PhotoSize.THUMB, photoSize);
+		}
+		assertEquals(3, photoManager.getImageCache().getSize());
+		for (int i = 1; i <= 3; i++) {
+			assertNotNull(photoManager.getImageCache().get(new PhotoId(i), PhotoSize.THUMB));
+			assertNull(photoManager.getImageCache().get(new PhotoId(i), PhotoSize.SMALL));
+		}
+
+		// a second warm-up finds all thumbnails in the cache
+		photoManager.warmUpImages(PhotoSize.THUMB);
+		assertEquals(3, loadedImages.size());
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testUpdateTagsOnlyWritesTheDifference() {
+		Photo photo = new Photo(new PhotoId(1));
+		photo.setTags(new Tags("red, green"));
+		String photoId = photo.getId().asString();
+		storedTags.add(new Tag("tg:red", photoId));
+		storedTags.add(new Tag("tg:green", photoId));
+
+		photo.setTags(new Tags("red, blue"));
+		photoManager.updateTags(photo);
+
+		assertEquals(1, deletedTagBatches.size());
+		assertEquals(Arrays.asList("tg:green"), deletedTagBatches.get(0));
+		assertEquals(1, writtenTagBatches.size());
+		assertEquals(Arrays.asList("tg:blue"), writtenTagBatches.get(0));
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testUpdateTagsWritesNothingForUnchangedTags() {
+		Photo photo = new Photo(new PhotoId(1));
+		photo.setTags(new Tags("red, green"));
+		String photoId = photo.getId().asString();
+		storedTags.add(new Tag("tg:red", photoId));
+		storedTags.add(new Tag("tg:green", photoId));
+
+		photoManager.updateTags(photo);
+
+		assertTrue(deletedTagBatches.isEmpty());
+		assertTrue(writtenTagBatches.isEmpty());
+	}
+
+	/**
+	 *
+	 */
+	protected List<String> asTexts(Collection<?> tags) {
+		List<String> result = new ArrayList<String>();
+		for (Object tag : tags) {
+			result.add(((Tag) tag).getText());
+		}
+		Collections.sort(result);
+		return result;
+	}
+
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package org.wahlzeit.model;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.wahlzeit.utils.CompressedBitmap;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for {@link PhotoTagIndex}.
+ */
+public class PhotoTagIndexTest {
+
+	private PhotoTagIndex index;
+
+	@Before
+	public void initIndex() {
+		index = new PhotoTagIndex();
+		index.setConditions(new PhotoId(1), asSet("un:anna", "tg:anna", "tg:boeing"));
+		index.setConditions(new PhotoId(2), asSet("un:bert", "tg:bert", "tg:airbus"));
+		index.setConditions(new PhotoId(3), asSet("un:anna", "tg:anna", "tg:airbus"));
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testMatchingAny() {
+		CompressedBitmap result = index.getPhotoIdsMatchingAny(Arrays.asList("un:bert", "tg:boeing"));
+		assertEquals(2, result.size());
+		assertTrue(result.contains(1));
+		assertTrue(result.contains(2));
+
+		assertTrue(index.getPhotoIdsMatchingAny(Arrays.asList("tg:unknown")).isEmpty());
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testSetConditionsReplacesOldOnes() {
+		index.setConditions(new PhotoId(1), asSet("un:anna", "tg:anna", "tg:cessna"));
+
+		assertTrue(index.getPhotoIdsMatchingAny(Arrays.asList("tg:boeing")).isEmpty());
+		assertTrue(index.getPhotoIdsMatchingAny(Arrays.asList("tg:cessna")).contains(1));
+		assertEquals(asSet("un:anna", "tg:anna", "tg:cessna"), index.getConditions(new PhotoId(1)));
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testSetConditionsReportsChanges() {
+		assertFalse(index.setConditions(new PhotoId(2), index.getConditions(new PhotoId(2))));
+		assertTrue(index.setConditions(new PhotoId(2), asSet("un:bert")));
+		assertTrue(index.setConditions(new PhotoId(7), asSet("tg:new")));
+		assertFalse(index.setConditions(new PhotoId(7), asSet("tg:new")));
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testRemovePhotoId() {
+		index.removePhotoId(new PhotoId(2));
+
+		assertFalse(index.hasPhotoId(new PhotoId(2)));
+		assertTrue(index.getPhotoIdsMatchingAny(Arrays.asList("un:bert")).isEmpty());
+		assertEquals(1, index.getPhotoIdsMatchingAny(Arrays.asList("tg:airbus")).size());
+	}
+
+	private Set<String> asSet(String... conditions) {
+		return new HashSet<String>(Arrays.asList(conditions));
+	}
+
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package org.wahlzeit.model;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.wahlzeit.services.Language;
+
+import javax.servlet.http.HttpSession;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test class for the buffering of HttpSession attributes in {@link UserSession}.
+ */
+public class UserSessionTest {
+
+	private HttpSession httpSession;
+	private UserSession userSession;
+
+	@Before
+	public void initUserSession() {
+		httpSession = mock(HttpSession.class);
+		when(httpSession.getAttribute(UserSession.INITIALIZED)).thenReturn(UserSession.INITIALIZED);
+		when(httpSession.getAttribute(UserSession.HEADING)).thenReturn("heading");
+		userSession = new UserSession("test", "", httpSession, "en");
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testAttributesAreReadOncePerRequest() {
+		assertEquals("heading", userSession.getHeading());
+		assertEquals("heading", userSession.getHeading());
+
+		verify(httpSession, times(1)).getAttribute(UserSession.HEADING);
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testOnlyChangedAttributesAreWrittenBack() {
+		userSession.setHeading("heading");
+		userSession.addProcessingTime(10);
+		userSession.clearSavedArgs();
+		assertFalse(userSession.hasChangedAttributes());
+
+		userSession.setSavedArg("key", "value");
+		userSession.setSavedArg("other", "value");
+		userSession.setHeading("new heading");
+		assertTrue(userSession.hasChangedAttributes());
+
+		userSession.writeBack();
+		userSession.writeBack();
+
+		verify(httpSession, times(1)).setAttribute(UserSession.HEADING, "new heading");
+		verify(httpSession, times(2)).setAttribute(anyString(), any());
+		verify(httpSession, times(1)).setAttribute(UserSession.SAVED_ARGS, userSession.getSavedArgs());
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testClearedSavedArgsAreRemoved() {
+		userSession.setSavedArg("key", "value");
+		userSession.clearSavedArgs();
+		userSession.writeBack();
+
+		verify(httpSession, never()).setAttribute(anyString(), any());
+		verify(httpSession, times(1)).removeAttribute(UserSession.SAVED_ARGS);
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testChangedPhotoFilterIsWrittenBack() {
+		PhotoFilter filter = new PhotoFilter();
+		when(httpSession.getAttribute(UserSession.PHOTO_FILTER)).thenReturn(filter);
+
+		userSession.getPhotoFilter();
+		assertFalse(userSession.hasChangedAttributes());
+
+		userSession.getPhotoFilterForChange().setUserName("someone");
+		userSession.writeBack();
+
+		verify(httpSession, times(1)).setAttribute(UserSession.PHOTO_FILTER, filter);
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testClientIsLookedUpOncePerRequest() {
+		Client client = mock(Client.class);
+		UserManager userManager = mock(UserManager.class);
+		when(userManager.getClientById("client")).thenReturn(client);
+		when(httpSession.getAttribute(UserSession.CLIENT_ID)).thenReturn("client");
+
+		UserManager previousInstance = UserManager.instance;
+		UserManager.instance = userManager;
+		try {
+			assertSame(client, userSession.getClient());
+			assertSame(client, userSession.getClient());
+			userSession.getLanguageConfiguration();
+		} finally {
+			UserManager.instance = previousInstance;
+		}
+
+		verify(userManager, times(1)).getClientById("client");
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testLanguageConfigurationFollowsLanguageChange() {
+		ModelConfig englishConfiguration = mock(ModelConfig.class);
+		ModelConfig germanConfiguration = mock(ModelConfig.class);
+		Client client = mock(Client.class);
+		when(client.getLanguage()).thenReturn(Language.ENGLISH);
+		when(client.getLanguageConfiguration()).thenReturn(englishConfiguration);
+		userSession.client = client;
+
+		assertSame(englishConfiguration, userSession.getLanguageConfiguration());
+		assertSame(englishConfiguration, userSession.getLanguageConfiguration());
+		verify(client, times(1)).getLanguageConfiguration();
+
+		when(client.getLanguage()).thenReturn(Language.GERMAN);
+		when(client.getLanguageConfiguration()).thenReturn(germanConfiguration);
+		assertSame(germanConfiguration, userSession.getLanguageConfiguration());
+		verify(client, times(2)).getLanguageConfiguration();
+	}
+
+}
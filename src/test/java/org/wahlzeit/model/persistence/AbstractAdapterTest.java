@@ -9,7 +9,12 @@ import org.junit.Test;
 import java.io.IOException;
 import java.io.Serializable;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
 
 /**
@@ -128,4 +133,59 @@ public abstract class AbstractAdapterTest {
 		exists = imageStorage.doesImageExist("wrong file name", 1);
 		assert !exists;
 	}
+
+	@Test
+	public void testExistenceCache() {
+		try {
+			imageStorage.writeImage(smallTestImage, "cached", 1);
+		} catch (IOException e) {
+			fail("IOException should not be thrown!");
+		}
+
+		long hits = imageStorage.getExistenceCacheHits();
+		long misses = imageStorage.getExistenceCacheMisses();
+
+		assert imageStorage.doesImageExist("cached", 1);
+		assert !imageStorage.doesImageExist("cached", 2);
+		assert !imageStorage.doesImageExist("cached", 2);
+
+		assertEquals(hits + 2, imageStorage.getExistenceCacheHits());
+		assertEquals(misses + 1, imageStorage.getExistenceCacheMisses());
+	}
+
+	@Test
+	public void testBatchOperations() {
+		Map<Integer, Image> images = new HashMap<Integer, Image>();
+		images.put(0, smallTestImage);
+		images.put(2, smallTestImage);
+
+		Map<Integer, Serializable> result = null;
+		try {
+			assertEquals(images.keySet(), imageStorage.writeImages(images, "batch"));
+			result = imageStorage.readImages("batch");
+		} catch (IOException e) {
+			fail("IOException should not be thrown!");
+		}
+
+		assertEquals(images.keySet(), result.keySet());
+		assert result.get(0) instanceof Image;
+
+		Set<ImageKey> existing = imageStorage.getExistingImages(Arrays.asList(
+				new ImageKey("batch", 0), new ImageKey("batch", 1), new ImageKey("nobatch", 2)));
+		assertEquals(1, existing.size());
+		assert existing.contains(new ImageKey("batch", 0));
+	}
+
+	@Test
+	public void testReadImageHasWrittenLength() {
+		Serializable image = null;
+		try {
+			imageStorage.writeImage(smallTestImage, "length", 1);
+			image = imageStorage.readImage("length", 1);
+		} catch (IOException e) {
+			fail("IOException should not be thrown!");
+		}
+
+		assertEquals(smallTestImage.getImageData().length, ((Image) image).getImageData().length);
+	}
 }
@@ -14,6 +14,7 @@ import java.io.PrintWriter;
 import java.io.StringWriter;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.wahlzeit.services.LogBuilder.ACTION;
@@ -173,4 +174,61 @@ public class LogBuilderTest {
 		expectedLogMessage = expectedLogMessage + INFO_SEPARATOR + ACTION + NAME_VALUE_SEPARATOR + null;
 		assertEquals(expectedLogMessage, logMessage);
 	}
+
+	@Test
+	public void testJsonFormat() {
+		LogBuilder.setFormat(LogBuilder.Format.JSON);
+		try {
+			String logMessage = LogBuilder.createSystemMessage().addAction("upload").
+					addParameter("photo id", "x1abc").addParameter("size", 2).addParameter("public", true).
+					addParameter("caption", "a \"quote\"\nand a line").toString();
+			String expectedLogMessage = "{\"level\":\"" + SYSTEM_LEVEL + "\"," +
+					"\"session\":\"" + UserSessionProvider.USER_SESSION_NAME + "\"," +
+					"\"client\":\"" + SessionManager.getThreadLocalSession().getClientId() + "\"," +
+					"\"action\":\"upload\"," +
+					"\"parameters\":{\"photo id\":\"x1abc\",\"size\":2,\"public\":true," +
+					"\"caption\":\"a \\\"quote\\\"\\nand a line\"}}";
+			assertEquals(expectedLogMessage, logMessage);
+		} finally {
+			LogBuilder.setFormat(LogBuilder.Format.TEXT);
+		}
+	}
+
+	@Test
+	public void testJsonException() {
+		LogBuilder.setFormat(LogBuilder.Format.JSON);
+		try {
+			Exception exception = new IllegalStateException("outer", new NullPointerException("sorry"));
+			String logMessage = LogBuilder.createSystemMessage().addException("because I can", exception).toString();
+			assertTrue(logMessage.contains("\"exception\":{\"reason\":\"because I can\"," +
+					"\"type\":\"java.lang.IllegalStateException\",\"message\":\"outer\",\"stacktrace\":[\"" +
+					exception.getStackTrace()[0].toString() + "\""));
+			assertTrue(logMessage.contains("\"cause\":{\"type\":\"java.lang.NullPointerException\"," +
+					"\"message\":\"sorry\""));
+			assertFalse(logMessage.contains("\n"));
+			assertTrue(logMessage.endsWith("}}}"));
+		} finally {
+			LogBuilder.setFormat(LogBuilder.Format.TEXT);
+		}
+	}
+
+	@Test
+	public void testJsonFormatIsIndependentOfNestedRecords() {
+		LogBuilder.setFormat(LogBuilder.Format.JSON);
+		try {
+			final LogBuilder inner = LogBuilder.createSystemMessage().addMessage("inner");
+			Object value = new Object() {
+				@Override
+				public String toString() {
+					return inner.toString();
+				}
+			};
+			String logMessage = LogBuilder.createSystemMessage().addParameter("nested", value).toString();
+			assertTrue(logMessage.startsWith("{\"level\""));
+			assertTrue(logMessage.contains("\"nested\":\"{\\\"level\\\""));
+			assertEquals(logMessage, LogBuilder.createSystemMessage().addParameter("nested", value).toString());
+		} finally {
+			LogBuilder.setFormat(LogBuilder.Format.TEXT);
+		}
+	}
 }
@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.services;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for {@link Log}.
+ */
+public class LogTest {
+
+	protected Logger logger;
+	protected Log log;
+	protected List<LogRecord> records;
+	protected Session previousSession;
+
+	/**
+	 *
+	 */
+	@Before
+	public void setUp() {
+		previousSession = SessionManager.getThreadLocalSession();
+		SessionManager.dropThreadLocalSession();
+
+		records = new ArrayList<LogRecord>();
+		logger = Logger.getLogger(LogTest.class.getName());
+		logger.setUseParentHandlers(false);
+		logger.addHandler(new Handler() {
+			@Override
+			public void publish(LogRecord record) {
+				records.add(record);
+			}
+
+			@Override
+			public void flush() {
+			}
+
+			@Override
+			public void close() {
+			}
+		});
+		log = new Log(logger);
+	}
+
+	/**
+	 *
+	 */
+	@After
+	public void tearDown() {
+		for (Handler handler : logger.getHandlers()) {
+			logger.removeHandler(handler);
+		}
+		SessionManager.setThreadLocalSession(previousSession);
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testDisabledLevelDoesNotBuildMessage() {
+		logger.setLevel(Level.INFO);
+		final int[] calls = new int[1];
+
+		log.config(new Log.MessageSupplier() {
+			@Override
+			public LogBuilder get() {
+				calls[0]++;
+				return LogBuilder.createSystemMessage();
+			}
+		});
+		log.config("action", "name", "value");
+
+		assertFalse(log.isConfigEnabled());
+		assertEquals(0, calls[0]);
+		assertTrue(records.isEmpty());
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testEnabledLevelLogsLogBuilderFormat() {
+		logger.setLevel(Level.ALL);
+
+		log.config("read image", "photo id", "x1abc", "size", 2);
+		log.info("count", 3L);
+
+		assertEquals(2, records.size());
+		assertEquals(Level.CONFIG, records.get(0).getLevel());
+		assertEquals(LogBuilder.createSystemMessage().addAction("read image").
+				addParameter("photo id", "x1abc").addParameter("size", 2).toString(), records.get(0).getMessage());
+		assertEquals(LogBuilder.createSystemMessage().addParameter("count", 3L).toString(),
+				records.get(1).getMessage());
+		assertEquals(logger.getName(), records.get(1).getSourceClassName());
+	}
+
+}
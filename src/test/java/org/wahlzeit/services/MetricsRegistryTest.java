@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package org.wahlzeit.services;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for {@link MetricsRegistry} and {@link LatencyHistogram}.
+ */
+public class MetricsRegistryTest {
+
+	/**
+	 *
+	 */
+	@Test
+	public void testHistogramPercentiles() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 0; i < 90; i++) {
+			histogram.record(10);
+		}
+		for (int i = 0; i < 10; i++) {
+			histogram.record(1000);
+		}
+
+		assertEquals(100, histogram.getCount());
+		assertEquals(109, histogram.getMeanMicros());
+		assertEquals(1000, histogram.getMaxMicros());
+		assertEquals(15, histogram.getPercentileMicros(50));
+		assertEquals(15, histogram.getPercentileMicros(90));
+		assertEquals(1000, histogram.getPercentileMicros(99));
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testConcurrentRecording() throws InterruptedException {
+		final MetricsRegistry registry = new MetricsRegistry();
+		Thread[] threads = new Thread[8];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					for (int j = 0; j < 10000; j++) {
+						registry.increment("test.counter");
+						registry.getHistogram("test.latency").record(j);
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		assertEquals(80000L, registry.getCounter("test.counter").get());
+		assertEquals(80000L, registry.getHistogram("test.latency").getCount());
+		assertEquals(9999L, registry.getHistogram("test.latency").getMaxMicros());
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testResetKeepsMetrics() {
+		MetricsRegistry registry = new MetricsRegistry();
+		LatencyHistogram histogram = registry.getHistogram("test.latency");
+		registry.recordSince("test.latency", System.nanoTime());
+		registry.increment("test.counter");
+
+		registry.reset();
+
+		assertSame(histogram, registry.getHistogram("test.latency"));
+		assertEquals(0, histogram.getCount());
+		assertTrue(registry.getCounterValues().containsKey("test.counter"));
+		assertEquals(Long.valueOf(0), registry.getCounterValues().get("test.counter"));
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testHandlerMetricNameComesFromClass() {
+		String name = MetricsRegistry.getHandlerMetricName(new StringBuilder("/any/link.html"));
+		assertEquals(MetricsRegistry.HANDLER_PREFIX + "StringBuilder", name);
+		assertSame(name, MetricsRegistry.getHandlerMetricName(new StringBuilder("/other/link.html")));
+	}
+
+}
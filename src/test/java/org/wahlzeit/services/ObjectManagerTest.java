@@ -0,0 +1,237 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.services;
+
+import com.googlecode.objectify.Result;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.wahlzeit.testEnvironmentProvider.LocalDatastoreServiceTestConfigProvider;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Test class for the write-behind queue of {@link ObjectManager}.
+ */
+public class ObjectManagerTest {
+
+	@ClassRule
+	public static LocalDatastoreServiceTestConfigProvider datastore = new LocalDatastoreServiceTestConfigProvider();
+
+	private List<String> events;
+	private int failingBatch;
+	private ObjectManager objectManager;
+
+	@Before
+	public void initObjectManager() {
+		events = new ArrayList<String>();
+		failingBatch = -1;
+		objectManager = new ObjectManager() {
+			private int batches = 0;
+
+			@Override
+			protected int getWriteBatchSize() {
+				return 2;
+			}
+
+			@Override
+			protected Result<?> saveObjects(List<Persistent> batch) {
+				final int batchNo = batches++;
+				events.add("save " + batch);
+				return new Result<Object>() {
+					@Override
+					public Object now() {
+						events.add("wait " + batchNo);
+						if (batchNo == failingBatch) {
+							throw new IllegalStateException("batch " + batchNo + " failed");
+						}
+						return null;
+					}
+				};
+			}
+
+			@Override
+			protected void updateDependents(Persistent object) {
+				events.add("dependents " + object);
+			}
+		};
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testUpdateObjectsOnlyQueues() {
+		objectManager.updateObjects(createObjects("a", "b", "c"));
+
+		assertTrue(events.isEmpty());
+		assertEquals(3, objectManager.pendingWrites.size());
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testCleanAndQueuedObjectsAreNotQueuedTwice() {
+		List<TestObject> objects = createObjects("a", "b");
+		TestObject clean = new TestObject("c");
+		clean.resetWriteCount();
+
+		objectManager.updateObjects(objects);
+		objectManager.updateObjects(objects);
+		objectManager.updateObjects(Arrays.asList(clean));
+		objectManager.flush();
+
+		assertEquals(1, countEvents("save"));
+		assertEquals(2, countEvents("dependents"));
+		assertTrue(objectManager.pendingWrites.isEmpty());
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testFlushWritesInBatches() {
+		List<TestObject> objects = createObjects("a", "b", "c", "d", "e");
+		objectManager.updateObjects(objects);
+		objectManager.flush();
+
+		// all saves are started first, then each batch is waited for before its dependents are updated
+		assertEquals(5, countEvents("dependents"));
+		assertEquals(3, countEvents("save"));
+		for (int i = 0; i < 3; i++) {
+			assertTrue(events.get(i).startsWith("save"));
+		}
+		assertEquals("wait 0", events.get(3));
+		assertTrue(events.get(4).startsWith("dependents"));
+		assertTrue(events.get(5).startsWith("dependents"));
+		assertEquals("wait 1", events.get(6));
+		assertEquals("wait 2", events.get(9));
+
+		for (TestObject object : objects) {
+			assertFalse(object.isDirty());
+		}
+		assertTrue(objectManager.pendingWrites.isEmpty());
+
+		events.clear();
+		objectManager.flush();
+		assertTrue(events.isEmpty());
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testFailedAndUnreachedBatchesAreQueuedAgain() {
+		List<TestObject> objects = createObjects("a", "b", "c", "d", "e");
+		objectManager.updateObjects(objects);
+		failingBatch = 1;
+
+		try {
+			objectManager.flush();
+			fail("expected the failing batch to be reported");
+		} catch (IllegalStateException ex) {
+			// expected
+		}
+
+		assertEquals(2, countEvents("dependents"));
+		assertEquals(3, objectManager.pendingWrites.size());
+		int dirtyObjects = 0;
+		for (TestObject object : objects) {
+			if (object.isDirty()) {
+				dirtyObjects++;
+				assertTrue(objectManager.pendingWrites.contains(object));
+			}
+		}
+		assertEquals(3, dirtyObjects);
+
+		events.clear();
+		failingBatch = -1;
+		objectManager.flush();
+		assertEquals(3, countEvents("dependents"));
+		assertTrue(objectManager.pendingWrites.isEmpty());
+	}
+
+	/**
+	 *
+	 */
+	protected List<TestObject> createObjects(String... names) {
+		List<TestObject> result = new ArrayList<TestObject>();
+		for (String name : names) {
+			result.add(new TestObject(name));
+		}
+		return result;
+	}
+
+	/**
+	 *
+	 */
+	protected int countEvents(String prefix) {
+		int result = 0;
+		for (String event : events) {
+			if (event.startsWith(prefix)) {
+				result++;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 *
+	 */
+	protected static class TestObject implements Persistent {
+
+		protected final String name;
+		protected int writeCount = 1;
+
+		protected TestObject(String name) {
+			this.name = name;
+		}
+
+		@Override
+		public boolean isDirty() {
+			return writeCount != 0;
+		}
+
+		@Override
+		public void incWriteCount() {
+			writeCount++;
+		}
+
+		@Override
+		public void resetWriteCount() {
+			writeCount = 0;
+		}
+
+		@Override
+		public String toString() {
+			return name;
+		}
+	}
+
+}
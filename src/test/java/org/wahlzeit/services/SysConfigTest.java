@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.services;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test class for loading the tunable values of {@link SysConfig}.
+ */
+public class SysConfigTest {
+
+	/**
+	 *
+	 */
+	protected File rootDir;
+
+	/**
+	 *
+	 */
+	@Before
+	public void setUp() {
+		rootDir = Files.createTempDir();
+	}
+
+	/**
+	 *
+	 */
+	@After
+	public void tearDown() {
+		File propertiesFile = new File(new File(rootDir, "config"), SysConfig.PROPERTIES_FILE_NAME);
+		propertiesFile.delete();
+		propertiesFile.getParentFile().delete();
+		rootDir.delete();
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testDefaultsWithoutPropertiesFile() {
+		SysConfig config = new SysConfig(rootDir.getPath());
+		config.loadPropertiesFile();
+
+		assertEquals(String.valueOf(SysConfig.DEFAULT_WRITE_BATCH_SIZE), config.getValue(SysConfig.WRITE_BATCH_SIZE));
+		assertEquals("false", config.getValue(SysConfig.RELOAD_TEMPLATES));
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testPropertiesFileOverridesDefaults() throws IOException {
+		File configDir = new File(rootDir, "config");
+		configDir.mkdirs();
+		Files.write("# comment\nlogFormat = JSON\nwriteBatchSize=250\n",
+				new File(configDir, SysConfig.PROPERTIES_FILE_NAME), Charsets.UTF_8);
+
+		SysConfig config = new SysConfig(rootDir.getPath());
+		config.loadPropertiesFile();
+
+		assertEquals("JSON", config.getValue(SysConfig.LOG_FORMAT));
+		assertEquals("250", config.getValue(SysConfig.WRITE_BATCH_SIZE));
+		assertEquals("false", config.getValue(SysConfig.LOAD_IMAGES_ON_STARTUP));
+	}
+
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.servlets;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.wahlzeit.services.LogBuilder;
+import org.wahlzeit.services.Session;
+import org.wahlzeit.testEnvironmentProvider.Benchmark;
+import org.wahlzeit.webparts.EncodingWriter;
+import org.wahlzeit.webparts.WebPart;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Compares the wire size and render time of AbstractServlet.configureResponse with the unbuffered response it
+ * replaced. Run with "gradle benchmark"; results are logged, not asserted.
+ */
+@Category(Benchmark.class)
+public class ResponseBufferBenchmark {
+
+	private static final Logger log = Logger.getLogger(ResponseBufferBenchmark.class.getName());
+
+	/**
+	 *
+	 */
+	protected static final int WARM_UP_ROUNDS = 500;
+	protected static final int ROUNDS = 2000;
+
+	/**
+	 *
+	 */
+	protected AbstractServlet servlet = new AbstractServlet() {
+	};
+
+	/**
+	 *
+	 */
+	protected ByteCountingOutputStream responseStream = new ByteCountingOutputStream();
+
+	/**
+	 *
+	 */
+	@Test
+	public void benchmarkConfigureResponse() throws IOException {
+		WebPart page = ResponseBufferTest.createPage(100);
+		Session session = mock(Session.class);
+		HttpServletRequest request = mock(HttpServletRequest.class);
+		when(request.getHeader("Accept-Encoding")).thenReturn("gzip, deflate");
+		HttpServletResponse response = mock(HttpServletResponse.class);
+		when(response.getOutputStream()).thenReturn(responseStream);
+
+		for (int i = 0; i < WARM_UP_ROUNDS; i++) {
+			writeUnbuffered(response, page);
+			servlet.configureResponse(session, request, response, page);
+		}
+
+		long start = System.nanoTime();
+		for (int i = 0; i < ROUNDS; i++) {
+			responseStream.count = 0;
+			writeUnbuffered(response, page);
+		}
+		long unbufferedNanos = (System.nanoTime() - start) / ROUNDS;
+		long unbufferedBytes = responseStream.count;
+
+		start = System.nanoTime();
+		for (int i = 0; i < ROUNDS; i++) {
+			responseStream.count = 0;
+			servlet.configureResponse(session, request, response, page);
+		}
+		long bufferedNanos = (System.nanoTime() - start) / ROUNDS;
+		long bufferedBytes = responseStream.count;
+
+		assertTrue(bufferedBytes < unbufferedBytes);
+
+		log.info(LogBuilder.createSystemMessage().addAction("ResponseBuffer benchmark").
+				addParameter("unbuffered bytes", unbufferedBytes).
+				addParameter("unbuffered micros", unbufferedNanos / 1000).
+				addParameter("gzip bytes", bufferedBytes).
+				addParameter("gzip micros", bufferedNanos / 1000).toString());
+	}
+
+	/**
+	 * The body of configureResponse before the ResponseBuffer: the page is written straight to the response stream.
+	 */
+	protected void writeUnbuffered(HttpServletResponse response, WebPart page) throws IOException {
+		response.setContentType("text/html");
+
+		Writer out = new EncodingWriter(response.getOutputStream());
+		page.writeOn(out);
+		out.close();
+
+		response.setStatus(HttpServletResponse.SC_OK);
+	}
+
+	/**
+	 * Counts the bytes of a response and drops them.
+	 */
+	protected static class ByteCountingOutputStream extends ServletOutputStream {
+
+		/**
+		 *
+		 */
+		protected long count = 0;
+
+		/**
+		 *
+		 */
+		@Override
+		public void write(int b) {
+			count++;
+		}
+
+		/**
+		 *
+		 */
+		@Override
+		public void write(byte[] bytes, int offset, int length) {
+			count += length;
+		}
+
+	}
+
+}
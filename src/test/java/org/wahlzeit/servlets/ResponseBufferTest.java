@@ -0,0 +1,199 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.servlets;
+
+import org.junit.After;
+import org.junit.Test;
+import org.wahlzeit.webparts.WebPart;
+import org.wahlzeit.webparts.WebPartTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for {@link ResponseBuffer}; see ResponseBufferBenchmark for timings.
+ */
+public class ResponseBufferTest {
+
+	/**
+	 *
+	 */
+	protected static final String PAGE_SOURCE = "<html><head><title>{$title}</title></head>\n" +
+			"<body><div id=\"header\">{$heading}</div>\n<div id=\"photos\">{$photos}</div>\n" +
+			"<div id=\"footer\">{$processingTime}</div></body></html>\n";
+
+	/**
+	 *
+	 */
+	protected ResponseBuffer buffer = ResponseBuffer.acquire();
+
+	/**
+	 *
+	 */
+	@After
+	public void tearDown() {
+		buffer.release();
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testIsGzipAccepted() {
+		assertTrue(ResponseBuffer.isGzipAccepted("gzip"));
+		assertTrue(ResponseBuffer.isGzipAccepted("gzip, deflate, br"));
+		assertTrue(ResponseBuffer.isGzipAccepted("deflate;q=1.0, GZIP;q=0.5"));
+		assertTrue(ResponseBuffer.isGzipAccepted("*"));
+
+		assertFalse(ResponseBuffer.isGzipAccepted(null));
+		assertFalse(ResponseBuffer.isGzipAccepted(""));
+		assertFalse(ResponseBuffer.isGzipAccepted("deflate, br"));
+		assertFalse(ResponseBuffer.isGzipAccepted("gzip;q=0"));
+		assertFalse(ResponseBuffer.isGzipAccepted("br, gzip; q=0.0"));
+		assertFalse(ResponseBuffer.isGzipAccepted("x-gzip2"));
+
+		assertFalse(ResponseBuffer.isGzipAccepted("*;q=1, gzip;q=0"));
+		assertTrue(ResponseBuffer.isGzipAccepted("*;q=0, gzip"));
+		assertFalse(ResponseBuffer.isGzipAccepted("*;q=0"));
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testUncompressedBody() throws IOException {
+		String body = "<p>gr\u00fc\u00dfe \u20ac</p>";
+		buffer.getWriter().write(body);
+
+		assertFalse(buffer.compress());
+		assertFalse(buffer.isCompressed());
+
+		byte[] expected = body.getBytes("UTF-8");
+		assertEquals(expected.length, buffer.getContentLength());
+		assertArrayEquals(expected, writeTo(buffer));
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testCompressedBody() throws IOException {
+		byte[] expected = render(createPage(50));
+		createPage(50).writeOn(buffer.getWriter());
+
+		assertTrue(buffer.compress());
+		assertTrue(buffer.isCompressed());
+
+		byte[] compressed = writeTo(buffer);
+		assertEquals(compressed.length, buffer.getContentLength());
+		assertTrue(compressed.length < expected.length / 2);
+		assertArrayEquals(expected, gunzip(compressed));
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testReuse() throws IOException {
+		ResponseBuffer nested = ResponseBuffer.acquire();
+		assertNotSame(buffer, nested);
+		nested.release();
+
+		createPage(200).writeOn(buffer.getWriter());
+		buffer.compress();
+		buffer.release();
+
+		ResponseBuffer next = ResponseBuffer.acquire();
+		assertSame(buffer, next);
+		assertFalse(next.isCompressed());
+		assertEquals(0, next.getContentLength());
+
+		next.getWriter().write("x");
+		assertArrayEquals(new byte[] {'x'}, writeTo(next));
+	}
+
+	/**
+	 * Renders the page without a ResponseBuffer
+	 */
+	protected byte[] render(WebPart page) throws IOException {
+		StringWriter out = new StringWriter();
+		page.writeOn(out);
+		return out.toString().getBytes("UTF-8");
+	}
+
+	/**
+	 *
+	 */
+	protected static WebPart createPage(int photoCount) {
+		WebPartTemplate template = new WebPartTemplate("page");
+		template.initialize(PAGE_SOURCE);
+
+		StringBuilder photos = new StringBuilder();
+		for (int i = 0; i < photoCount; i++) {
+			photos.append("<div class=\"photo\"><a href=\"x").append(Integer.toString(i, 36)).append(".html\">");
+			photos.append("<img src=\"/photos/x").append(i).append("-thumb.jpg\" alt=\"Photo ").append(i);
+			photos.append("\"/></a><p>Praise: ").append(i % 10).append(" \u2605 by user").append(i % 7);
+			photos.append("</p></div>\n");
+		}
+
+		WebPart result = new WebPart(template);
+		result.addString("title", "Wahlzeit \u2013 Photos");
+		result.addString("heading", "<h1>Photos</h1>");
+		result.addString("photos", photos.toString());
+		result.addString("processingTime", "0.01");
+		return result;
+	}
+
+	/**
+	 *
+	 */
+	protected byte[] writeTo(ResponseBuffer rb) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		rb.writeTo(out);
+		return out.toByteArray();
+	}
+
+	/**
+	 *
+	 */
+	protected byte[] gunzip(byte[] compressed) throws IOException {
+		InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] chunk = new byte[4096];
+		for (int n = in.read(chunk); n != -1; n = in.read(chunk)) {
+			out.write(chunk, 0, n);
+		}
+		in.close();
+		return out.toByteArray();
+	}
+
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.servlets;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for the header handling of {@link StaticDataServlet}.
+ */
+public class StaticDataServletTest {
+
+	/**
+	 * Content length of the ranges below
+	 */
+	protected static final int LENGTH = 1000;
+
+	/**
+	 * Marks a Range header that is ignored, i.e. answered with the whole content
+	 */
+	protected static final long[] IGNORED = new long[0];
+
+	/**
+	 *
+	 */
+	@Test
+	public void testClosedRange() {
+		assertArrayEquals(new long[]{0, 499}, StaticDataServlet.parseByteRange("bytes=0-499", LENGTH));
+		assertArrayEquals(new long[]{500, 999}, StaticDataServlet.parseByteRange("bytes=500-5000", LENGTH));
+		assertArrayEquals(new long[]{7, 7}, StaticDataServlet.parseByteRange("bytes=7-7", LENGTH));
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testOpenEndedRange() {
+		assertArrayEquals(new long[]{900, 999}, StaticDataServlet.parseByteRange("bytes=900-", LENGTH));
+		assertArrayEquals(new long[]{0, 999}, StaticDataServlet.parseByteRange("bytes=0-", LENGTH));
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testSuffixRange() {
+		assertArrayEquals(new long[]{900, 999}, StaticDataServlet.parseByteRange("bytes=-100", LENGTH));
+		assertArrayEquals(new long[]{0, 999}, StaticDataServlet.parseByteRange("bytes=-5000", LENGTH));
+		assertNull(StaticDataServlet.parseByteRange("bytes=-0", LENGTH));
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testUnsatisfiableRange() {
+		assertNull(StaticDataServlet.parseByteRange("bytes=1000-", LENGTH));
+		assertNull(StaticDataServlet.parseByteRange("bytes=1000-1999", LENGTH));
+		assertNull(StaticDataServlet.parseByteRange("bytes=5000-6000", LENGTH));
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testIgnoredRange() {
+		assertArrayEquals(IGNORED, StaticDataServlet.parseByteRange("bytes=500-100", LENGTH));
+		assertArrayEquals(IGNORED, StaticDataServlet.parseByteRange("bytes=0-99,200-299", LENGTH));
+		assertArrayEquals(IGNORED, StaticDataServlet.parseByteRange("items=0-99", LENGTH));
+		assertArrayEquals(IGNORED, StaticDataServlet.parseByteRange("bytes=abc-", LENGTH));
+		assertArrayEquals(IGNORED, StaticDataServlet.parseByteRange("bytes=100", LENGTH));
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testETagMatching() {
+		String eTag = "\"x1abz-2\"";
+
+		assertTrue(StaticDataServlet.isETagMatching(eTag, eTag));
+		assertTrue(StaticDataServlet.isETagMatching("W/" + eTag, eTag));
+		assertTrue(StaticDataServlet.isETagMatching("\"x1abz-1\", " + eTag + ", \"x2-2\"", eTag));
+		assertTrue(StaticDataServlet.isETagMatching("*", eTag));
+
+		assertFalse(StaticDataServlet.isETagMatching(null, eTag));
+		assertFalse(StaticDataServlet.isETagMatching("\"x1abz-1\", \"x1abz-3\"", eTag));
+		assertFalse(StaticDataServlet.isETagMatching("x1abz-2", eTag));
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testContentType() {
+		assertEquals("image/jpeg", StaticDataServlet.getContentType("jpg"));
+		assertEquals("image/jpeg", StaticDataServlet.getContentType("JPG"));
+		assertEquals("image/png", StaticDataServlet.getContentType("png"));
+		assertEquals("image/gif", StaticDataServlet.getContentType("gif"));
+		assertEquals(StaticDataServlet.DEFAULT_CONTENT_TYPE, StaticDataServlet.getContentType(null));
+		assertEquals(StaticDataServlet.DEFAULT_CONTENT_TYPE, StaticDataServlet.getContentType("unknown"));
+	}
+
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.utils;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test cases for the CompressedBitmap class.
+ */
+public class CompressedBitmapTest {
+
+	/**
+	 *
+	 */
+	@Test
+	public void testAddRemoveContains() {
+		CompressedBitmap bitmap = CompressedBitmap.valueOf(3, 1, 70000, 3);
+		assertEquals(3, bitmap.size());
+		assertTrue(bitmap.contains(1));
+		assertTrue(bitmap.contains(70000));
+		assertFalse(bitmap.contains(2));
+
+		bitmap.remove(70000);
+		bitmap.remove(4);
+		assertArrayEquals(new int[]{1, 3}, bitmap.toArray());
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testDenseGroups() {
+		CompressedBitmap evens = new CompressedBitmap();
+		CompressedBitmap all = new CompressedBitmap();
+		for (int i = 0; i < 20000; i++) {
+			all.add(i);
+			if (i % 2 == 0) {
+				evens.add(i);
+			}
+		}
+
+		CompressedBitmap odds = new CompressedBitmap(all);
+		odds.andNot(evens);
+		assertEquals(10000, odds.size());
+		assertTrue(odds.contains(19999));
+		assertFalse(odds.contains(0));
+
+		CompressedBitmap none = new CompressedBitmap(odds);
+		none.and(evens);
+		assertTrue(none.isEmpty());
+
+		odds.or(evens);
+		assertEquals(all, odds);
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testSerialization() throws Exception {
+		CompressedBitmap bitmap = CompressedBitmap.valueOf(5, 8, 131072, 200000);
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(bitmap);
+		out.close();
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+		CompressedBitmap copy = (CompressedBitmap) in.readObject();
+
+		assertEquals(bitmap, copy);
+		copy.add(6);
+		assertArrayEquals(new int[]{5, 6, 8, 131072, 200000}, copy.toArray());
+	}
+
+	/**
+	 *
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativeValue() {
+		new CompressedBitmap().add(-1);
+	}
+
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.utils;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test cases for the HtmlUtil class.
+ */
+public class HtmlUtilTest {
+
+	/**
+	 *
+	 */
+	@Test
+	public void testMaskForWeb() {
+		String plain = "Nothing to mask here.";
+		assertSame(plain, HtmlUtil.maskForWeb(plain));
+		assertSame("", HtmlUtil.maskForWeb(""));
+
+		assertEquals("&lt;b&gt;&quot;Tom &amp; Jerry&quot;&lt;/b&gt;", HtmlUtil.maskForWeb("<b>\"Tom & Jerry\"</b>"));
+		assertEquals("a &amp; b", HtmlUtil.maskForWeb("a & b"));
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testNeedsMasking() {
+		assertFalse(HtmlUtil.needsMasking("plain text"));
+		assertTrue(HtmlUtil.needsMasking("a > b"));
+		assertEquals(2, HtmlUtil.indexOfMaskable("a \"b\""));
+		assertEquals(-1, HtmlUtil.indexOfMaskable(""));
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testMaskedForWebOnWriterAndAppendable() throws IOException {
+		String value = "<i>x & y</i> and more";
+		String expected = HtmlUtil.maskForWeb(value);
+
+		StringWriter out = new StringWriter();
+		HtmlUtil.writeMaskedForWeb(out, value);
+		assertEquals(expected, out.toString());
+
+		StringBuilder sb = new StringBuilder();
+		HtmlUtil.appendMaskedForWeb(sb, value);
+		assertEquals(expected, sb.toString());
+
+		sb.setLength(0);
+		HtmlUtil.appendMaskedForWeb(sb, "plain");
+		assertEquals("plain", sb.toString());
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testAppendBuildersMatchStringBuilders() throws IOException {
+		StringBuilder sb = new StringBuilder();
+
+		HtmlUtil.appendHref(sb, "x1abz.html");
+		assertEquals(HtmlUtil.asHref("x1abz.html"), sb.toString());
+		assertEquals("<a href=\"x1abz.html\" rel=\"nofollow\">x1abz.html</a>", sb.toString());
+
+		sb.setLength(0);
+		HtmlUtil.appendImg(sb, "photo.jpg");
+		assertEquals(HtmlUtil.asImg("photo.jpg"), sb.toString());
+
+		sb.setLength(0);
+		HtmlUtil.appendImg(sb, "photo.jpg", 640, 0);
+		assertEquals(HtmlUtil.asImg("photo.jpg", 640, 0), sb.toString());
+		assertEquals("<img src=\"photo.jpg\" width=\"640\" height=\"0\" />", sb.toString());
+
+		sb.setLength(0);
+		HtmlUtil.appendP(sb, "text");
+		assertEquals(HtmlUtil.asP("text"), sb.toString());
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testAppendInt() throws IOException {
+		int[] values = {0, 7, 10, 99, 1000, 123456789, Integer.MAX_VALUE, -1, -450, Integer.MIN_VALUE};
+		for (int value : values) {
+			StringBuilder sb = new StringBuilder();
+			HtmlUtil.appendInt(sb, value);
+			assertEquals(String.valueOf(value), sb.toString());
+		}
+	}
+
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test cases for the Permutation class.
+ */
+public class PermutationTest {
+
+	/**
+	 *
+	 */
+	@Test
+	public void testIsPermutation() {
+		int[] sizes = {1, 2, 3, 4, 5, 17, 64, 100, 1000, 4097};
+		for (int size : sizes) {
+			for (long seed = -2; seed < 3; seed++) {
+				boolean[] seen = new boolean[size];
+				for (int i = 0; i < size; i++) {
+					int element = Permutation.permute(i, size, seed);
+					assertTrue((element >= 0) && (element < size));
+					assertFalse(seen[element]);
+					seen[element] = true;
+				}
+			}
+		}
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testSeedDeterminesOrder() {
+		int size = 1000;
+		int samePositions = 0;
+		int fixedPoints = 0;
+		for (int i = 0; i < size; i++) {
+			assertEquals(Permutation.permute(i, size, 42), Permutation.permute(i, size, 42));
+			if (Permutation.permute(i, size, 42) == Permutation.permute(i, size, 43)) {
+				samePositions++;
+			}
+			if (Permutation.permute(i, size, 42) == i) {
+				fixedPoints++;
+			}
+		}
+		assertTrue(samePositions < size / 10);
+		assertTrue(fixedPoints < size / 10);
+	}
+
+	/**
+	 *
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testIndexOutOfRange() {
+		Permutation.permute(5, 5, 0);
+	}
+
+}
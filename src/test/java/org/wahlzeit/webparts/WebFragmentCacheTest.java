@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.webparts;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Test class for {@link WebFragmentCache}.
+ */
+public class WebFragmentCacheTest {
+
+	/**
+	 *
+	 */
+	@Test
+	public void testPutFragment() {
+		WebFragmentCache cache = new WebFragmentCache();
+		WebPartTemplate template = new WebPartTemplate("test");
+		List<?> key = Arrays.asList(template, "en");
+		WebPartTemplate first = new WebPartTemplate("first");
+		WebPartTemplate second = new WebPartTemplate("second");
+
+		assertSame(first, cache.putFragment(key, first, cache.getGeneration()));
+		assertSame(first, cache.putFragment(Arrays.asList(template, "en"), second, cache.getGeneration()));
+		assertSame(first, cache.getFragment(Arrays.asList(template, "en")));
+		assertNull(cache.getFragment(Arrays.asList(new WebPartTemplate("test"), "en")));
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testFragmentsRenderedBeforeClearAreNotCached() {
+		WebFragmentCache cache = new WebFragmentCache();
+		List<?> key = Arrays.asList("frame");
+		WebPartTemplate fragment = new WebPartTemplate("fragment");
+
+		long generation = cache.getGeneration();
+		cache.clear();
+
+		assertSame(fragment, cache.putFragment(key, fragment, generation));
+		assertNull(cache.getFragment(key));
+		assertEquals(0, cache.getSize());
+	}
+
+}
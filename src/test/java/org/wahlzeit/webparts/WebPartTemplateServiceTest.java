@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.webparts;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.wahlzeit.services.ConfigDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Test class for {@link WebPartTemplateService}.
+ */
+public class WebPartTemplateServiceTest {
+
+	protected File rootDir;
+	protected WebPartTemplateService service;
+	protected AtomicInteger loadCount;
+
+	/**
+	 *
+	 */
+	@Before
+	public void setUp() {
+		rootDir = Files.createTempDir();
+		loadCount = new AtomicInteger();
+		service = new WebPartTemplateService() {
+			@Override
+			protected WebPartTemplate loadTemplate(String shortName, File file) {
+				loadCount.incrementAndGet();
+				return super.loadTemplate(shortName, file);
+			}
+
+			@Override
+			protected long getReloadCheckIntervalMillis() {
+				return 0;
+			}
+		};
+		service.setTemplatesDir(new ConfigDir(rootDir.getPath(), "templates"));
+	}
+
+	/**
+	 *
+	 */
+	@After
+	public void tearDown() {
+		delete(rootDir);
+	}
+
+	/**
+	 *
+	 */
+	protected void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+
+	/**
+	 *
+	 */
+	protected File writeTemplate(String lang, String name, String source) throws IOException {
+		File file = new File(rootDir, "templates/default/" + lang + "/" + name + ".html");
+		Files.createParentDirs(file);
+		Files.write(source, file, Charsets.UTF_8);
+		return file;
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testTemplatesAreCached() throws IOException {
+		writeTemplate("en", "pages/Page", "<p>{$text}</p>");
+
+		WebPartTemplate template = service.getTemplate("en", "pages/Page");
+		assertNotNull(template);
+		assertEquals("<p></p>", template.asString());
+		assertSame(template, service.getTemplate("en", "pages/Page"));
+		assertEquals(1, loadCount.get());
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testMissingTemplatesAreCached() {
+		assertNull(service.getTemplate("en", "pages/Missing"));
+		assertNull(service.getTemplate("en", "pages/Missing"));
+		assertEquals(1, loadCount.get());
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testConcurrentRequestsLoadOnce() throws Exception {
+		writeTemplate("en", "pages/Page", "<p>{$text}</p>");
+
+		final CountDownLatch start = new CountDownLatch(1);
+		final WebPartTemplate[] results = new WebPartTemplate[8];
+		Thread[] threads = new Thread[results.length];
+		for (int i = 0; i < threads.length; i++) {
+			final int index = i;
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					results[index] = service.getTemplate("en", "pages/Page");
+				}
+			};
+			threads[i].start();
+		}
+		start.countDown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		assertEquals(1, loadCount.get());
+		for (WebPartTemplate result : results) {
+			assertSame(results[0], result);
+		}
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testChangedTemplatesAreReloaded() throws IOException {
+		File file = writeTemplate("en", "pages/Page", "old");
+		WebPartTemplate oldTemplate = service.getTemplate("en", "pages/Page");
+		assertNull(service.getTemplate("en", "pages/New"));
+
+		Files.write("new", file, Charsets.UTF_8);
+		file.setLastModified(file.lastModified() - 10000);
+		writeTemplate("en", "pages/New", "created");
+
+		assertSame(oldTemplate, service.getTemplate("en", "pages/Page"));
+
+		service.setReloadChangedTemplates(true);
+		WebPartTemplate newTemplate = service.getTemplate("en", "pages/Page");
+		assertNotSame(oldTemplate, newTemplate);
+		assertEquals("new", newTemplate.asString());
+		assertEquals("created", service.getTemplate("en", "pages/New").asString());
+		assertSame(newTemplate, service.getTemplate("en", "pages/Page"));
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testPreloadTemplates() throws IOException {
+		writeTemplate("en", "pages/Page", "en");
+		writeTemplate("de", "pages/Page", "de");
+		writeTemplate("de", "infos/Info", "info");
+
+		assertEquals(3, service.preloadTemplates());
+		assertEquals(3, loadCount.get());
+		assertEquals("de", service.getTemplate("de", "pages/Page").asString());
+		assertEquals(3, loadCount.get());
+	}
+
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.webparts;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Test class for {@link WebPartTemplate}, {@link WebPart}, {@link HtmlElement}, and {@link EncodingWriter}.
+ */
+public class WebPartTest {
+
+	/**
+	 *
+	 */
+	protected WebPartTemplate createTemplate(String source) {
+		WebPartTemplate result = new WebPartTemplate("test");
+		result.initialize(source);
+		return result;
+	}
+
+	/**
+	 *
+	 */
+	protected String render(WebPart part) throws IOException {
+		StringWriter out = new StringWriter();
+		part.writeOn(out);
+		return out.toString();
+	}
+
+	/**
+	 *
+	 */
+	protected byte[] renderEncoded(WebPart part, int bufferSize) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		Writer out = new EncodingWriter(bytes, bufferSize);
+		part.writeOn(out);
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testCompileTemplate() {
+		WebPartTemplate template = createTemplate("<a href=\"{$domain}\">info@{$domain}</a>{$a}{$b} {$open");
+
+		assertEquals("<a href=\"\">info@</a> {$open", template.asString());
+		assertEquals(3, template.getKeyCount());
+		assertEquals(0, template.getKeyId("domain"));
+		assertEquals(1, template.getKeyId("a"));
+		assertEquals(2, template.getKeyId("b"));
+		assertEquals(-1, template.getKeyId("open"));
+		assertEquals("b", template.getKey(2));
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testWriteOn() throws IOException {
+		WebPart inner = new WebPart(createTemplate("[{$x}]"));
+		inner.addString("x", "inner");
+
+		WebPart part = new WebPart(createTemplate("{$a}-{$b}-{$a}{$part}{$missing}"));
+		part.addString("a", "1");
+		part.addString("b", null);
+		part.addString("unknown", "ignored");
+		part.addWritable("part", inner);
+
+		assertEquals("1--1[inner]", render(part));
+		assertEquals("1", part.getValue("a"));
+		assertNull(part.getValue("unknown"));
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testEncodedWriteOnMatchesText() throws IOException {
+		WebPart part = new WebPart(createTemplate("Gr\u00fc\u00dfe {$name} \u2013 {$emoji}!"));
+		part.addString("name", "J\u00fcrgen");
+		part.addString("emoji", "\ud83d\udcf7 \ud83d");
+
+		String text = render(part);
+		assertEquals("Gr\u00fc\u00dfe J\u00fcrgen \u2013 \ud83d\udcf7 \ud83d!", text);
+		for (int bufferSize : new int[]{4, 5, 7, 1024}) {
+			assertArrayEquals(text.getBytes(WebPartTemplate.ENCODING), renderEncoded(part, bufferSize));
+		}
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testWebPartWithoutTemplate() throws IOException {
+		WebPart part = new WebPart(null);
+		part.addString("a", "1");
+
+		assertEquals("", render(part));
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testAsTemplateKeepsUnboundSlots() throws IOException {
+		WebPart inner = new WebPart(createTemplate("[{$x}]"));
+		inner.addString("x", "inner");
+
+		WebPart frame = new WebPart(createTemplate("<t>{$title}</t>{$body}{$part}<f>{$title}</f>"));
+		frame.addString("title", "Title");
+		frame.addWritable("part", inner);
+
+		WebPartTemplate fragment = frame.asTemplate(true);
+		assertEquals("<t>Title</t>[inner]<f>Title</f>", fragment.asString());
+		assertEquals(1, fragment.getKeyCount());
+		assertEquals("body", fragment.getKey(0));
+
+		WebPart page = new WebPart(fragment);
+		page.addString("body", "Body");
+		page.addString("title", "ignored");
+		assertEquals("<t>Title</t>Body[inner]<f>Title</f>", render(page));
+		assertArrayEquals(render(page).getBytes(WebPartTemplate.ENCODING), renderEncoded(page, 1024));
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testAsTemplateDropsUnboundSlots() throws IOException {
+		WebPart info = new WebPart(createTemplate("<p>info@{$domainName}</p>"));
+
+		WebPartTemplate fragment = info.asTemplate(false);
+		assertEquals(0, fragment.getKeyCount());
+		assertEquals(render(info), render(new WebPart(fragment)));
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testMaskedValuesAndHtmlElements() throws IOException {
+		WebPart part = new WebPart(createTemplate("<p>{$plain}|{$masked}|{$link}|{$img}</p>"));
+		part.maskAndAddString("plain", "no markup");
+		part.maskAndAddString("masked", "<b>\"Tom & Jerry\"</b>");
+		part.addWritable("link", HtmlElement.asHref("x1.html", "Photo"));
+		part.addWritable("img", HtmlElement.asImg("x1.jpg", 10, 20));
+
+		assertEquals("no markup", part.getValue("plain"));
+		assertEquals("<p>no markup|&lt;b&gt;&quot;Tom &amp; Jerry&quot;&lt;/b&gt;|" +
+				"<a href=\"x1.html\" rel=\"nofollow\">Photo</a>|<img src=\"x1.jpg\" width=\"10\" height=\"20\" /></p>",
+				render(part));
+		assertArrayEquals(render(part).getBytes(WebPartTemplate.ENCODING), renderEncoded(part, 16));
+	}
+
+}